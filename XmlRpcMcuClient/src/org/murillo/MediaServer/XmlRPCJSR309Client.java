@@ -11,6 +11,7 @@ import java.util.HashMap;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
 import org.murillo.MediaServer.Codecs.MediaType;
+import org.murillo.MediaServer.XmlRpcBatch.Call;
 
 /**
  *
@@ -21,6 +22,101 @@ public class XmlRPCJSR309Client {
     private XmlRpcTimedClient client;
     private XmlRpcClientConfigImpl config;
 
+    public class Batch extends XmlRpcBatch {
+
+        private Batch() {
+            super(client);
+        }
+
+        public Call EndpointSetLocalSTUNCredentials(Integer sessId,Integer endpointId,MediaType media,String username,String pwd)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),username,pwd};
+            //Queue
+            return add("EndpointSetLocalSTUNCredentials", request);
+        }
+
+        public Call EndpointSetRemoteSTUNCredentials(Integer sessId,Integer endpointId,MediaType media,String username,String pwd)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),username,pwd};
+            //Queue
+            return add("EndpointSetRemoteSTUNCredentials", request);
+        }
+
+        public Call EndpointSetLocalCryptoSDES(Integer sessId,Integer endpointId,MediaType media,String suite,String key)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),suite,key};
+            //Queue
+            return add("EndpointSetLocalCryptoSDES", request);
+        }
+
+        public Call EndpointSetRemoteCryptoSDES(Integer sessId,Integer endpointId,MediaType media,String suite,String key)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),suite,key};
+            //Queue
+            return add("EndpointSetRemoteCryptoSDES", request);
+        }
+
+        public Call EndpointGetLocalCryptoDTLSFingerprint(String hash)
+        {
+            //Create request
+            Object[] request = new Object[]{hash};
+            //Queue
+            return add("EndpointGetLocalCryptoDTLSFingerprint", request);
+        }
+
+        public Call EndpointSetRemoteCryptoDTLS(Integer sessId,Integer endpointId,MediaType media,Codecs.Setup setup,String hash,String fingerprint)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),setup.valueOf(),hash,fingerprint};
+            //Queue
+            return add("EndpointSetRemoteCryptoDTLS", request);
+        }
+
+        public Call EndpointSetRTPProperties(Integer sessId,Integer endpointId,MediaType media, HashMap<String,String> properties)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),properties};
+            //Queue
+            return add("EndpointSetRTPProperties", request);
+        }
+
+        public Call EndpointStartSending(int sessId,int endpointId,Codecs.MediaType media,String sendIp,int sendPort,HashMap<Integer,Integer> rtpMap)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),sendIp,sendPort,rtpMap};
+            //Queue
+            return add("EndpointStartSending", request);
+        }
+
+        public Call EndpointStopSending(int sessId,int endpointId,Codecs.MediaType media)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf()};
+            //Queue
+            return add("EndpointStopSending", request);
+        }
+
+        public Call EndpointStartReceiving(int sessId,int endpointId,Codecs.MediaType media,HashMap<Integer,Integer> rtpMap)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf(),rtpMap};
+            //Queue
+            return add("EndpointStartReceiving", request);
+        }
+
+        public Call EndpointStopReceiving(int sessId,int endpointId,Codecs.MediaType media)
+        {
+            //Create request
+            Object[] request = new Object[]{sessId,endpointId,media.valueOf()};
+            //Queue
+            return add("EndpointStopReceiving", request);
+        }
+    }
+
     public static final Integer QCIF	= 0;  // 176  x 144 	AR:	1,222222222
     public static final Integer CIF	= 1;  // 352  x 288	AR:	1,222222222
     public static final Integer VGA	= 2;  // 640  x 480	AR:	1,333333333
@@ -77,6 +173,18 @@ public class XmlRPCJSR309Client {
         client.setConfig(config);
     }
 
+    public void enableConnectionPool(int maxConnections)
+    {
+        //Reuse persistent connections to the media server
+        client.enableConnectionPool(maxConnections);
+    }
+
+    public Batch createBatch()
+    {
+        //Create new batch of calls to be sent at once
+        return new Batch();
+    }
+
     public int EventQueueCreate() throws XmlRpcException
     {
         //Create request
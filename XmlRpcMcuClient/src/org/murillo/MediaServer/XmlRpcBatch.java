@@ -0,0 +1,246 @@
+/*
+ * XmlRpcBatch.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.MediaServer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.xmlrpc.XmlRpcException;
+
+/**
+ * Queue of calls sent to the media server in a single system.multicall request.
+ * Each queued call gets a {@link Call} handle holding its own result or error once executed.
+ * All calls are always executed, even if a previous one fails, both with multicall and
+ * when falling back to one request per call.
+ * @author Sergio Garcia Murillo
+ */
+public class XmlRpcBatch {
+
+    private static final Logger logger = Logger.getLogger("XMLRPCMCU");
+    private static final Level level = Level.INFO;
+    //Fault returned by the xmlrpc-c registry of the media server for unknown methods (XMLRPC_NO_SUCH_METHOD_ERROR)
+    private static final int NO_SUCH_METHOD = -506;
+    //Standard code used by other servers
+    private static final int METHOD_NOT_FOUND = -32601;
+
+    public static class Call {
+        private final String method;
+        private final Object[] params;
+        private HashMap response;
+        private XmlRpcException error;
+
+        private Call(String method,Object[] params) {
+            this.method = method;
+            this.params = params;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public boolean isDone() {
+            return response!=null || error!=null;
+        }
+
+        public XmlRpcException getError() {
+            return error;
+        }
+
+        public HashMap getResponse() throws XmlRpcException {
+            //Check if it has been executed
+            if (!isDone())
+                //Error
+                throw new XmlRpcException(method + " has not been executed yet");
+            //If it failed
+            if (error!=null)
+                //Throw it
+                throw error;
+            //Return response
+            return response;
+        }
+
+        public boolean getReturnCode() throws XmlRpcException {
+            //Return
+            return (((Integer)getResponse().get("returnCode"))==1);
+        }
+
+        public Object[] getReturnVal() throws XmlRpcException {
+            //Get result
+            return (Object[]) getResponse().get("returnVal");
+        }
+
+        public Integer getInteger() throws XmlRpcException {
+            //Get first value
+            return (Integer)getReturnVal()[0];
+        }
+
+        public String getString() throws XmlRpcException {
+            //Get first value
+            return (String)getReturnVal()[0];
+        }
+    }
+
+    private final XmlRpcTimedClient client;
+    private final List<Call> calls;
+    private boolean multicall;
+
+    public XmlRpcBatch(XmlRpcTimedClient client) {
+        //Store client
+        this.client = client;
+        //Create call list
+        this.calls = new ArrayList<Call>();
+        //Try multicall first
+        this.multicall = true;
+    }
+
+    public Call add(String method,Object[] params) {
+        //Create call
+        Call call = new Call(method,params);
+        //Append it
+        calls.add(call);
+        //Return handle
+        return call;
+    }
+
+    public List<Call> getCalls() {
+        return calls;
+    }
+
+    public boolean isEmpty() {
+        return calls.isEmpty();
+    }
+
+    public void execute() throws XmlRpcException {
+        //Get pending calls
+        List<Call> pending = new ArrayList<Call>();
+        //For each call
+        for (Call call : calls)
+            //If not executed yet
+            if (!call.isDone())
+                //Add it
+                pending.add(call);
+        //If nothing to do
+        if (pending.isEmpty())
+            //Exit
+            return;
+        //If only one or no multicall support
+        if (pending.size()==1 || !multicall) {
+            //Execute them one by one
+            executeSequential(pending);
+            //Exit
+            return;
+        }
+        //Create request
+        Object[] requests = new Object[pending.size()];
+        //For each call
+        for (int i=0;i<requests.length;i++) {
+            //Get call
+            Call call = pending.get(i);
+            //Create struct
+            HashMap<String,Object> request = new HashMap<String,Object>();
+            //Set values
+            request.put("methodName", call.method);
+            request.put("params", call.params);
+            //Set it
+            requests[i] = request;
+        }
+        //Log
+        logger.log(level,"system.multicall({0} calls)",requests.length);
+        Object[] responses;
+        try {
+            //Execute all of them in a single request
+            responses = (Object[]) client.execute("system.multicall", new Object[]{requests});
+        } catch (XmlRpcException ex) {
+            //If server does not know about multicall
+            if (!isMethodNotFound(ex))
+                //Rethrow
+                throw ex;
+            //Do not try again
+            multicall = false;
+            //Fallback
+            executeSequential(pending);
+            //Exit
+            return;
+        }
+        //For each call
+        for (int i=0;i<requests.length;i++) {
+            //Get call
+            Call call = pending.get(i);
+            //Check response
+            if (responses==null || i>=responses.length) {
+                //Missing
+                call.error = new XmlRpcException(call.method + " got no response in multicall");
+            } else if (responses[i] instanceof Object[]) {
+                //Get value wrapped in an array
+                Object[] arr = (Object[]) responses[i];
+                //Store response
+                call.response = (HashMap) arr[0];
+            } else if (responses[i] instanceof Map) {
+                //It is a fault
+                Map fault = (Map) responses[i];
+                //Get code
+                Object code = fault.get("faultCode");
+                //Create exception
+                call.error = new XmlRpcException(code instanceof Integer ? (Integer)code : 0, call.method + " failed: " + fault.get("faultString"));
+            } else {
+                //Unknown
+                call.error = new XmlRpcException(call.method + " got invalid response in multicall");
+            }
+        }
+    }
+
+    public void check() throws XmlRpcException {
+        //For each call
+        for (Call call : calls)
+            //If it has failed
+            if (call.error!=null)
+                //Throw first error
+                throw call.error;
+    }
+
+    private void executeSequential(List<Call> pending) {
+        //For each call
+        for (Call call : pending) {
+            try {
+                //Execute it
+                call.response = (HashMap) client.execute(call.method, call.params);
+            } catch (XmlRpcException ex) {
+                //Store error and continue, as the media server does on multicall
+                call.error = ex;
+            }
+        }
+    }
+
+    /**
+     * Check if an error, or any of its causes, is a fault of a method unknown by the media server.
+     */
+    public static boolean isMethodNotFound(XmlRpcException ex) {
+        //Check all causes
+        for (Throwable t = ex; t!=null; t = t.getCause())
+            //If it is a method not found fault
+            if (t instanceof XmlRpcException && (((XmlRpcException)t).code==NO_SUCH_METHOD || ((XmlRpcException)t).code==METHOD_NOT_FOUND))
+                //Found
+                return true;
+        //Other error
+        return false;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * XmlRpcConnectionPool.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.MediaServer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of persistent HTTP/1.1 connections to a single media server endpoint.
+ * Pools are shared by all the clients pointing to the same host and port.
+ * @author Sergio Garcia Murillo
+ */
+public class XmlRpcConnectionPool {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    //Abyss, the media server http server, allows about 15 connections, leave room for the event streams and other clients
+    public static final int MAX_CONNECTIONS = 6;
+    //Abyss closes idle connections after 15s, keep them for less time
+    public static final int DEFAULT_KEEP_ALIVE = 10000;
+    //Idle time after which a connection is checked before reusing it
+    private static final int PROBE_IDLE = 1000;
+
+    public static class Connection {
+        private final Socket socket;
+        private final InputStream input;
+        private final OutputStream output;
+        private long lastUsed;
+        private boolean reused;
+        private int keepAlive;
+
+        private Connection(Socket socket) throws IOException {
+            //Store socket
+            this.socket = socket;
+            //Buffer both directions
+            this.input = new BufferedInputStream(socket.getInputStream());
+            this.output = new BufferedOutputStream(socket.getOutputStream());
+            //Not used yet
+            this.lastUsed = System.currentTimeMillis();
+            this.reused = false;
+            //Use pool default
+            this.keepAlive = -1;
+        }
+
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        public boolean isReused() {
+            return reused;
+        }
+
+        public void setTimeout(int timeout) throws SocketException {
+            //Set read timeout
+            socket.setSoTimeout(timeout);
+        }
+
+        /**
+         * Set the idle time the server keeps the connection open, as announced in the Keep-Alive header.
+         */
+        public void setKeepAlive(int keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        public boolean isClosed() {
+            return socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown();
+        }
+
+        private boolean isAlive() {
+            try {
+                //Do not wait
+                socket.setSoTimeout(1);
+                //Nothing should be pending on an idle connection, either EOF because the server has closed it or unexpected data
+                input.read();
+                //Do not reuse it
+                return false;
+            } catch (SocketTimeoutException ex) {
+                //Nothing to read, still open
+                return true;
+            } catch (IOException ex) {
+                //Reset or other error
+                return false;
+            }
+        }
+
+        public void close() {
+            //Close socket, streams are closed with it
+            try { socket.close(); } catch (Exception e) {}
+        }
+    }
+
+    private static final HashMap<String,XmlRpcConnectionPool> pools = new HashMap<String,XmlRpcConnectionPool>();
+
+    private final String host;
+    private final int port;
+    private final int keepAlive;
+    private final Semaphore permits;
+    private final LinkedList<Connection> idle;
+
+    public static XmlRpcConnectionPool getPool(String host,int port,int maxConnections) {
+        //Get key
+        String key = host + ":" + port;
+        //Lock
+        synchronized(pools) {
+            //Get pool for endpoint
+            XmlRpcConnectionPool pool = pools.get(key);
+            //If not found
+            if (pool==null) {
+                //Create new one
+                pool = new XmlRpcConnectionPool(host,port,maxConnections,DEFAULT_KEEP_ALIVE);
+                //Store it
+                pools.put(key, pool);
+            }
+            //Return it
+            return pool;
+        }
+    }
+
+    public XmlRpcConnectionPool(String host,int port,int maxConnections,int keepAlive) {
+        //Store values
+        this.host = host;
+        this.port = port;
+        this.keepAlive = keepAlive;
+        //Limit the number of concurrent connections
+        this.permits = new Semaphore(maxConnections>0?Math.min(maxConnections,MAX_CONNECTIONS):DEFAULT_MAX_CONNECTIONS,true);
+        //No idle connections yet
+        this.idle = new LinkedList<Connection>();
+    }
+
+    public Connection acquire(int timeout) throws IOException {
+        //Get start time
+        long ini = System.currentTimeMillis();
+        try {
+            //Wait for a free slot
+            if (!permits.tryAcquire(timeout,TimeUnit.MILLISECONDS))
+                //Error
+                throw new SocketTimeoutException("Timed out waiting for a free connection to " + host + ":" + port);
+        } catch (InterruptedException ex) {
+            //Error
+            throw new SocketTimeoutException("Interrupted while waiting for a free connection to " + host + ":" + port);
+        }
+        try {
+            //Try to reuse the most recent idle one
+            Connection connection = poll();
+            //If got one
+            if (connection!=null)
+                //Use it
+                return connection;
+            //Get remaining time
+            int remaining = (int)(timeout - (System.currentTimeMillis()-ini));
+            //Check
+            if (remaining<=0)
+                //Error
+                throw new SocketTimeoutException("Timed out connecting to " + host + ":" + port);
+            //Create new socket
+            Socket socket = new Socket();
+            //Do not wait for acks on small requests
+            socket.setTcpNoDelay(true);
+            //Keep it alive
+            socket.setKeepAlive(true);
+            //Connect
+            socket.connect(new InetSocketAddress(host,port),remaining);
+            //Return new connection
+            return new Connection(socket);
+        } catch (IOException ex) {
+            //Free slot
+            permits.release();
+            //Rethrow
+            throw ex;
+        }
+    }
+
+    public void release(Connection connection,boolean reusable) {
+        //Check if it can be kept
+        if (reusable && !connection.isClosed()) {
+            //Update last used time
+            connection.lastUsed = System.currentTimeMillis();
+            //It will be reused next time
+            connection.reused = true;
+            //Lock
+            synchronized(idle) {
+                //Put at the head so hot connections get reused first
+                idle.addFirst(connection);
+            }
+        } else {
+            //Close it
+            connection.close();
+        }
+        //Free slot
+        permits.release();
+    }
+
+    public void purge() {
+        //Lock
+        synchronized(idle) {
+            //Close all idle connections
+            for (Connection connection : idle)
+                //Close it
+                connection.close();
+            //Clear
+            idle.clear();
+        }
+    }
+
+    private Connection poll() {
+        //Get now
+        long now = System.currentTimeMillis();
+        //Lock
+        synchronized(idle) {
+            //While we have idle connections
+            while(!idle.isEmpty()) {
+                //Get most recent
+                Connection connection = idle.removeFirst();
+                //Get idle time
+                long idleTime = now-connection.lastUsed;
+                //Get max idle time, the lower of ours and the server one
+                int max = connection.keepAlive>=0 ? Math.min(keepAlive,connection.keepAlive) : keepAlive;
+                //Check it has not expired nor been closed by the server
+                if (idleTime<max && !connection.isClosed() && (idleTime<PROBE_IDLE || connection.isAlive()))
+                    //Reuse
+                    return connection;
+                //Close expired one
+                connection.close();
+            }
+        }
+        //None available
+        return null;
+    }
+
+    public int getIdleConnections() {
+        //Lock
+        synchronized(idle) {
+            return idle.size();
+        }
+    }
+
+    public int getAvailableConnections() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * XmlRpcEventDecoder.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.MediaServer;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+/**
+ * Decodes a single event chunk received from the media server event stream.
+ * Implementations are used by one connection only, so they can keep and reuse state between events.
+ * @author Sergio Garcia Murillo
+ */
+public interface XmlRpcEventDecoder {
+    /**
+     * Decode event
+     * @param data buffer holding the chunk, only valid during the call
+     * @param offset start of the chunk
+     * @param length length of the chunk
+     * @return event object or null if it is not a valid event
+     */
+    public Object decode(byte[] data,int offset,int length) throws XmlRpcException;
+}
@@ -7,23 +7,15 @@ package org.murillo.MediaServer;
 
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
-import java.io.StringReader;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
-import java.net.Socket;
 import java.net.URL;
-import java.util.TimeZone;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.xmlrpc.XmlRpcException;
-import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
-import org.apache.xmlrpc.parser.XmlRpcResponseParser;
-import org.apache.xmlrpc.util.SAXParsers;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
 /**
  *
@@ -31,14 +23,33 @@ import org.xml.sax.XMLReader;
  */
 public class XmlRpcEventManager {
 
-    XmlRpcTimedClient controller;
-    private InputStream is;
-    private Socket socket;
-    private PrintWriter writer;
-    private boolean canceled;
-    private boolean connected;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int STATUS_LINE = 0;
+    private static final int HEADERS     = 1;
+    private static final int CHUNK_SIZE  = 2;
+    private static final int CHUNK_DATA  = 3;
+    private static final int CHUNK_END   = 4;
 
+    XmlRpcTimedClient controller;
+    private XmlRpcEventReactor reactor;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer request;
+    private final ByteBuffer buffer;
+    private Listener listener;
+    private XmlRpcEventDecoder decoder;
+    private volatile boolean canceled;
+    private volatile boolean connected;
+    private boolean closed;
 
+    //Decoder state
+    private int state;
+    private byte[] line;
+    private int lineLen;
+    private byte[] chunk;
+    private int chunkSize;
+    private int chunkLen;
 
     public interface Listener {
         void onConnect();
@@ -52,16 +63,27 @@ public class XmlRpcEventManager {
     {
         //Create controller for retreiving default config
         controller = new XmlRpcTimedClient();
+        //Decode XML-RPC events by default
+        decoder = new XmlRpcEventXmlDecoder(controller.getTypeFactory());
+        //Create read buffer
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        //Create line and chunk buffers, they will grow if needed
+        line = new byte[128];
+        chunk = new byte[BUFFER_SIZE];
 	//not connected yet
 	connected = false;
+        //Nothing opened yet
+        closed = true;
     }
 
-    public void Connect(String endpoint,Listener listener) throws MalformedURLException
+    public void setDecoder(XmlRpcEventDecoder decoder)
+    {
+        //Set event decoder, must be done before opening the stream
+        this.decoder = decoder;
+    }
+
+    public void Open(String endpoint,Listener listener) throws IOException
     {
-        int len;
-        byte[] buffer = new byte[4096];
-        //Not canceled
-        canceled = false;
        //Create url connection with the event endpoing
         URL url = new URL(endpoint);
         //Check protocol
@@ -69,8 +91,6 @@ public class XmlRpcEventManager {
             //Error
             throw new MalformedURLException("Unsuported protocol");
         }
-        //Create new socekt
-        socket = new Socket();
         //Get host
         String host = url.getHost();
         //Get por
@@ -80,211 +100,308 @@ public class XmlRpcEventManager {
             //Default
             port = 80;
         }
-        
-       try {
-            socket.connect(new InetSocketAddress(host, port));
-            //Create request
-            String req = "POST " + url.getPath() + " HTTP/1.1\r\n\r\n";
-            //Get input stream
-            is = socket.getInputStream();
-            //Get output stream
-            writer = new PrintWriter(socket.getOutputStream());
-            //Write request
-            writer.print(req);
-            //Send it
-            writer.flush();
-            int count = 0;
-            int chunkSize = 0;
-            int chunkLen = 0;
-            boolean parsingResponseCode = true;
-            boolean parsingHeaders = true;
-            boolean parsingChunkHeader = false;
-            boolean parsingChunk = false;
-            StringBuffer line = new StringBuffer();
-            StringBuffer strLen = new StringBuffer();
-            String chunk = new String();
-            //Read each chunk
-            while ((len = is.read(buffer, 0, 4096)) > 0) {
-                //Start parsing from the begining
-                int ini = 0;
-                //Consume all input
-                while (ini < len) {
-                    //If parsing headers
-                    if (parsingHeaders) {
-                        //Find end of headers
-                        for (; ini < len; ini++) {
-                            //Increase line length
-                            count++;
-                            //check if it is a \n
-                            if (buffer[ini] == 10) {
-                                //Remove \r
-                                String header = line.substring(0, line.length() - 1);
-                                //If we have not parsed the response code
-                                if (parsingResponseCode) {
-                                    //Not parsing it anymore
-                                    parsingResponseCode = false;
-                                    //Get response code
-                                    Integer code = Integer.parseInt(header.substring(9, 12));
-                                    //Check it
-                                    if (code >= 200 && code < 300) {
-                                        //We are connected
-					connected = true;
-					//Launch listener
-                                        listener.onConnect();
-                                    } else {
-                                        //Not connected
-					connected = false;
-					//Launch listener
-                                        listener.onError();
-                                        //exit
-                                        return;
-                                    }
-                                }
-                                line = new StringBuffer();
-                                //Empty line??
-                                if (count == 2) {
-                                    //Skip it
-                                    ini++;
-                                    //Found header
-                                    parsingHeaders = false;
-                                    //Set the start of the chunk
-                                    parsingChunkHeader = true;
-                                    //We are connected
-				    connected = true;
-				    //Launch listener
-				    listener.onConnect();
-                                    //Exit loop
-                                    break;
-                                } else {
-                                    //new line
-                                    count = 0;
-                                }
-                            } else {
-                                //Append to lengt
-                                line.append((char) buffer[ini]);
-                            }
-                        }
-                    }
-                    if (parsingChunkHeader) {
-                        //Find end of headers
-                        for (; ini < len; ini++) {
-                            //check if it is a \n
-                            if (buffer[ini] == 10) {
-                                //Remove \r
-                                String str = strLen.substring(0, strLen.length() - 1);
-                                //Skip it
-                                ini++;
-                                //Stop parsing chunk header
-                                parsingChunkHeader = false;
-                                //Parse chunk
-                                parsingChunk = true;
-                                //Clear chunk
-                                chunk = new String();
-                                //Exit loop
-                                chunkSize = Integer.parseInt(str, 16) + 2;
-                                //And start parsing it
-                                chunkLen = 0;
-                                //Exti loop
-                                break;
-                            } else {
-                                //Append to lengt
-                                strLen.append((char) buffer[ini]);
-                            }
-                        }
-                    }
-                    if (parsingChunk) {
-                        //Amount to copy
-                        int copy = len - ini;
-                        //Check remaining in the buffer
-                        if (chunkLen + copy > chunkSize) {
-                            //Copy only what is needed
-                            copy = chunkSize - chunkLen;
-                        }
-                        chunk += new String(buffer, ini, copy);
-                        //Increase ini
-                        ini += copy;
-                        //Increase length
-                        chunkLen += copy;
-                        //Check if we have a full chunk
-                        if (chunkLen == chunkSize) {
-                            //Get event
-                            String event = chunk.substring(0, chunkLen - 2);
-                            //If not keep alive
-                            if (!event.isEmpty() && !event.equals("\r\n")) {
-                                //Parse chunk
-                                ParseChunk(event, listener);
-                            }
-                            parsingChunkHeader = true;
-                            //Not parse chunk
-                            parsingChunk = false;
-                            //Empty header
-                            strLen = new StringBuffer();
-                        }
-                    }
+        //Store listener
+        this.listener = listener;
+        //Not canceled
+        canceled = false;
+        //Reset decoder
+        state = STATUS_LINE;
+        lineLen = 0;
+        buffer.clear();
+        //Create request
+        request = ByteBuffer.wrap(("POST " + url.getPath() + " HTTP/1.1\r\n\r\n").getBytes("US-ASCII"));
+        //Get reactor for this stream
+        reactor = XmlRpcEventReactor.getReactor();
+        //Create non blocking channel
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        final boolean done;
+        try {
+            //Start connecting
+            done = channel.connect(new InetSocketAddress(host, port));
+        } catch (IOException ex) {
+            //Close channel
+            try { channel.close();   } catch (Exception e) {}
+            //Rethrow
+            throw ex;
+        }
+        //Not closed
+        closed = false;
+        //Register on the reactor thread
+        reactor.execute(new Runnable() {
+            public void run() {
+                try {
+                    //If it was canceled before getting here
+                    if (canceled)
+                        //Done
+                        throw new IOException("Canceled");
+                    //Wait to send request or for connection to complete
+                    key = channel.register(reactor.getSelector(), done ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, XmlRpcEventManager.this);
+                } catch (IOException ex) {
+                    //Close
+                    finish();
                 }
             }
+        });
+    }
+
+    public void Connect(String endpoint,Listener listener) throws MalformedURLException
+    {
+        try {
+            //Open it on the reactor
+            Open(endpoint, listener);
+        } catch (MalformedURLException ex) {
+            //Rethrow
+            throw ex;
         } catch (IOException ex) {
-            Logger.getLogger(XmlRpcEventManager.class.getName()).log(Level.SEVERE,"Exception when reading event http connection:{0}", ex.getMessage());
-        }
-        //trye to close everything anyway
-        Close();
-	//We are not connected anymore
-	connected = false;
-	//Check if we have been canceled
-        if (canceled)
-            //We are disconnected
-            listener.onDisconnect();
-        else
+            Logger.getLogger(XmlRpcEventManager.class.getName()).log(Level.SEVERE,"Exception when opening event http connection:{0}", ex.getMessage());
             //Error
             listener.onError();
+            //Exit
+            return;
+        }
+        //Lock
+        synchronized(this) {
+            try {
+                //Wait until stream is closed
+                while (!closed)
+                    //Wait
+                    wait();
+            } catch (InterruptedException ex) {
+                //Cancel
+                Cancel();
+            }
+        }
     }
 
-
-    private void ParseChunk(String chunk,Listener listener)
+    void onReady(SelectionKey key)
     {
         try {
-            //Get the input
-            InputSource isource = new InputSource(new StringReader(chunk));
-            //Create reader
-            XMLReader xr = SAXParsers.newXMLReader();
-            //Create response parser
-            XmlRpcResponseParser xp = new XmlRpcResponseParser( new XmlRpcStreamRequestConfig() {
-                public boolean isGzipCompressing() {
-                    return false;
-                }
-                public boolean isGzipRequesting() {
-                    return false;
-                }
-                public boolean isEnabledForExceptions() {
-                    return false;
-                }
-                public String getEncoding() {
-                    return "UTF-8";
-                }
-                public boolean isEnabledForExtensions() {
-                     return false;
-                }
-                public TimeZone getTimeZone() {
-                     return TimeZone.getDefault();
+            //If connected
+            if (key.isConnectable())
+            {
+                //End connection
+                channel.finishConnect();
+                //Send request
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                //Write request
+                channel.write(request);
+                //If all sent
+                if (!request.hasRemaining())
+                    //Wait for events
+                    key.interestOps(SelectionKey.OP_READ);
+            } else if (key.isReadable()) {
+                //Read available data
+                int len = channel.read(buffer);
+                //If closed
+                if (len<0)
+                    //Error
+                    throw new IOException("Connection closed by media server");
+                //Prepare for reading
+                buffer.flip();
+                //Decode all
+                decode(buffer);
+                //Ready to read again
+                buffer.clear();
+            }
+        } catch (Exception ex) {
+            //If not canceled by us
+            if (!canceled)
+                //Log
+                Logger.getLogger(XmlRpcEventManager.class.getName()).log(Level.SEVERE,"Exception when reading event http connection:{0}", ex.getMessage());
+            //Close
+            finish();
+        }
+    }
+
+    private void decode(ByteBuffer buffer) throws IOException
+    {
+        //Consume all input
+        while (buffer.hasRemaining() && !closed)
+        {
+            //Depending on the state
+            switch (state)
+            {
+                case STATUS_LINE:
+                case HEADERS:
+                case CHUNK_SIZE:
+                case CHUNK_END:
+                    //Read until end of line
+                    if (!readLine(buffer))
+                        //Need more
+                        return;
+                    //Process it
+                    onLine();
+                    //Clear line
+                    lineLen = 0;
+                    break;
+                case CHUNK_DATA:
+                    //Amount to copy
+                    int copy = Math.min(buffer.remaining(), chunkSize - chunkLen);
+                    //Copy into chunk without creating strings
+                    buffer.get(chunk, chunkLen, copy);
+                    //Increase length
+                    chunkLen += copy;
+                    //Check if we have a full chunk
+                    if (chunkLen == chunkSize) {
+                        //If not keep alive
+                        if (!isBlank(chunk, chunkLen))
+                            //Parse chunk
+                            ParseChunk(chunk, 0, chunkLen, listener);
+                        //Skip trailing CRLF
+                        state = CHUNK_END;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private boolean readLine(ByteBuffer buffer)
+    {
+        //While we have data
+        while (buffer.hasRemaining())
+        {
+            //Get next byte
+            byte b = buffer.get();
+            //check if it is a \n
+            if (b == '\n')
+                //Got full line
+                return true;
+            //Skip \r
+            if (b == '\r')
+                //Next
+                continue;
+            //Check size
+            if (lineLen == line.length) {
+                //Grow
+                byte[] aux = new byte[line.length*2];
+                //Copy
+                System.arraycopy(line, 0, aux, 0, lineLen);
+                //Replace
+                line = aux;
+            }
+            //Append
+            line[lineLen++] = b;
+        }
+        //Not yet
+        return false;
+    }
+
+    private void onLine() throws IOException
+    {
+        //Depending on the state
+        switch (state)
+        {
+            case STATUS_LINE:
+                //Check length
+                if (lineLen < 12)
+                    //Error
+                    throw new IOException("Wrong response status line");
+                //Get response code
+                int code = Integer.parseInt(new String(line, 9, 3, "US-ASCII"));
+                //Check it
+                if (code < 200 || code >= 300)
+                    //Error
+                    throw new IOException("Wrong response code " + code);
+                //Parse headers
+                state = HEADERS;
+                break;
+            case HEADERS:
+                //Empty line??
+                if (lineLen == 0) {
+                    //Found end of headers, set the start of the chunk
+                    state = CHUNK_SIZE;
+                    //We are connected
+                    connected = true;
+                    //Launch listener
+                    listener.onConnect();
                 }
-            },controller.getTypeFactory());
-            //Set the cntent handler
-            xr.setContentHandler(xp);
-            //parse source
-            xr.parse(isource);
+                break;
+            case CHUNK_SIZE:
+                //Parse hex size, skipping extensions
+                int size = 0;
+                for (int i=0; i<lineLen && line[i]!=';'; i++)
+                    //Add digit
+                    size = size*16 + Character.digit(line[i], 16);
+                //Last chunk
+                if (size == 0)
+                    //Error
+                    throw new IOException("Event stream ended by media server");
+                //Check size
+                if (size > chunk.length)
+                    //Grow
+                    chunk = new byte[size];
+                //Start parsing it
+                chunkSize = size;
+                chunkLen = 0;
+                state = CHUNK_DATA;
+                break;
+            case CHUNK_END:
+                //Next chunk
+                state = CHUNK_SIZE;
+                break;
+        }
+    }
+
+    private static boolean isBlank(byte[] data,int len)
+    {
+        //For each byte
+        for (int i=0; i<len; i++)
+            //If not white space
+            if (data[i]!='\r' && data[i]!='\n' && data[i]!=' ')
+                //Not blank
+                return false;
+        //Empty
+        return true;
+    }
+
+    private void ParseChunk(byte[] data,int offset,int length,Listener listener)
+    {
+        try {
+            //Decode event in place
+            Object event = decoder.decode(data, offset, length);
             //If it is a success event
-            if (xp.isSuccess())
+            if (event!=null)
                 //Call event
-                listener.onEvent(xp.getResult());
-        } catch (SAXException e) {
-            Logger.getLogger(XmlRpcEventManager.class.getName()).log(Level.SEVERE, "Chunk: "+chunk, e);
-        } catch (IOException e) {
-            Logger.getLogger(XmlRpcEventManager.class.getName()).log(Level.SEVERE, null, e);
+                listener.onEvent(event);
         } catch (XmlRpcException e) {
             Logger.getLogger(XmlRpcEventManager.class.getName()).log(Level.SEVERE, e.getMessage(), e);
         }
     }
 
+    private void finish()
+    {
+        //Check if already done
+        if (closed)
+            //Exit
+            return;
+        //Cancel key
+        if (key!=null)
+            //Remove from selector
+            key.cancel();
+        //Close socket
+        try { channel.close();   } catch (Exception e) {}
+        //Nullify
+        key = null;
+	//We are not connected anymore
+	connected = false;
+        //Lock
+        synchronized(this) {
+            //Closed
+            closed = true;
+            //Wake up any waiting thread
+            notifyAll();
+        }
+	//Check if we have been canceled
+        if (canceled)
+            //We are disconnected
+            listener.onDisconnect();
+        else
+            //Error
+            listener.onError();
+    }
+
     public void Cancel()
     {
         //We have been canceled
@@ -295,16 +412,24 @@ public class XmlRpcEventManager {
 
     public void Close()
     {
-        //Close input stream
-        try { is.close();       } catch (Exception e) {}
-        //Close writter
-        try { writer.close();   } catch (Exception e) {}
-        //Close socket
-        try { socket.close();   } catch (Exception e) {}
-        //Nullify
-        is = null;
-        writer = null;
-        socket = null;
+        //If never opened
+        if (reactor==null)
+            //Nothing to close
+            return;
+        //If on the reactor thread
+        if (reactor.isReactorThread()) {
+            //Close now
+            finish();
+            //Exit
+            return;
+        }
+        //Close it from the reactor thread
+        reactor.execute(new Runnable() {
+            public void run() {
+                //Close
+                finish();
+            }
+        });
     }
 
     public boolean isConnected() {
@@ -0,0 +1,115 @@
+/*
+ * XmlRpcEventReactor.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.MediaServer;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selector thread multiplexing the event streams of all the media servers.
+ * Event managers are spread across a small fixed set of reactors.
+ * @author Sergio Garcia Murillo
+ */
+public class XmlRpcEventReactor implements Runnable {
+
+    private static final int NUM_REACTORS = 2;
+    private static final XmlRpcEventReactor[] reactors = new XmlRpcEventReactor[NUM_REACTORS];
+    private static int next = 0;
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+    private final Thread thread;
+
+    public static synchronized XmlRpcEventReactor getReactor() throws IOException {
+        //Get next one
+        int num = next;
+        //Round robin
+        next = (next+1) % NUM_REACTORS;
+        //If not started yet
+        if (reactors[num]==null)
+            //Create it
+            reactors[num] = new XmlRpcEventReactor(num);
+        //Return it
+        return reactors[num];
+    }
+
+    private XmlRpcEventReactor(int num) throws IOException {
+        //Create selector
+        selector = Selector.open();
+        //Create pending task queue
+        tasks = new ConcurrentLinkedQueue<Runnable>();
+        //Create thread
+        thread = new Thread(this, "XmlRpcEventReactor-" + num);
+        //Do not prevent shutdown
+        thread.setDaemon(true);
+        //Start it
+        thread.start();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    boolean isReactorThread() {
+        return Thread.currentThread()==thread;
+    }
+
+    void execute(Runnable task) {
+        //Queue task
+        tasks.add(task);
+        //Wake up selector so it is run now
+        selector.wakeup();
+    }
+
+    public void run() {
+        //Loop forever
+        while (true) {
+            try {
+                //Wait for events
+                selector.select();
+                //Run pending tasks
+                Runnable task;
+                while ((task = tasks.poll())!=null)
+                    //Run it
+                    task.run();
+                //Get ready keys
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                //For each one
+                while (it.hasNext()) {
+                    //Get key
+                    SelectionKey key = it.next();
+                    //Remove from selected set
+                    it.remove();
+                    //Check it is still valid
+                    if (key.isValid())
+                        //Process it
+                        ((XmlRpcEventManager)key.attachment()).onReady(key);
+                }
+            } catch (Exception ex) {
+                //Log and continue with the rest of the streams
+                Logger.getLogger(XmlRpcEventReactor.class.getName()).log(Level.SEVERE, "Error on event reactor", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * XmlRpcEventXmlDecoder.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.MediaServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.common.TypeFactory;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.apache.xmlrpc.parser.XmlRpcResponseParser;
+import org.apache.xmlrpc.util.SAXParsers;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Decodes XML-RPC method responses sent as events.
+ * The SAX reader, response parser and input source are created once and reused for every event,
+ * and the chunk bytes are parsed in place.
+ * @author Sergio Garcia Murillo
+ */
+public class XmlRpcEventXmlDecoder implements XmlRpcEventDecoder {
+
+    private static final XmlRpcStreamRequestConfig config = new XmlRpcStreamRequestConfig() {
+        public boolean isGzipCompressing() {
+            return false;
+        }
+        public boolean isGzipRequesting() {
+            return false;
+        }
+        public boolean isEnabledForExceptions() {
+            return false;
+        }
+        public String getEncoding() {
+            return "UTF-8";
+        }
+        public boolean isEnabledForExtensions() {
+             return false;
+        }
+        public TimeZone getTimeZone() {
+             return TimeZone.getDefault();
+        }
+    };
+
+    private static class ChunkInputStream extends ByteArrayInputStream {
+        public ChunkInputStream() {
+            super(new byte[0]);
+        }
+
+        public void set(byte[] data,int offset,int length) {
+            //Point to the chunk without copying
+            buf = data;
+            pos = offset;
+            count = offset+length;
+            mark = offset;
+        }
+    }
+
+    private final TypeFactory typeFactory;
+    private final ChunkInputStream input;
+    private final InputSource source;
+    private XmlRpcResponseParser parser;
+    private XMLReader reader;
+
+    public XmlRpcEventXmlDecoder(TypeFactory typeFactory) {
+        //Store type factory
+        this.typeFactory = typeFactory;
+        //Create reusable input
+        input = new ChunkInputStream();
+        source = new InputSource(input);
+    }
+
+    public Object decode(byte[] data,int offset,int length) throws XmlRpcException {
+        //If not created yet or broken by a previous error
+        if (reader==null) {
+            //Create reader
+            reader = SAXParsers.newXMLReader();
+            //Create response parser
+            parser = new XmlRpcResponseParser(config,typeFactory);
+            //Set the content handler
+            reader.setContentHandler(parser);
+        }
+        //Set chunk
+        input.set(data, offset, length);
+        try {
+            //Parse source
+            reader.parse(source);
+        } catch (SAXException e) {
+            //Do not reuse a reader in an unknown state
+            reader = null;
+            //Error
+            throw new XmlRpcException("Could not parse event: " + new String(data, offset, length), e);
+        } catch (IOException e) {
+            //Do not reuse a reader in an unknown state
+            reader = null;
+            //Error
+            throw new XmlRpcException("Could not read event", e);
+        } finally {
+            //Release chunk
+            input.set(null, 0, 0);
+        }
+        //If it is not a success event
+        if (!parser.isSuccess())
+            //Skip
+            return null;
+        //Return result
+        return parser.getResult();
+    }
+}
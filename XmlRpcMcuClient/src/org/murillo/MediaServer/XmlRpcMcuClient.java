@@ -18,6 +18,7 @@
  */
 package org.murillo.MediaServer;
 
+import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import org.apache.xmlrpc.XmlRpcException;
@@ -34,6 +35,7 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 import org.murillo.MediaServer.Codecs.MediaType;
 import org.murillo.MediaServer.Codecs.Setup;
+import org.murillo.MediaServer.XmlRpcBatch.Call;
 
 /**
  *
@@ -45,22 +47,82 @@ public class XmlRpcMcuClient {
 
     @XmlType()
     @XmlAccessorType(XmlAccessType.NONE)
-    public static class MediaStatistics {
+    public static class MediaStatistics implements Serializable {
+	private static final long serialVersionUID = 1L;
 	@XmlElement
 	public boolean	isSending = false;
 	@XmlElement
 	public boolean	isReceiving = false;
 	@XmlElement
-        public Integer	lostRecvPackets = 0;
+        public long	lostRecvPackets = 0;
 	@XmlElement
-	public Integer	numRecvPackets = 0;
+	public long	numRecvPackets = 0;
 	@XmlElement
-	public Integer	numSendPackets = 0;
+	public long	numSendPackets = 0;
 	@XmlElement
-	public Integer	totalRecvBytes = 0;
+	public long	totalRecvBytes = 0;
 	@XmlElement
-	public Integer	totalSendBytes = 0;
+	public long	totalSendBytes = 0;
+	//Time when the sample was taken in ms
+	@XmlElement
+	public long	timestamp = 0;
+	//Rates since previous sample, zero if there was none
+	@XmlElement
+	public double	recvPacketRate = 0;
+	@XmlElement
+	public double	sendPacketRate = 0;
+	@XmlElement
+	public long	recvBitrate = 0;
+	@XmlElement
+	public long	sendBitrate = 0;
+	@XmlElement
+	public double	lossRate = 0;
 
+	public void set(MediaStatistics other) {
+	    //Copy all values
+	    isSending       = other.isSending;
+	    isReceiving     = other.isReceiving;
+	    lostRecvPackets = other.lostRecvPackets;
+	    numRecvPackets  = other.numRecvPackets;
+	    numSendPackets  = other.numSendPackets;
+	    totalRecvBytes  = other.totalRecvBytes;
+	    totalSendBytes  = other.totalSendBytes;
+	    timestamp       = other.timestamp;
+	    recvPacketRate  = other.recvPacketRate;
+	    sendPacketRate  = other.sendPacketRate;
+	    recvBitrate     = other.recvBitrate;
+	    sendBitrate     = other.sendBitrate;
+	    lossRate        = other.lossRate;
+	}
+
+	/**
+	 * Calculate rates from the counters of a previous sample of the same media.
+	 */
+	public void calculateRates(MediaStatistics prev) {
+	    //Get elapsed time in seconds
+	    double elapsed = prev!=null ? (timestamp-prev.timestamp)/1000.0 : 0;
+	    //Check we can calculate them
+	    if (elapsed<=0) {
+		//No rates
+		recvPacketRate = 0;
+		sendPacketRate = 0;
+		recvBitrate = 0;
+		sendBitrate = 0;
+		lossRate = 0;
+		//Exit
+		return;
+	    }
+	    //Get packets on interval
+	    long recv = numRecvPackets-prev.numRecvPackets;
+	    long lost = lostRecvPackets-prev.lostRecvPackets;
+	    //Calculate rates
+	    recvPacketRate = recv/elapsed;
+	    sendPacketRate = (numSendPackets-prev.numSendPackets)/elapsed;
+	    recvBitrate    = (long)((totalRecvBytes-prev.totalRecvBytes)*8/elapsed);
+	    sendBitrate    = (long)((totalSendBytes-prev.totalSendBytes)*8/elapsed);
+	    //Loss percentage over expected packets
+	    lossRate       = recv+lost>0 ? lost*100.0/(recv+lost) : 0;
+	}
     };
 
     public static class ConferenceInfo {
@@ -69,6 +131,173 @@ public class XmlRpcMcuClient {
         public Integer numPart;
     }
     
+    public class Batch extends XmlRpcBatch {
+
+        private Batch() {
+            super(client);
+        }
+
+        public Call GetParticipantStatistics(Integer confId,Integer partId)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId};
+            //Log
+            logger.log(level,"GetParticipantStatistics({0},{1})",request);
+            //Queue
+            return add("GetParticipantStatistics", request);
+        }
+
+        public Call GetConferenceStatistics(Integer confId)
+        {
+            //Create request
+            Object[] request = new Object[]{confId};
+            //Log
+            logger.log(level,"GetConferenceStatistics({0})",request);
+            //Queue
+            return add("GetConferenceStatistics", request);
+        }
+
+        public Call SetLocalSTUNCredentials(Integer confId,Integer partId,MediaType media,String username,String pwd)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),username,pwd};
+            //Log
+            logger.log(level,"SetLocalSTUNCredentials({0},{1},{2},{3},{4})",request);
+            //Queue
+            return add("SetLocalSTUNCredentials", request);
+        }
+
+        public Call SetRemoteSTUNCredentials(Integer confId,Integer partId,MediaType media,String username,String pwd)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),username,pwd};
+            //Log
+            logger.log(level,"SetRemoteSTUNCredentials({0},{1},{2},{3},{4})",request);
+            //Queue
+            return add("SetRemoteSTUNCredentials", request);
+        }
+
+        public Call SetLocalCryptoSDES(Integer confId,Integer partId,MediaType media,String suite,String key)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),suite,key};
+            //Log
+            logger.log(level,"SetLocalCryptoSDES({0},{1},{2},{3},{4})",request);
+            //Queue
+            return add("SetLocalCryptoSDES", request);
+        }
+
+        public Call SetRemoteCryptoSDES(Integer confId,Integer partId,MediaType media,String suite,String key)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),suite,key};
+            //Log
+            logger.log(level,"SetRemoteCryptoSDES({0},{1},{2},{3},{4})",request);
+            //Queue
+            return add("SetRemoteCryptoSDES", request);
+        }
+
+        public Call GetLocalCryptoDTLSFingerprint(String hash)
+        {
+            //Create request
+            Object[] request = new Object[]{hash};
+            //Log
+            logger.log(level,"GetLocalCryptoDTLSFingerprint({0})",request);
+            //Queue
+            return add("GetLocalCryptoDTLSFingerprint", request);
+        }
+
+        public Call SetRemoteCryptoDTLS(Integer confId,Integer partId,MediaType media,Setup setup,String hash,String fingerprint)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),setup.valueOf(),hash,fingerprint};
+            //Log
+            logger.log(level,"SetRemoteCryptoDTLS({0},{1},{2},{3},{4},{5})",request);
+            //Queue
+            return add("SetRemoteCryptoDTLS", request);
+        }
+
+        public Call SetRTPProperties(Integer confId,Integer partId,MediaType media, HashMap<String,String> properties)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),properties};
+            //Log
+            logger.log(level,"SetRTPProperties({0},{1},{2},{3})",request);
+            //Queue
+            return add("SetRTPProperties", request);
+        }
+
+        public Call StartSending(Integer confId,Integer partId,MediaType media,String sendIp,Integer sendPort,HashMap<Integer,Integer> rtpMap)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),sendIp,sendPort,rtpMap};
+            //Log
+            logger.log(level,"StartSending({0},{1},{2},{3},{4},{5})",request);
+            //Queue
+            return add("StartSending", request);
+        }
+
+        public Call StopSending(Integer confId,Integer partId,MediaType media)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf()};
+            //Log
+            logger.log(level,"StopSending({0},{1},{2})",request);
+            //Queue
+            return add("StopSending", request);
+        }
+
+        public Call StartReceiving(Integer confId,Integer partId,MediaType media,HashMap<Integer,Integer> rtpMap)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf(),rtpMap};
+            //Log
+            logger.log(level,"StartReceiving({0},{1},{2},{3})",request);
+            //Queue
+            return add("StartReceiving", request);
+        }
+
+        public Call StopReceiving(Integer confId,Integer partId,MediaType media)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,media.valueOf()};
+            //Log
+            logger.log(level,"StopReceiving({0},{1},{2})",request);
+            //Queue
+            return add("StopReceiving", request);
+        }
+
+        public Call SetVideoCodec(Integer confId,Integer partId,Integer codec,Integer mode,Integer fps,Integer bitrate,Integer intraPeriod, HashMap<String,String> params)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,codec,mode,fps,bitrate,intraPeriod,params};
+            //Log
+            logger.log(level,"SetVideoCodec({0},{1},{2},{3},{4},{5},{6},{7})",request);
+            //Queue
+            return add("SetVideoCodec", request);
+        }
+
+        public Call SetAudioCodec(Integer confId,Integer partId,Integer codec)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,codec};
+            //Log
+            logger.log(level,"SetAudioCodec({0},{1},{2})",request);
+            //Queue
+            return add("SetAudioCodec", request);
+        }
+
+        public Call SetTextCodec(Integer confId,Integer partId,Integer codec)
+        {
+            //Create request
+            Object[] request = new Object[]{confId,partId,codec};
+            //Log
+            logger.log(level,"SetTextCodec({0},{1},{2})",request);
+            //Queue
+            return add("SetTextCodec", request);
+        }
+    }
+
     public static final Integer QCIF	= 0;  // 176  x 144 	AR:	1,222222222
     public static final Integer CIF	= 1;  // 352  x 288	AR:	1,222222222
     public static final Integer VGA	= 2;  // 640  x 480	AR:	1,333333333
@@ -204,6 +433,18 @@ public class XmlRpcMcuClient {
         client.setConfig(config);
     }
 
+    public void enableConnectionPool(int maxConnections)
+    {
+        //Reuse persistent connections to the media server
+        client.enableConnectionPool(maxConnections);
+    }
+
+    public Batch createBatch()
+    {
+        //Create new batch of calls to be sent at once
+        return new Batch();
+    }
+
     public Map<Integer,ConferenceInfo> getConferences() throws XmlRpcException {
         //Create request
         Object[] request = new Object[]{};
@@ -996,8 +1237,30 @@ public class XmlRpcMcuClient {
 	if (((Integer)response.get("returnCode"))!=1)
 		//Error
 		return null;
-        //Get result
-        Object[] returnVal = (Object[]) response.get("returnVal");
+        //Parse result
+        return parseParticipantStatistics((Object[]) response.get("returnVal"));
+    }
+
+    /**
+     * Get the statistics of all the participants of a conference in a single request.
+     * @return statistics by media for each participant id, or null if the conference was not found
+     */
+    public Map<Integer,Map<String,MediaStatistics>> getConferenceStatistics(Integer confId) throws XmlRpcException {
+        //Create request
+        Object[] request = new Object[]{confId};
+        //Log
+        logger.log(level,"GetConferenceStatistics({0})",request);
+        //Execute
+        HashMap response = (HashMap) client.execute("GetConferenceStatistics", request);
+	//Check it is ok
+	if (((Integer)response.get("returnCode"))!=1)
+		//Error
+		return null;
+        //Parse result
+        return parseConferenceStatistics((Object[]) response.get("returnVal"));
+    }
+
+    public static Map<String,MediaStatistics> parseParticipantStatistics(Object[] returnVal) {
         //Create map
         HashMap<String,MediaStatistics> partStats = new HashMap<String, MediaStatistics>();
         //For each value in array
@@ -1005,24 +1268,73 @@ public class XmlRpcMcuClient {
         {
             //Get array
              Object[] arr = (Object[]) returnVal[i];
-             //Get media
-             String media = (String)arr[0];
-             //Create stats
-             MediaStatistics stats = new MediaStatistics();
-             //Fill values
-             stats.isReceiving      = ((Integer)arr[1])==1;
-             stats.isSending        = ((Integer)arr[2])==1;
-             stats.lostRecvPackets  = (Integer)arr[3];
-             stats.numRecvPackets   = (Integer)arr[4];
-             stats.numSendPackets   = (Integer)arr[5];
-             stats.totalRecvBytes   = (Integer)arr[6];
-             stats.totalSendBytes   = (Integer)arr[7];
              //Add it
-             partStats.put(media, stats);
+             partStats.put((String)arr[0], parseMediaStatistics(arr,1));
         }
-        //Return conference id
+        //Return stats
         return partStats;
     }
+
+    public static Map<Integer,Map<String,MediaStatistics>> parseConferenceStatistics(Object[] returnVal) {
+        //Create map
+        HashMap<Integer,Map<String,MediaStatistics>> confStats = new HashMap<Integer, Map<String, MediaStatistics>>();
+        //For each value in array
+        for (int i=0;i<returnVal.length;i++)
+        {
+            //Get array
+            Object[] arr = (Object[]) returnVal[i];
+            //Get participant
+            Integer partId = (Integer)arr[0];
+            //Get its stats
+            Map<String,MediaStatistics> partStats = confStats.get(partId);
+            //If first media of the participant
+            if (partStats==null)
+                //Create and add it
+                confStats.put(partId, partStats = new HashMap<String, MediaStatistics>());
+            //Add media
+            partStats.put((String)arr[1], parseMediaStatistics(arr,2));
+        }
+        //Return stats
+        return confStats;
+    }
+
+    private static MediaStatistics parseMediaStatistics(Object[] arr,int offset) {
+        //Create stats
+        MediaStatistics stats = new MediaStatistics();
+        //Fill values
+        parseMediaStatistics(arr, offset, stats);
+        //Set time
+        stats.timestamp = System.currentTimeMillis();
+        //Return them
+        return stats;
+    }
+
+    /**
+     * Fill a statistics record with the values of a response entry, without allocating.
+     * Counters are 32 bit unsigned on the wire, so they are returned in the lower bits of the long values.
+     * @param arr response entry
+     * @param offset position of the isReceiving flag in the entry
+     * @param stats record to fill
+     */
+    public static void parseMediaStatistics(Object[] arr,int offset,MediaStatistics stats) {
+        //Fill values
+        stats.isReceiving      = ((Integer)arr[offset])==1;
+        stats.isSending        = ((Integer)arr[offset+1])==1;
+        stats.lostRecvPackets  = toCounter(arr[offset+2]);
+        stats.numRecvPackets   = toCounter(arr[offset+3]);
+        stats.numSendPackets   = toCounter(arr[offset+4]);
+        stats.totalRecvBytes   = toCounter(arr[offset+5]);
+        stats.totalSendBytes   = toCounter(arr[offset+6]);
+    }
+
+    private static long toCounter(Object val) {
+        //If it is a xmlrpc int, the server sent an unsigned DWORD
+        if (val instanceof Integer)
+            //Do not sign extend
+            return ((Integer)val) & 0xFFFFFFFFL;
+        //64 bit value
+        return ((Number)val).longValue();
+    }
     
     public int EventQueueCreate() throws XmlRpcException
     {
@@ -0,0 +1,464 @@
+/*
+ * XmlRpcPooledHttpTransport.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.MediaServer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.client.XmlRpcHttpClientConfig;
+import org.apache.xmlrpc.client.XmlRpcHttpTransport;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.client.XmlRpcTransportFactoryImpl;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.xml.sax.SAXException;
+
+/**
+ * HTTP/1.1 keep-alive transport that borrows its sockets from a {@link XmlRpcConnectionPool}.
+ * The request is executed on the calling thread and the timeout is enforced on the socket reads.
+ * @author Sergio Garcia Murillo
+ */
+public class XmlRpcPooledHttpTransport extends XmlRpcHttpTransport {
+
+    private static final String userAgent = USER_AGENT + " (Pooled HTTP Transport)";
+    private static final int MAX_DRAIN = 65536;
+
+    public static class Factory extends XmlRpcTransportFactoryImpl {
+        private final int maxConnections;
+
+        public Factory(XmlRpcClient client,int maxConnections) {
+            super(client);
+            this.maxConnections = maxConnections;
+        }
+
+        public XmlRpcTransport getTransport() {
+            return new XmlRpcPooledHttpTransport(getClient(),maxConnections);
+        }
+    }
+
+    private final int maxConnections;
+    private final Map<String,String> headers;
+    private XmlRpcConnectionPool pool;
+    private XmlRpcConnectionPool.Connection connection;
+    private ResponseInputStream input;
+    private String hostname;
+    private int port;
+    private String uri;
+    private long deadline;
+    private boolean stale;
+    private boolean sent;
+    private boolean responded;
+    private boolean keepAlive;
+    private boolean responseGzipCompressed;
+
+    public XmlRpcPooledHttpTransport(XmlRpcClient client,int maxConnections) {
+        super(client,userAgent);
+        //Store max connections
+        this.maxConnections = maxConnections;
+        //Create header map
+        this.headers = new LinkedHashMap<String,String>();
+    }
+
+    @Override
+    public Object sendRequest(XmlRpcRequest pRequest) throws XmlRpcException {
+        //Get config
+        XmlRpcHttpClientConfig config = (XmlRpcHttpClientConfig) pRequest.getConfig();
+        //Get url
+        URL url = config.getServerURL();
+        //Check protocol
+        if (!url.getProtocol().equalsIgnoreCase("http"))
+            //Error
+            throw new XmlRpcClientException("Unsupported protocol " + url.getProtocol(), null);
+        //Get host
+        hostname = url.getHost();
+        //Get port
+        port = url.getPort()!=-1 ? url.getPort() : 80;
+        //Get path
+        uri = url.getFile()!=null && !url.getFile().isEmpty() ? url.getFile() : "/";
+        //Set host header
+        headers.put("Host", port==80 ? hostname : hostname + ":" + port);
+        //Get pool for this endpoint
+        pool = XmlRpcConnectionPool.getPool(hostname,port,maxConnections);
+        //Calculate when we must give up
+        deadline = System.currentTimeMillis() + getTimeout(config);
+        try {
+            //Send it
+            return super.sendRequest(pRequest);
+        } catch (XmlRpcException ex) {
+            //If it was not an idle connection closed by the server before the request was sent
+            if (!stale)
+                //Rethrow
+                throw ex;
+        }
+        //Any other idle connection is likely to be closed too
+        pool.purge();
+        //Retry once on a fresh connection, the request never reached the server
+        return super.sendRequest(pRequest);
+    }
+
+    private int getTimeout(XmlRpcHttpClientConfig config) {
+        //If it is our own client
+        if (getClient() instanceof XmlRpcTimedClient)
+            //Use its timeout
+            return ((XmlRpcTimedClient)getClient()).getTimeout();
+        //Use reply timeout from config
+        return config.getReplyTimeout()>0 ? config.getReplyTimeout() : 10000;
+    }
+
+    private int getRemaining() throws SocketTimeoutException {
+        //Calculate remaining time
+        long remaining = deadline - System.currentTimeMillis();
+        //Check
+        if (remaining<=0)
+            //Error
+            throw new SocketTimeoutException("Timed out executing request on " + hostname + ":" + port);
+        //Return it
+        return (int)remaining;
+    }
+
+    @Override
+    protected void setRequestHeader(String pHeader, String pValue) {
+        //Set it
+        headers.put(pHeader, pValue);
+    }
+
+    @Override
+    protected boolean isUsingByteArrayOutput(XmlRpcHttpClientConfig pConfig) {
+        //We always need the content length to keep the connection open
+        return true;
+    }
+
+    @Override
+    protected void writeRequest(ReqWriter pWriter) throws XmlRpcException, IOException, SAXException {
+        //Not stale
+        stale = false;
+        //Nothing sent nor received yet
+        sent = false;
+        responded = false;
+        //No response yet
+        input = null;
+        //Get a connection
+        connection = pool.acquire(getRemaining());
+        try {
+            //Set timeout for the request
+            connection.setTimeout(getRemaining());
+            //Get output, the writer closes the stream, so only flush it
+            OutputStream output = new FilterOutputStream(connection.getOutputStream()) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            //Create request line and headers
+            StringBuilder head = new StringBuilder(256);
+            //Request line
+            head.append("POST ").append(uri).append(" HTTP/1.1\r\n");
+            //Append headers
+            for (Map.Entry<String,String> entry : headers.entrySet())
+                //Append it
+                head.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+            //Keep it open
+            head.append("Connection: keep-alive\r\n\r\n");
+            //Write headers
+            output.write(head.toString().getBytes("US-ASCII"));
+            //Write body and flush
+            pWriter.write(output);
+            //From now on the server may have executed it
+            sent = true;
+            //Read response headers
+            readResponseHeaders(connection.getInputStream());
+        } catch (IOException ex) {
+            //If the request could not be written, or the connection was closed without any response, on a reused connection
+            //the server has closed it while idle without processing the request and it is safe to send it again
+            stale = connection.isReused() && (!sent || !responded) && !(ex instanceof SocketTimeoutException);
+            //Rethrow
+            throw ex;
+        }
+    }
+
+    private void readResponseHeaders(InputStream in) throws IOException, XmlRpcException {
+        //Read status line
+        String status = readLine(in);
+        //Check
+        if (status==null)
+            //Connection closed by server
+            throw new IOException("Connection closed by " + hostname + ":" + port);
+        //Got response
+        responded = true;
+        //Check it is http
+        if (!status.startsWith("HTTP/") || status.length()<12)
+            //Error
+            throw new XmlRpcClientException("Invalid HTTP response line: " + status, null);
+        //HTTP/1.1 keeps the connection by default
+        keepAlive = status.startsWith("HTTP/1.1");
+        //Get response code
+        int code = Integer.parseInt(status.substring(9,12));
+        //Get message
+        String message = status.length()>13 ? status.substring(13) : "";
+        //Not known
+        int contentLength = -1;
+        boolean chunked = false;
+        responseGzipCompressed = false;
+        //Read headers
+        String line;
+        while ((line=readLine(in))!=null && !line.isEmpty()) {
+            //Get separator
+            int i = line.indexOf(':');
+            //Skip malformed ones
+            if (i==-1)
+                continue;
+            //Get name and value
+            String name = line.substring(0,i).trim();
+            String value = line.substring(i+1).trim();
+            //Check header
+            if (name.equalsIgnoreCase("Content-Length"))
+                //Get length
+                contentLength = Integer.parseInt(value);
+            else if (name.equalsIgnoreCase("Transfer-Encoding"))
+                //Check if chunked
+                chunked = value.equalsIgnoreCase("chunked");
+            else if (name.equalsIgnoreCase("Connection"))
+                //Check if server wants to keep it open
+                keepAlive = !value.equalsIgnoreCase("close") && (keepAlive || value.equalsIgnoreCase("keep-alive"));
+            else if (name.equalsIgnoreCase("Keep-Alive"))
+                //Get how long the server keeps it open
+                connection.setKeepAlive(getKeepAliveTimeout(value));
+            else if (name.equalsIgnoreCase("Content-Encoding"))
+                //Check compression
+                responseGzipCompressed = value.equalsIgnoreCase("gzip");
+        }
+        //Check response
+        if (code<200 || code>299)
+            //Error
+            throw new XmlRpcHttpTransportException(code, message);
+        //Without length nor chunks the body ends when the server closes the connection
+        if (!chunked && contentLength==-1)
+            //Can't reuse
+            keepAlive = false;
+        //Create response body stream
+        input = new ResponseInputStream(in, chunked ? -1 : contentLength, chunked);
+    }
+
+    private static int getKeepAliveTimeout(String value) {
+        //For each parameter
+        for (String param : value.split(",")) {
+            //Get separator
+            int i = param.indexOf('=');
+            //If it is the timeout
+            if (i!=-1 && param.substring(0,i).trim().equalsIgnoreCase("timeout")) {
+                try {
+                    //Convert to ms, one second earlier to avoid racing with the server
+                    return Math.max(Integer.parseInt(param.substring(i+1).trim())-1,0)*1000;
+                } catch (NumberFormatException ex) {
+                    //Ignore
+                    break;
+                }
+            }
+        }
+        //Not known
+        return -1;
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        //Create line
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        //Read until end of line
+        while ((c=in.read())!=-1) {
+            //Check end of line
+            if (c=='\n') {
+                //Remove \r
+                if (line.length()>0 && line.charAt(line.length()-1)=='\r')
+                    //Remove it
+                    line.setLength(line.length()-1);
+                //Return line
+                return line.toString();
+            }
+            //Append
+            line.append((char)c);
+        }
+        //Closed
+        return line.length()>0 ? line.toString() : null;
+    }
+
+    @Override
+    protected InputStream getInputStream() throws XmlRpcException {
+        return input;
+    }
+
+    @Override
+    protected boolean isResponseGzipCompressed(XmlRpcStreamRequestConfig pConfig) {
+        return responseGzipCompressed;
+    }
+
+    @Override
+    protected void close() throws XmlRpcClientException {
+        //If we don't have a connection
+        if (connection==null)
+            //Do nothing
+            return;
+        //Reuse only if the whole response has been consumed
+        boolean reusable = keepAlive && input!=null && input.drain();
+        //Give it back
+        pool.release(connection, reusable);
+        //Clean
+        connection = null;
+        input = null;
+    }
+
+    private class ResponseInputStream extends InputStream {
+        private final InputStream in;
+        private final boolean chunked;
+        private long remaining;
+        private boolean eof;
+
+        ResponseInputStream(InputStream in,long length,boolean chunked) {
+            this.in = in;
+            this.chunked = chunked;
+            this.remaining = chunked ? 0 : length;
+            this.eof = length==0 && !chunked;
+        }
+
+        private boolean next() throws IOException {
+            //If already finished
+            if (eof)
+                //Done
+                return false;
+            //If there are pending bytes or it is read until closed
+            if (remaining!=0)
+                //Continue
+                return true;
+            //If it was not chunked
+            if (!chunked) {
+                //Finished
+                eof = true;
+                return false;
+            }
+            //Update timeout
+            connection.setTimeout(getRemaining());
+            //Get chunk header, skipping the previous chunk CRLF
+            String header = readLine(in);
+            //Check
+            if (header!=null && header.isEmpty())
+                //Read again
+                header = readLine(in);
+            //Check
+            if (header==null)
+                //Error
+                throw new IOException("Unexpected end of chunked response");
+            //Remove extensions
+            int i = header.indexOf(';');
+            //Get chunk size
+            remaining = Long.parseLong((i!=-1 ? header.substring(0,i) : header).trim(),16);
+            //If it is the last one
+            if (remaining==0) {
+                //Skip trailers
+                String line;
+                while ((line=readLine(in))!=null && !line.isEmpty());
+                //Finished
+                eof = true;
+                return false;
+            }
+            //More data
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            //Read one byte
+            int len = read(b,0,1);
+            //Return it
+            return len==-1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            //Check if there is something to read
+            if (!next())
+                //End
+                return -1;
+            //Do not read past the body
+            if (remaining>0 && len>remaining)
+                //Limit
+                len = (int)remaining;
+            //Update timeout
+            connection.setTimeout(getRemaining());
+            //Read
+            int read = in.read(b,off,len);
+            //Check
+            if (read==-1) {
+                //If we were expecting more data
+                if (remaining>0)
+                    //Error
+                    throw new IOException("Unexpected end of response");
+                //Closed by server
+                eof = true;
+                return -1;
+            }
+            //Decrease remaining if known
+            if (remaining>0)
+                remaining -= read;
+            //Return read bytes
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            //Limit to body
+            return remaining>0 ? (int)Math.min(remaining,in.available()) : 0;
+        }
+
+        @Override
+        public void close() {
+            //The connection is released by the transport
+        }
+
+        boolean drain() {
+            //Bytes drained
+            int drained = 0;
+            try {
+                byte[] buffer = new byte[4096];
+                int len;
+                //Read until the end of the body
+                while (drained<MAX_DRAIN && (len=read(buffer,0,buffer.length))!=-1)
+                    //Inc
+                    drained += len;
+                //Check if we got to the end
+                return eof && remaining==0;
+            } catch (IOException ex) {
+                //Can't reuse
+                return false;
+            }
+        }
+    }
+}
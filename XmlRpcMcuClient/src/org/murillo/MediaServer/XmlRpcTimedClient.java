@@ -19,8 +19,29 @@ import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
 public class XmlRpcTimedClient extends XmlRpcClient {
     private final static int XML_RPC_TIMEOUT = 10000;
     private int timeout = XML_RPC_TIMEOUT;
+    private boolean pooled = false;
     private static final Logger logger = Logger.getLogger("XMLRPCMCU");
     private static final Level level = Level.FINE;
+    private static volatile Listener listener;
+
+    public interface Listener {
+        /**
+         * Called after each request to the media server, successful or not.
+         * @param url server url
+         * @param method xmlrpc method name
+         * @param nanos time elapsed until the response or error
+         * @param failed true if an exception was thrown
+         */
+        public void onExecuted(String url,String method,long nanos,boolean failed);
+    }
+
+    /**
+     * Set listener for the timings of the requests of all clients.
+     */
+    public static void setListener(Listener listener) {
+        XmlRpcTimedClient.listener = listener;
+    }
+
     public int getTimeout() {
         return timeout;
     }
@@ -29,23 +50,76 @@ public class XmlRpcTimedClient extends XmlRpcClient {
         this.timeout = timeout;
     }
 
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    public void enableConnectionPool(int maxConnections) {
+        //Use persistent connections shared by all clients of the same endpoint
+        setTransportFactory(new XmlRpcPooledHttpTransport.Factory(this,maxConnections));
+        //Execute requests synchronously
+        pooled = true;
+    }
+
     @Override
     public Object execute(String pMethodName, Object[] pParams) throws XmlRpcException {
+        //If using persistent connections
+        if (pooled)
+            //Run it on this thread, timeout is enforced by the transport
+            return executePooled(pMethodName, pParams);
+        long ini = System.nanoTime();
+        boolean failed = true;
         try {
-	    long ini = System.currentTimeMillis();
             //Create timed out callback
             TimingOutCallback callback = new TimingOutCallback(timeout);
             //Execute async
             executeAsync(pMethodName, pParams, callback);
 	    //Wait for response
 	    Object res = callback.waitForResponse();
+	    //Done
+	    failed = false;
 	    //Log time
-	    logger.log(level,"executed " + pMethodName + " method in "+(System.currentTimeMillis()-ini) + " ms ["+((XmlRpcClientConfigImpl)this.getClientConfig()).getServerURL()+"]");
+	    logger.log(level,"executed " + pMethodName + " method in "+(System.nanoTime()-ini)/1000000 + " ms ["+getServerURL()+"]");
             //Return obcjet
             return res;
         } catch (Throwable ex) {
             //Launc exception
             throw new XmlRpcException("Async execution error " +ex.getMessage(), ex);
+        } finally {
+            //Report timing
+            fireOnExecuted(pMethodName, System.nanoTime()-ini, failed);
         }
     }
+
+    private Object executePooled(String pMethodName, Object[] pParams) throws XmlRpcException {
+        long ini = System.nanoTime();
+        boolean failed = true;
+        try {
+            //Execute on a pooled connection
+            Object res = super.execute(pMethodName, pParams);
+            //Done
+            failed = false;
+            //Log time
+            logger.log(level,"executed " + pMethodName + " method in "+(System.nanoTime()-ini)/1000000 + " ms ["+getServerURL()+"]");
+            //Return object
+            return res;
+        } finally {
+            //Report timing
+            fireOnExecuted(pMethodName, System.nanoTime()-ini, failed);
+        }
+    }
+
+    private String getServerURL() {
+        //Get url from config
+        return String.valueOf(((XmlRpcClientConfigImpl)this.getClientConfig()).getServerURL());
+    }
+
+    private void fireOnExecuted(String pMethodName, long nanos, boolean failed) {
+        //Get current listener
+        Listener current = listener;
+        //If any
+        if (current!=null)
+            //Send event
+            current.onExecuted(getServerURL(), pMethodName, nanos, failed);
+    }
 }
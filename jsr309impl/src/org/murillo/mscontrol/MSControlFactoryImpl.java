@@ -159,9 +159,15 @@ public class MSControlFactoryImpl implements MsControlFactory, MediaServerEventQ
             //Get media group
             MediaGroupImpl group = sess.getMediaGroup(playerUri);
             //Get player
-            PlayerImpl player = (PlayerImpl) group.getPlayer();
-            //Fire event
-            player.onEndOfStream();
+            final PlayerImpl player = (PlayerImpl) group.getPlayer();
+            //Handle it in order with the rest of session events without blocking the event queue
+            sess.Exec(new Runnable() {
+                @Override
+                public void run() {
+                    //Fire event
+                    player.onEndOfStream();
+                }
+            });
         } catch (MsControlException ex) {
             Logger.getLogger(MSControlFactoryImpl.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -250,6 +256,22 @@ public class MSControlFactoryImpl implements MsControlFactory, MediaServerEventQ
 	return sessions.get(uri);
     }
 
+    /**
+     * Get number of events waiting to be delivered on all the sessions.
+     */
+    public int getPendingEvents() {
+        int num = 0;
+        synchronized(sessions)
+        {
+            //For each session
+            for (MediaSessionImpl sess : sessions.values())
+                //Add its queue depth
+                num += sess.getPendingEvents();
+        }
+        //Return total
+        return num;
+    }
+
     public Collection<MediaSessionImpl> getMediaSessions() {
 	return sessions.values();
     }
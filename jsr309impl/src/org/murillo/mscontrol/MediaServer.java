@@ -16,6 +16,7 @@ import org.murillo.MediaServer.XmlRPCJSR309Client;
  * @author Sergio
  */
 public class MediaServer extends XmlRPCJSR309Client {
+    private static final int MAX_CONNECTIONS = 4;
     private String name;
     private String url;
     private String ip;
@@ -26,6 +27,8 @@ public class MediaServer extends XmlRPCJSR309Client {
     {
         //call parent
         super(url.endsWith("/") ? url+"jsr309" : url+"/jsr309");
+        //Use persistent connections
+        enableConnectionPool(MAX_CONNECTIONS);
         //Save Values
         this.name = name;
         this.url = url;
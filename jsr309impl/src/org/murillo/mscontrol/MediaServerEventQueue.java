@@ -15,35 +15,28 @@ import org.murillo.MediaServer.XmlRpcEventManager;
  *
  * @author Sergio
  */
-public class MediaServerEventQueue implements XmlRpcEventManager.Listener, Runnable{
+public class MediaServerEventQueue implements XmlRpcEventManager.Listener {
     public interface Listener {
         public abstract void onPlayerEndOfStream(URI sessUri,URI playerUri);
     }
     
     private final XmlRpcEventManager em;
     private Listener listener;
-    private Thread thread;
     private final String url;
 
-    @Override
-    public void run() {
+    public void start(){
         try{
-            //Connect
-            em.Connect(url, this);
+            //Connect, events will be read by the event reactor
+            em.Open(url, this);
         } catch(Exception e) {
             //Send error
             onError();
         }
     }
 
-    public void start(){
-        //Create thread and start
-        thread.start();
-    }
-
     public void stop() {
-        //Stop thread
-        thread.stop();
+        //Cancel event manager
+        em.Cancel();
     }
     
 
@@ -52,8 +45,6 @@ public class MediaServerEventQueue implements XmlRpcEventManager.Listener, Runna
         this.url = url;
         //Create event manager
         em = new XmlRpcEventManager();
-        //Create thread;
-        thread = new Thread(this);
     }
 
     public void setListener(Listener listener){
@@ -13,7 +13,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.media.mscontrol.Configuration;
@@ -30,6 +30,7 @@ import org.apache.xmlrpc.XmlRpcException;
 import org.murillo.mscontrol.mediagroup.MediaGroupImpl;
 import org.murillo.mscontrol.mixer.MediaMixerImpl;
 import org.murillo.mscontrol.networkconnection.NetworkConnectionImpl;
+import org.murillo.mscontrol.util.SerialExecutor;
 
 /**
  *
@@ -44,7 +45,7 @@ public class MediaSessionImpl extends MediaObjectImpl implements MediaSession {
     private final HashMap<URI,MediaMixerImpl> mixers;
     private final HashMap<String,Object> attributes;
     private final Listener listener;
-    private final ExecutorService threadPool;
+    private final SerialExecutor executor;
 
     public interface Listener {
         void onMediaSessionReleased(URI uri,MediaSessionImpl sess);
@@ -56,7 +57,8 @@ public class MediaSessionImpl extends MediaObjectImpl implements MediaSession {
         //Store values
         this.uri = uri;
         this.mediaServer = mediaServer;
-        this.threadPool = Executors.newCachedThreadPool();//threadPool;
+        //Run tasks in order on the driver pool
+        this.executor = new SerialExecutor(threadPool);
         this.listener = listener;
         //Create attributes map
         attributes = new HashMap<String,Object>();
@@ -303,6 +305,8 @@ public class MediaSessionImpl extends MediaObjectImpl implements MediaSession {
         } catch (XmlRpcException ex) {
             Logger.getLogger(MediaSessionImpl.class.getName()).log(Level.SEVERE, null, ex);
         }
+        //Do not accept more tasks, pending events are still delivered
+        executor.shutdown();
     }
 
     public int getSessionId() {
@@ -362,10 +366,31 @@ public class MediaSessionImpl extends MediaObjectImpl implements MediaSession {
             return null;
     }
 
+    /**
+     * Get number of tasks and events waiting to be run for this session.
+     */
+    public int getPendingEvents() {
+        return executor.getPendingTasks();
+    }
+
+    public int getMaxPendingEvents() {
+        return executor.getMaxPendingTasks();
+    }
+
+    public long getDeliveredEvents() {
+        return executor.getExecutedTasks();
+    }
+
+    public long getEventBatches() {
+        return executor.getBatches();
+    }
+
     public void Exec(Runnable task) {
         try {
-            //Execute
-            threadPool.execute(task);
+            //Execute after previous ones of this session
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            Logger.getLogger("jsr309").log(Level.WARNING,"Task not executed, media session {0} has been released",uri);
         } catch (Exception ex) {
             Logger.getLogger("jsr309").log(Level.SEVERE,"Error executing task",ex);
         }
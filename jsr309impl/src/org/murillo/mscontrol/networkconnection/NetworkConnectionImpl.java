@@ -21,6 +21,7 @@ import javax.media.mscontrol.networkconnection.SdpPortManager;
 import javax.media.mscontrol.resource.Action;
 import org.apache.xmlrpc.XmlRpcException;
 import org.murillo.MediaServer.Codecs.MediaType;
+import org.murillo.MediaServer.XmlRpcBatch.Call;
 import org.murillo.mscontrol.resource.ContainerImpl;
 import org.murillo.mscontrol.MediaServer;
 import org.murillo.mscontrol.MediaSessionImpl;
@@ -117,14 +118,21 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 	void startReceiving(SdpPortManagerImpl sdp) throws MsControlException
 	{
 		try {
+			//Send all the requests at once
+			MediaServer.Batch batch = mediaServer.createBatch();
+			//Pending results
+			Call fingerprint = null;
+			Call startAudio = null;
+			Call stopAudio = null;
+			Call startVideo = null;
+			Call stopVideo = null;
+			Call startText = null;
+			Call stopText = null;
+
 			//Check if using DTLS
 			if (sdp.getUseDTLS())
-			{
 				//Get fingerprint
-				String localFingerprint = mediaServer.EndpointGetLocalCryptoDTLSFingerprint(sdp.getLocalHash());
-				//Set it
-				sdp.setLocalFingerprint(localFingerprint);
-			}
+				fingerprint = batch.EndpointGetLocalCryptoDTLSFingerprint(sdp.getLocalHash());
 
 			//If supported
 			if (sdp.getAudioSupported())
@@ -141,7 +149,7 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 						//Create new cypher
 						CryptoInfo info = CryptoInfo.Generate();
 						//Set it
-						mediaServer.EndpointSetLocalCryptoSDES(session.getSessionId(), endpointId,  MediaType.AUDIO, info.suite, info.key);
+						batch.EndpointSetLocalCryptoSDES(session.getSessionId(), endpointId,  MediaType.AUDIO, info.suite, info.key);
 						//Set it
 						sdp.setLocalCryptoInfo("audio",info);
 						//Set property
@@ -154,21 +162,17 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 						//Create new ICE Info
 						ICEInfo info = ICEInfo.Generate();
 						//Set them
-						mediaServer.EndpointSetLocalSTUNCredentials(session.getSessionId(), endpointId, MediaType.AUDIO, info.ufrag, info.pwd);
+						batch.EndpointSetLocalSTUNCredentials(session.getSessionId(), endpointId, MediaType.AUDIO, info.ufrag, info.pwd);
 						//Set it
 						sdp.setLocalIceInfo("audio", info);
 					}
 
 					//Get receiving ports
-					Integer recAudioPort = mediaServer.EndpointStartReceiving(session.getSessionId(), endpointId, MediaType.AUDIO, sdp.getRtpInMediaMap("audio"));
-					//Set ports
-					sdp.setRecAudioPort(recAudioPort);
+					startAudio = batch.EndpointStartReceiving(session.getSessionId(), endpointId, MediaType.AUDIO, sdp.getRtpInMediaMap("audio"));
 				}
 			} else if (sdp.getRecAudioPort()>0) {
 				//Stop it
-				if (mediaServer.EndpointStopReceiving(session.getSessionId(), endpointId, MediaType.AUDIO))
-					//Disable port
-					sdp.setRecAudioPort(0);
+				stopAudio = batch.EndpointStopReceiving(session.getSessionId(), endpointId, MediaType.AUDIO);
 			}
 
 			//If supported
@@ -183,7 +187,7 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 						//Create new cypher
 						CryptoInfo info = CryptoInfo.Generate();
 						//Set it
-						mediaServer.EndpointSetLocalCryptoSDES(session.getSessionId(), endpointId,  MediaType.VIDEO, info.suite, info.key);
+						batch.EndpointSetLocalCryptoSDES(session.getSessionId(), endpointId,  MediaType.VIDEO, info.suite, info.key);
 						//Set it
 						sdp.setLocalCryptoInfo("video",info);
 						//Set property
@@ -196,22 +200,18 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 						//Create new ICE Info
 						ICEInfo info = ICEInfo.Generate();
 						//Set them
-						mediaServer.EndpointSetLocalSTUNCredentials(session.getSessionId(), endpointId, MediaType.VIDEO, info.ufrag, info.pwd);
+						batch.EndpointSetLocalSTUNCredentials(session.getSessionId(), endpointId, MediaType.VIDEO, info.ufrag, info.pwd);
 						//Set it
 						sdp.setLocalIceInfo("video", info);
 					}
 					//Create rtp map for video
 					sdp.createRTPMap("video");
 					//Get receiving ports
-					Integer recVideoPort = mediaServer.EndpointStartReceiving(session.getSessionId(), endpointId, MediaType.VIDEO, sdp.getRtpInMediaMap("video"));
-					//Set ports
-					sdp.setRecVideoPort(recVideoPort);
+					startVideo = batch.EndpointStartReceiving(session.getSessionId(), endpointId, MediaType.VIDEO, sdp.getRtpInMediaMap("video"));
 				}
 			} else if (sdp.getRecVideoPort()>0) {
 				//Stop it
-				if (mediaServer.EndpointStopReceiving(session.getSessionId(), endpointId, MediaType.VIDEO))
-					//Disable port
-					sdp.setRecVideoPort(0);
+				stopVideo = batch.EndpointStopReceiving(session.getSessionId(), endpointId, MediaType.VIDEO);
 			}
 
 			//If supported
@@ -226,7 +226,7 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 						//Create new cypher
 						CryptoInfo info = CryptoInfo.Generate();
 						//Set it
-						mediaServer.EndpointSetLocalCryptoSDES(session.getSessionId(), endpointId,  MediaType.TEXT, info.suite, info.key);
+						batch.EndpointSetLocalCryptoSDES(session.getSessionId(), endpointId,  MediaType.TEXT, info.suite, info.key);
 						//Set it
 						sdp.setLocalCryptoInfo("text",info);
 						//Set property
@@ -239,24 +239,44 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 						//Create new ICE Info
 						ICEInfo info = ICEInfo.Generate();
 						//Set them
-						mediaServer.EndpointSetLocalSTUNCredentials(session.getSessionId(), endpointId, MediaType.TEXT, info.ufrag, info.pwd);
+						batch.EndpointSetLocalSTUNCredentials(session.getSessionId(), endpointId, MediaType.TEXT, info.ufrag, info.pwd);
 						//Set it
 						sdp.setLocalIceInfo("text", info);
 					}
 					//Create rtp map for text
 					sdp.createRTPMap("text");
 					//Get receiving ports
-					Integer recTextPort = mediaServer.EndpointStartReceiving(session.getSessionId(), endpointId, MediaType.TEXT, sdp.getRtpInMediaMap("text"));
-					//Set ports
-					sdp.setRecTextPort(recTextPort);
+					startText = batch.EndpointStartReceiving(session.getSessionId(), endpointId, MediaType.TEXT, sdp.getRtpInMediaMap("text"));
 				}
 			} else if (sdp.getRecTextPort()>0) {
 				//Stop it
-				if (mediaServer.EndpointStopReceiving(session.getSessionId(), endpointId, MediaType.TEXT))
-					//Disable port
-					sdp.setRecTextPort(0);
+				stopText = batch.EndpointStopReceiving(session.getSessionId(), endpointId, MediaType.TEXT);
 			}
 
+			//Execute
+			batch.execute();
+
+			//If requested
+			if (fingerprint!=null)
+				//Set it
+				sdp.setLocalFingerprint(fingerprint.getString());
+			//Set receiving ports
+			if (startAudio!=null)
+				sdp.setRecAudioPort(startAudio.getInteger());
+			if (startVideo!=null)
+				sdp.setRecVideoPort(startVideo.getInteger());
+			if (startText!=null)
+				sdp.setRecTextPort(startText.getInteger());
+			//Disable stopped ones
+			if (stopAudio!=null && stopAudio.getReturnCode())
+				sdp.setRecAudioPort(0);
+			if (stopVideo!=null && stopVideo.getReturnCode())
+				sdp.setRecVideoPort(0);
+			if (stopText!=null && stopText.getReturnCode())
+				sdp.setRecTextPort(0);
+			//Check errors
+			batch.check();
+
 			//And set the sender ip
 			sdp.setRecIp(mediaServer.getIp());
 		} catch (XmlRpcException ex) {
@@ -268,6 +288,9 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 	
 	protected void startSending(SdpPortManagerImpl sdp) throws MsControlException, XmlRpcException
 	{
+		//Send all the requests at once
+		MediaServer.Batch batch = mediaServer.createBatch();
+
 		//Check if the stream is supported
 		if (sdp.getAudioSupported())
 			//Check audio
@@ -278,10 +301,10 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 				//Update ssetAudioCodecneding codec
 				stream.requestAudioCodec(sdp.getAudioCodec());
 				//Send
-				mediaServer.EndpointStartSending(session.getSessionId(), endpointId, MediaType.AUDIO, sdp.getSendAudioIp(), sdp.getSendAudioPort(), sdp.getRtpOutMediaMap("audio"));
+				batch.EndpointStartSending(session.getSessionId(), endpointId, MediaType.AUDIO, sdp.getSendAudioIp(), sdp.getSendAudioPort(), sdp.getRtpOutMediaMap("audio"));
 			} else {
 				//Stop sending
-				mediaServer.EndpointStopSending(session.getSessionId(), endpointId, MediaType.AUDIO);
+				batch.EndpointStopSending(session.getSessionId(), endpointId, MediaType.AUDIO);
 			}
 		
 		//Check if the stream is supported
@@ -294,10 +317,10 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 				//Update sneding codec
 				stream.requestVideoCodec(sdp.getVideoCodec());
 				//Send
-				mediaServer.EndpointStartSending(session.getSessionId(), endpointId, MediaType.VIDEO, sdp.getSendVideoIp(), sdp.getSendVideoPort(), sdp.getRtpOutMediaMap("video"));
+				batch.EndpointStartSending(session.getSessionId(), endpointId, MediaType.VIDEO, sdp.getSendVideoIp(), sdp.getSendVideoPort(), sdp.getRtpOutMediaMap("video"));
 			} else {
 				//Stop sending
-				mediaServer.EndpointStopSending(session.getSessionId(), endpointId, MediaType.VIDEO);
+				batch.EndpointStopSending(session.getSessionId(), endpointId, MediaType.VIDEO);
 			}
 		
 		//Check if the stream is supported
@@ -306,33 +329,46 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 			if (sdp.getSendTextPort()!=0 && sdp.getRTPDirection("text").isReceving())
 			{
 				//Send
-				mediaServer.EndpointStartSending(session.getSessionId(), endpointId, MediaType.TEXT, sdp.getSendTextIp(), sdp.getSendTextPort(), sdp.getRtpOutMediaMap("text"));
+				batch.EndpointStartSending(session.getSessionId(), endpointId, MediaType.TEXT, sdp.getSendTextIp(), sdp.getSendTextPort(), sdp.getRtpOutMediaMap("text"));
 			} else {
 				//Stop sending
-				mediaServer.EndpointStopSending(session.getSessionId(), endpointId, MediaType.TEXT);
+				batch.EndpointStopSending(session.getSessionId(), endpointId, MediaType.TEXT);
 			}
+
+		//Execute
+		batch.execute();
+		//Check errors
+		batch.check();
 	}
 	
 	protected void stopSending(SdpPortManagerImpl sdp) throws MsControlException, XmlRpcException 
 	{
+		//Send all the requests at once
+		MediaServer.Batch batch = mediaServer.createBatch();
+
 		//Check if the stream is supported
 		if (sdp.getAudioSupported())
 			//Check audio
 			if (sdp.getSendAudioPort()!=0 && sdp.getRTPDirection("audio").isReceving())
 				//Stop sending
-				mediaServer.EndpointStopSending(session.getSessionId(), endpointId, MediaType.AUDIO);
+				batch.EndpointStopSending(session.getSessionId(), endpointId, MediaType.AUDIO);
 		//Check if the stream is supported
 		if (sdp.getVideoSupported())
 			//Check video
 			if (sdp.getSendVideoPort()!=0 && sdp.getRTPDirection("video").isReceving())
 				//Stop sending
-				mediaServer.EndpointStopSending(session.getSessionId(), endpointId, MediaType.VIDEO);
+				batch.EndpointStopSending(session.getSessionId(), endpointId, MediaType.VIDEO);
 		//Check if the stream is supported
 		if (sdp.getTextSupported())
 			//Check text
 			if (sdp.getSendTextPort()!=0 && sdp.getRTPDirection("text").isReceving())
 				//Stop sending
-				mediaServer.EndpointStopSending(session.getSessionId(), endpointId, MediaType.TEXT);
+				batch.EndpointStopSending(session.getSessionId(), endpointId, MediaType.TEXT);
+
+		//Execute
+		batch.execute();
+		//Check errors
+		batch.check();
 	}
 	
 	@Override
@@ -385,6 +421,8 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 	
 		//Get conf id
 		Integer sessId = session.getSessionId();
+		//Send all the requests at once
+		MediaServer.Batch batch = mediaServer.createBatch();
 
 		//If supported
 		if (sdp.getAudioSupported())
@@ -398,14 +436,14 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 				//If present
 				if (info!=null)
 					//Set it
-					mediaServer.EndpointSetRemoteCryptoDTLS(sessId, endpointId, MediaType.AUDIO, info.getSetup(), info.getHash(), info.getFingerprint());
+					batch.EndpointSetRemoteCryptoDTLS(sessId, endpointId, MediaType.AUDIO, info.getSetup(), info.getHash(), info.getFingerprint());
 			} else {
 				//Get cryto info
 				CryptoInfo info = sdp.getRemoteCryptoInfo("audio");
 				//If present
 				if (info!=null)
 					//Set it
-				  mediaServer.EndpointSetRemoteCryptoSDES(sessId, endpointId, MediaType.AUDIO, info.suite, info.key);
+				  batch.EndpointSetRemoteCryptoSDES(sessId, endpointId, MediaType.AUDIO, info.suite, info.key);
 			}
 
 			//Get ice info
@@ -413,9 +451,9 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 			//If present
 			if (ice!=null)
 				//Set it
-				mediaServer.EndpointSetRemoteSTUNCredentials(sessId, endpointId, MediaType.AUDIO, ice.ufrag, ice.pwd);
+				batch.EndpointSetRemoteSTUNCredentials(sessId, endpointId, MediaType.AUDIO, ice.ufrag, ice.pwd);
 			//Set RTP properties
-			mediaServer.EndpointSetRTPProperties(sessId, endpointId, MediaType.AUDIO, sdp.getRTPMediaProperties("audio"));
+			batch.EndpointSetRTPProperties(sessId, endpointId, MediaType.AUDIO, sdp.getRTPMediaProperties("audio"));
 		}
 
 		//If supported
@@ -430,14 +468,14 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 				//If present
 				if (info!=null)
 					//Set it
-					mediaServer.EndpointSetRemoteCryptoDTLS(sessId, endpointId, MediaType.VIDEO,  info.getSetup(), info.getHash(), info.getFingerprint());
+					batch.EndpointSetRemoteCryptoDTLS(sessId, endpointId, MediaType.VIDEO,  info.getSetup(), info.getHash(), info.getFingerprint());
 			} else {
 				//Get cryto info
 				CryptoInfo info = sdp.getRemoteCryptoInfo("video");
 				//If present
 				if (info!=null)
 					//Set it
-				mediaServer.EndpointSetRemoteCryptoSDES(sessId, endpointId, MediaType.VIDEO, info.suite, info.key);
+				batch.EndpointSetRemoteCryptoSDES(sessId, endpointId, MediaType.VIDEO, info.suite, info.key);
 			}
 
 			//Get ice info
@@ -445,9 +483,9 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 			//If present
 			if (ice!=null)
 				//Set it
-				mediaServer.EndpointSetRemoteSTUNCredentials(sessId, endpointId, MediaType.VIDEO, ice.ufrag, ice.pwd);
+				batch.EndpointSetRemoteSTUNCredentials(sessId, endpointId, MediaType.VIDEO, ice.ufrag, ice.pwd);
 			//Set RTP properties
-			mediaServer.EndpointSetRTPProperties(sessId, endpointId, MediaType.VIDEO, sdp.getRTPMediaProperties("video"));
+			batch.EndpointSetRTPProperties(sessId, endpointId, MediaType.VIDEO, sdp.getRTPMediaProperties("video"));
 		}
 
 		//If supported
@@ -461,14 +499,14 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 				//If present
 				if (info!=null)
 					//Set it
-					mediaServer.EndpointSetRemoteCryptoDTLS(sessId, endpointId, MediaType.TEXT, info.getSetup(), info.getHash(), info.getFingerprint());
+					batch.EndpointSetRemoteCryptoDTLS(sessId, endpointId, MediaType.TEXT, info.getSetup(), info.getHash(), info.getFingerprint());
 			} else {
 				//Get cryto info
 				CryptoInfo info = sdp.getRemoteCryptoInfo("text");
 				//If present
 				if (info!=null)
 					//Set it
-					mediaServer.EndpointSetRemoteCryptoSDES(sessId, endpointId, MediaType.TEXT, info.suite, info.key);
+					batch.EndpointSetRemoteCryptoSDES(sessId, endpointId, MediaType.TEXT, info.suite, info.key);
 			}
 
 			//Get ice info
@@ -476,10 +514,15 @@ public class NetworkConnectionImpl extends ContainerImpl implements NetworkConne
 			//If present
 			if (ice!=null)
 				//Set it
-				mediaServer.EndpointSetRemoteSTUNCredentials(sessId, endpointId, MediaType.TEXT, ice.ufrag, ice.pwd);
+				batch.EndpointSetRemoteSTUNCredentials(sessId, endpointId, MediaType.TEXT, ice.ufrag, ice.pwd);
 			//Set RTP properties
-			mediaServer.EndpointSetRTPProperties(sessId, endpointId, MediaType.TEXT, sdp.getRTPMediaProperties("text"));
+			batch.EndpointSetRTPProperties(sessId, endpointId, MediaType.TEXT, sdp.getRTPMediaProperties("text"));
 		}
+
+		//Execute
+		batch.execute();
+		//Check errors
+		batch.check();
 	}
 	
 }
@@ -42,18 +42,19 @@ import org.murillo.mscontrol.ext.codecs;
 import org.murillo.mscontrol.ext.codecs.rtcp;
 import org.murillo.mscontrol.ext.codecs.rtp;
 import org.murillo.mscontrol.util.H264ProfileLevelID;
-import org.murillo.sdp.Attribute;
-import org.murillo.sdp.Bandwidth;
-import org.murillo.sdp.Connection;
 import org.murillo.sdp.CryptoAttribute;
 import org.murillo.sdp.ExtMapAttribute;
 import org.murillo.sdp.FingerprintAttribute;
 import org.murillo.sdp.FormatAttribute;
 import org.murillo.sdp.MediaDescription;
-import org.murillo.sdp.RTPMapAttribute;
 import org.murillo.sdp.SSRCAttribute;
 import org.murillo.sdp.SSRCGroupAttribute;
 import org.murillo.sdp.SessionDescription;
+import org.murillo.sdp.negotiation.Capabilities;
+import org.murillo.sdp.negotiation.CodecTable;
+import org.murillo.sdp.negotiation.Negotiation;
+import org.murillo.sdp.negotiation.Negotiation.MediaNegotiation;
+import org.murillo.sdp.negotiation.Negotiator;
 
 /**
  *
@@ -87,6 +88,7 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 	private HashMap<String,HashMap<Integer,Integer>> rtpInMediaMap = null;
 	private HashMap<String,HashMap<Integer,Integer>> rtpOutMediaMap = null;
 	private HashMap<String,HashMap<String,Integer>> supportedExtensions = null;
+	private Capabilities capabilities = null;
 	private HashMap<String,HashMap<String,Integer>> rtpExtensionMap = null;
 	private ArrayList<MediaDescription> rejectedMedias;
 	private String videoContentType;
@@ -118,6 +120,8 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 	private final ParametersImpl params;
 
 	private static final Logger logger = Logger.getLogger(SdpPortManagerImpl.class.getName());
+	//Codecs known by the media server
+	private static final CodecTable codecTable = createCodecTable();
 	private final MediaConfig mc;
 
 	public SdpPortManagerImpl(NetworkConnectionImpl conn,MediaConfig mc,ParametersImpl params) {
@@ -342,12 +346,12 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 
 	@Override
 	public byte[] getMediaServerSessionDescription() throws SdpPortManagerException {
-		return localSDP.toString().getBytes();
+		return localSDP.toByteArray();
 	}
 
 	@Override
 	public byte[] getUserAgentSessionDescription() throws SdpPortManagerException {
-		return remoteSDP.toString().getBytes();
+		return remoteSDP.toByteArray();
 	}
 
 	@Override
@@ -625,6 +629,8 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 		 if (supportedCodecs.containsKey(media))
 			//clear it
 			supportedCodecs.get(media).clear();
+		 //Capabilities have changed
+		 capabilities = null;
 	 }
 
 	 public void addSupportedCodec(String media,Integer codec) {
@@ -634,6 +640,8 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 			 supportedCodecs.put(media, new Vector<Integer>());
 		 //Add codec to media
 		 supportedCodecs.get(media).add(codec);
+		 //Capabilities have changed
+		 capabilities = null;
 	 }
 
 	 public Integer getRecAudioPort() {
@@ -1138,32 +1146,8 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 	}
 
 	public void processSDP(SessionDescription sdp) throws SdpPortManagerException {
-		//Check required
-		HashSet<Integer> required = (HashSet<Integer>)requiredCodecs.clone();
-
-		//Connnection IP
-		String ip = null;
-		//ICE credentials
-		String remoteICEFrag = null;
-		String remtoeICEPwd = null;
-
-		//Get the connection field
-		Connection connection = sdp.getConnection();
-
-		if (connection!=null)
-		{
-			//Get IP addr
-			ip = connection.getAddress();
-			
-			//We don't support ipv6 yet
-			if (!connection.getAddrType().equalsIgnoreCase("IP4"))
-				//Ignore it and do natting
-				ip = "0.0.0.0";
-			//Check if ip should be nat for this media mixer
-			if (conn.getMediaServer().isNated(ip))
-				//Do natting
-				ip = "0.0.0.0";
-		}
+		//Match it against our capabilities
+		Negotiation negotiation = Negotiator.negotiate(sdp, getCapabilities(), useDTLS);
 
 		//Disable supported media
 		audioSupported = false;
@@ -1175,536 +1159,156 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 		sendVideoPort = 0;
 		sendTextPort = 0;
 
-		//NO bitrate by default
-		videoBitrate = 0;
+		//Get bitrate
+		videoBitrate = negotiation.getVideoBitrate();
 
-		//For each bandwith
-		for (Bandwidth band : sdp.getBandwidths())
-		{
-			//Get bitrate value
-			int rate = Integer.parseInt(band.getBandwidth());
-			//Check bandwith type
-			if (band.getType().equalsIgnoreCase("TIAS"))
-					//Convert to kbps
-					rate = rate/1000;
-			// Let some room for audio.
-			if (rate>=128)
-				//Remove maximum rate
-				rate -= 64;
-			//Check if is less
-			if (videoBitrate==0 || rate<videoBitrate)
-				//Set it
-				videoBitrate = rate;
-		}
-
-		//Check for global ice credentials
-		Attribute ufragAtrr = sdp.getAttribute("ice-ufrag");
-		Attribute pwdAttr = sdp.getAttribute("ice-pwd");
-
-		//Check if both present
-		if (ufragAtrr!=null && pwdAttr!=null)
-		{
+		//Check if remote is using ICE
+		if (negotiation.isICE())
 			//Using ice
 			useICE = true;
-			//Get values
-			remoteICEFrag = ufragAtrr.getValue();
-			remtoeICEPwd = pwdAttr.getValue();
-		}
-
-		//No DTLS fingerprint yet
-		String remoteHash = null;
-		String remoteFingerprint = null;
-
-		//Check global fingerprint attribute
-		FingerprintAttribute fingerprintAttr = (FingerprintAttribute) sdp.getAttribute("fingerprint");
-
-		//Check if there is one preset
-		if (fingerprintAttr!=null)
-		{
+		//Check DTLS
+		if (negotiation.isDTLS())
 			//Using DTLS
 			useDTLS = true;
-			//Get remote fingerprint
-			remoteHash	  = fingerprintAttr.getHashFunc();
-			remoteFingerprint = fingerprintAttr.getFingerprint();
+		//Check if it is secure
+		if (negotiation.isSecure())
+			//Secure (WARNING: if one media is secure, all will be secured, FIX!!)
+			isSecure = true;
+		//Check if has rtcp
+		if (negotiation.isRtcpFeedBack())
+			//With feedback (WARNING: if one media has feedback, all will have feedback, FIX!!)
+			rtcpFeedBack = true;
+		//Check content type
+		if (negotiation.getVideoContentType()!=null)
+			//Add the content type to the line
+			videoContentType = negotiation.getVideoContentType();
+
+		//For each rejected media
+		for (MediaDescription rejected : negotiation.getRejectedMedias())
+		{
+			//Log
+			logger.log(Level.FINE, "Media rejected because it is not supported or not allowed by configuration {0} ", new Object[]{rejected.getMedia()});
+			//add to rejected media
+			rejectedMedias.add(rejected);
 		}
-		
-		for (MediaDescription md : sdp.getMedias())
+
+		//For each accepted media
+		for (MediaNegotiation mn : negotiation.getMedias())
 		{
-			//No default bitrate
-			int mediaBitrate = 0;
-			
 			//Get media type
-			String media = md.getMedia();
+			String media = mn.getMedia();
 
-			//Get port
-			Integer port = md.getPort();
-			//Get transport
-			ArrayList<String> proto = md.getProto();
+			//Add support for the media
+			if (media.equals("audio"))
+				//Set as supported
+				audioSupported = true;
+			else if (media.equals("video"))
+				//Set as supported
+				videoSupported = true;
+			else if (media.equals("text"))
+				//Set as supported
+				textSupported = true;
 
-			//If it its not RTP (i.e. RTP/(s)AVP(f) or UDP/TLS/RTP/SAVP(f) or port is 0
-			if (!proto.get(proto.size()-2).equals("RTP") || port==0)
-			{
-				//Create media descriptor
-				MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-				//set all  formats
-				rejected.setFormats(md.getFormats());
-				//add to rejected media
-				rejectedMedias.add(rejected);
-				//Not supported media type
-				continue;
-			}
-			
-			//Get bandwiths
-			for (Bandwidth band : md.getBandwidths())
-			{
-				//Get bitrate value
-				int rate = Integer.parseInt(band.getBandwidth());
-				//Check bandwith type
-				 if (band.getType().equalsIgnoreCase("TIAS"))
-					//Convert to kbps
-					rate = rate/1000;
-				//Check if less than current
-				if (mediaBitrate==0 || rate<mediaBitrate)
-					//Set it
-					mediaBitrate = rate;
-			}
-			
 			//Check if it supports rtcp-muxing
-			if (md.hasAttribute("rtcp-mux"))
+			if (mn.isRtcpMux())
 				//Add attribute
 				rtpMediaProperties.get(media).put("rtcp-mux", "1");
-			
+
 			//Check mid
-			if (md.hasAttribute("mid"))
+			if (mn.getMid()!=null)
 				//Set it
-				mids.put(media,md.getAttribute("mid").getValue());
+				mids.put(media,mn.getMid());
 
-			//Check direction attributes
-			if (md.hasAttribute("sendonly"))
-			{
-				//Part is sendonly
-				rtpDirections.put(media, Direction.SENDONLY);
-			} else if (md.hasAttribute("recvonly")) {
-				//Part is recvonly
-				rtpDirections.put(media, Direction.RECVONLY);
-			} else if (md.hasAttribute("inactive")) {
-				//Part is inactive
-				rtpDirections.put(media, Direction.INACTIVE);
-			} else {
-				//Part is sendrecv
-				rtpDirections.put(media, Direction.SENDRECV);
-			}
+			//Set direction
+			rtpDirections.put(media, Direction.valueOf(mn.getDirection().toUpperCase()));
 
-			//Add support for the media
-			if (media.equals("audio")) {
-				//Check if it was enabled in the configuration
-				if (this.mc.hasStream(JoinableStream.StreamType.audio))
-				{
-					//Set as supported
-					audioSupported = true;
-				} else {
-					//Log
-					logger.log(Level.FINE, "Media rejected because not allowed by configuration {0} ", new Object[]{media});
-					//Create media descriptor
-					MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-					//set all  formats
-					rejected.setFormats(md.getFormats());
-					//add to rejected media
-					rejectedMedias.add(rejected);
-					//Not supported media type
-					continue;
-				}
-			} else if (media.equals("video")) {
-				//Check if it was enabled in the configuration
-				if (this.mc.hasStream(JoinableStream.StreamType.video))
-				{
-					//Get content attribute
-					Attribute content = md.getAttribute("content");
-					//Check if we found it inside this media
-					if (content!=null)
-					{
-						//Get it
-						String mediaContentType = content.getValue();
-						//Check if it is not main
-						if (!mediaContentType.equalsIgnoreCase("main"))
-						{
-							//Create media descriptor
-							MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-							//set all  formats
-							rejected.setFormats(md.getFormats());
-							//Add content attribute
-							rejected.addAttribute(content);
-							//add to rejected media
-							rejectedMedias.add(rejected);
-							//Skip it
-							continue;
-						} else {
-							//Add the content type to the line
-							videoContentType = mediaContentType;
-						}
-					}
-					//Check if we have a media rate less than the current bitrate
-					if (videoBitrate==0 || (mediaBitrate>0 && mediaBitrate<videoBitrate))
-						//Store bitrate
-						videoBitrate = mediaBitrate;
-					//Set as supported
-					videoSupported = true;
-				} else {
-					//Log
-					logger.log(Level.FINE, "Media rejected because not allowed by configuration {0} ", new Object[]{media});
-					//Create media descriptor
-					MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-					//set all  formats
-					rejected.setFormats(md.getFormats());
-					//add to rejected media
-					rejectedMedias.add(rejected);
-					//Not supported media type
-					continue;
-				}	
-			} else if (media.equals("text")) {
-				//Check if it was enabled in the configuration
-				if (this.mc.hasStream(JoinableStream.StreamType.video))
-				{
-					//Set as supported
-					textSupported = true;
-				} else {
-					//Log
-					logger.log(Level.FINE, "Media rejected because not allowed by configuration {0} ", new Object[]{media});
-					//Create media descriptor
-					MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-					//set all  formats
-					rejected.setFormats(md.getFormats());
-					//add to rejected media
-					rejectedMedias.add(rejected);
-					//Not supported media type
-					continue;
-				}	
-			} else {
-				//Log
-				logger.log(Level.FINE, "Media rejected because it is unknown {0} ", new Object[]{media});
-				//Create media descriptor
-				MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-				//set all  formats
-				rejected.setFormats(md.getFormats());
-				//add to rejected media
-				rejectedMedias.add(rejected);
-				//Not supported media type
-				continue;
-			}
-
-			//Check if we have input map for that
+			//Check if we have output map for that
 			if (!rtpOutMediaMap.containsKey(media))
 				//Create new map
 				rtpOutMediaMap.put(media, new HashMap<Integer, Integer>());
+			//Add offered codecs
+			rtpOutMediaMap.get(media).putAll(mn.getRTPMap());
 
-			//Get all codecs
-			//No codec priority yet
-			Integer priority = Integer.MAX_VALUE;
-			
-			 //ICE credentials
-			String remoteMediaICEFrag = remoteICEFrag;
-			String remtoeMediaICEPwd = remtoeICEPwd;
-			//Check for global ice credentials
-			ufragAtrr = md.getAttribute("ice-ufrag");
-			pwdAttr = md.getAttribute("ice-pwd");
-
-			//Check if both present
-			if (ufragAtrr!=null && pwdAttr!=null)
-			{
-				//Using ice
-				useICE = true;
-				//Get values
-				remoteMediaICEFrag = ufragAtrr.getValue();
-				remtoeMediaICEPwd = pwdAttr.getValue();
-			}
-
-			//By default the media IP is the general IO
-			String mediaIp = ip;
+			//Check if we have type for h264
+			if (mn.getH264Type()>0)
+				//Store profile level
+				h264profileLevelId = mn.getH264ProfileLevelId()!=null ? new H264ProfileLevelID(mn.getH264ProfileLevelId()) : null;
+			//Check if it has packetization parameter
+			if (mn.getH264Packetization()!=null)
+				//Set it
+				h264packetization = mn.getH264Packetization();
 
-			//Get connection info
-			for (Connection c : md.getConnections())
+			//We are using rtx
+			if (mn.getRTXApt()!=null)
 			{
-				//Get it
-				mediaIp = c.getAddress();
-				//Check if ip should be nat for this media mixer or we are using ICE
-				if (conn.getMediaServer().isNated(mediaIp))
-					//Do natting
-					mediaIp = "0.0.0.0";
+				//Enable rtx, it must have apt
+				useRTX = true;
+				//Set it
+				rtpMediaProperties.get(media).put("useRTX", "1");
+				//Set PT
+				rtpMediaProperties.get(media).put("rtx.apt", mn.getRTXApt());
 			}
 
-			//Check if it is DTLS
-			if (proto.get(0).equals("UDP") && proto.get(1).equals("TLS"))
-				//Using DTLS
-				useDTLS = true;
-
-			//Get rtp profile
-			String rtpProfile = proto.get(proto.size()-1);
-
-			//Check if it is secure
-			if (rtpProfile.startsWith("S"))
-			{
-				//Secure (WARNING: if one media is secure, all will be secured, FIX!!)
-				isSecure = true;
-
-				//Check media fingerprint attribute
-				fingerprintAttr = (FingerprintAttribute) md.getAttribute("fingerprint");
-
-				//Check if DTLS is available
-				if (fingerprintAttr!=null)
-				{
-					//Using DTLS
-					useDTLS = true;
-					//Get remote fingerprint and hash
-					remoteHash        = fingerprintAttr.getHashFunc();
-					remoteFingerprint = fingerprintAttr.getFingerprint();
-				}
-
-				//If we have fingerprint
-				if (useDTLS)
-				{
-					//Set deault setup
-					Setup setup = Setup.ACTPASS;
-					//Get setup attribute
-					Attribute attr = md.getAttribute("setup");
-					//Chekc it
-					if (attr!=null)
-						//Set it
-						setup = Setup.byValue(attr.getValue());
-					//Create new DTLS info
-					remoteDTLSInfo.put(media, new DTLSInfo(setup,remoteHash,remoteFingerprint));
-					//Set ur setup as reverese of remote
-					rtpSetups.put(media, setup.reverse());
-				} else {
-					//Check crypto attribute
-					CryptoAttribute crypto = (CryptoAttribute) md.getAttribute("crypto");
-
-					//Check SDES key
-					if (crypto!=null)
-					{
-						//Create media crypto params
-						CryptoInfo info = new CryptoInfo();
-						//Get suite
-						info.suite = crypto.getSuite();
-						//Get key
-						info.key = crypto.getFirstKeyParam().getInfo();
-						//Add it
-						remoteCryptoInfo.put(media, info);
-					}
-				}
-			}
-			//Check if it is secure
-			if (rtpProfile.endsWith("S"))
-				//With feedback (WARNING: if one media is secure, all will have feedback, FIX!!)
-				isSecure = true;
-			
-			//Check if has rtcp
-			if (rtpProfile.endsWith("F"))
-				//With feedback (WARNING: if one media has feedback, all will have feedback, FIX!!)
-				rtcpFeedBack = true;
-
-			//FIX
-			Integer h264type = 0;
-			H264ProfileLevelID maxh264profile = null;
-
-			//For each format
-			for (String fmt : md.getFormats())
+			//If we have found a common codec
+			if (mn.getCodec()!=null)
 			{
-				Integer type = 0;
-				try {
-					//Get codec
-					type = Integer.parseInt(fmt);
-				} catch (Exception e) {
-					//Ignore non integer codecs, like '*' on application
-					continue;
-				}
-
-				//If it is dinamic
-				if (type>=96)
+				//Get ip for sending
+				String mediaIp = getSendIp(mn);
+				//Check the media type
+				if (media.equals("audio"))
 				{
-					//Get map
-					RTPMapAttribute rtpMap = md.getRTPMap(type);
-					//Check it has mapping
-					if (rtpMap==null)
-						//Skip this one
-						continue;
-					//Get the media type
-					String codecName = rtpMap.getName();
-					//Get codec for name
-					Integer codec = Codecs.getCodecForName(media,codecName);
-					//if it is h264
-					if (Codecs.H264.equals(codec))
-					{
-						int k = -1;
-						//Get ftmp line
-						Map<String,String> params = md.getFormatParameters(type);
-						//Check if it has it
-						if (params!=null && params.containsKey("profile-level-id"))
-						{
-							//Get profile level indication
-							H264ProfileLevelID profileLevelId = new H264ProfileLevelID(params.get("profile-level-id"));
-							//Convert and compare
-							if (profileLevelId.getProfile()<=Codecs.MaxH264SupportedProfile && (maxh264profile==null || profileLevelId.getProfile()>maxh264profile.getProfile()) )
-							{
-								//Store this type provisionally
-								h264type = type;
-								//store new profile value
-								maxh264profile = profileLevelId;
-								//Check if it has packetization parameter
-								if (params.containsKey("packetization-mode"))
-									//Set it
-									h264packetization = Integer.parseInt(params.get("packetization-mode"));
-							}
-						} else {
-							//check if no profile has been received so far
-							if (maxh264profile==null)
-								//Store this type provisionally
-								h264type = type;
-						}
-					} else if (Codecs.SPEEX16.equals(codec)  ) {
-						//Check it is 16khz
-						if (rtpMap.getRate()==16000)
-							//Add it
-							rtpOutMediaMap.get(media).put(type,codec);
-					} else if (codec!=-1) {
-						//Set codec mapping
-						rtpOutMediaMap.get(media).put(type,codec);
-					}
-				} else {
-					//Static, put it in the map
-					rtpOutMediaMap.get(media).put(type,type);
+					//Set port
+					setSendAudioPort(mn.getPort());
+					//And Ip
+					setSendAudioIp(mediaIp);
+					//Set codec
+					setAudioCodec(mn.getCodec());
+				} else if (media.equals("video")) {
+					//Set port
+					setSendVideoPort(mn.getPort());
+					//And Ip
+					setSendVideoIp(mediaIp);
+					//Set codec
+					setVideoCodec(mn.getCodec());
+				} else if (media.equals("text")) {
+					//Set port
+					setSendTextPort(mn.getPort());
+					//And Ip
+					setSendTextIp(mediaIp);
+					//Set codec
+					setTextCodec(mn.getCodec());
 				}
 			}
 
-			//Check if we have type for h264
-			if (h264type>0)
+			//Check if DTLS is used for this media
+			if (mn.getSetup()!=null)
 			{
-				//Store profile level
-				h264profileLevelId = maxh264profile;
-				//add it
-				rtpOutMediaMap.get(media).put(h264type,Codecs.H264);
+				//Get remote setup
+				Setup setup = Setup.byValue(mn.getSetup());
+				//Create new DTLS info
+				remoteDTLSInfo.put(media, new DTLSInfo(setup,mn.getHash(),mn.getFingerprint()));
+				//Set ur setup as reverese of remote
+				rtpSetups.put(media, setup.reverse());
+			} else if (mn.getCryptoSuite()!=null) {
+				//Create media crypto params
+				CryptoInfo info = new CryptoInfo();
+				//Get suite
+				info.suite = mn.getCryptoSuite();
+				//Get key
+				info.key = mn.getCryptoKey();
+				//Add it
+				remoteCryptoInfo.put(media, info);
 			}
 
-			//For each entry
-			for (Map.Entry<Integer,Integer> entry : rtpOutMediaMap.get(media).entrySet())
-			{
-				//Get Codec and type
-				Integer type = entry.getKey();
-				Integer codec = entry.getValue();
-				//Check the media type
-				if (media.equals("audio"))
-				{
-					//Get suppoorted codec for media
-					List<Integer> audioCodecs = supportedCodecs.get("audio");
-					//Get index
-					for (int index=0;index<audioCodecs.size();index++)
-					{
-						//Check codec
-						if (audioCodecs.get(index).equals(codec))
-						{
-							//Check if it is first codec for audio
-							if (priority==Integer.MAX_VALUE)
-							{
-								//Set port
-								setSendAudioPort(port);
-								//And Ip
-								setSendAudioIp(mediaIp);
-							}
-							//Check if we have a lower priority
-							if (index<priority)
-							{
-								//Store priority
-								priority = index;
-								//Set codec
-								setAudioCodec(codec);
-							}
-						}
-					}
-				}
-				else if (media.equals("video"))
-				{
-					//We are using rtx
-					if (codec.equals(Codecs.RTX))
-					{
-						//Get format
-						Map<String,String> fp = md.getFormatParameters(type);
-						//Get associated payload type
-						if (fp.containsKey("apt"))
-						{
-							//Enable rtx, it must have apt
-							useRTX = true;
-							//Set it
-							rtpMediaProperties.get(media).put("useRTX", "1");
-							//Set PT
-							rtpMediaProperties.get(media).put("rtx.apt", fp.get("apt"));
-						}
-					}
-					//Get suppoorted codec for media
-					List<Integer> videoCodecs = supportedCodecs.get("video");
-					//Get index
-					for (int index=0;index<videoCodecs.size();index++)
-					{
-						//Check codec
-						if (videoCodecs.get(index).equals(codec) && !codec.equals(Codecs.RED) && !codec.equals(Codecs.ULPFEC) && !codec.equals(Codecs.RTX))
-						{
-							//Check if it is first codec for video
-							if (priority==Integer.MAX_VALUE)
-							{
-								//Set port
-								setSendVideoPort(port);
-								//And Ip
-								setSendVideoIp(mediaIp);
-							}
-							//Check if we have a lower priority
-							if (index<priority)
-							{
-								//Store priority
-								priority = index;
-								//Set codec
-								setVideoCodec(codec);
-							}
-						}
-					}
-				}
-				else if (media.equals("text"))
-				{
-					//Get suppoorted codec for media
-					List<Integer> textCodecs = supportedCodecs.get("text");
-					//Get index
-					for (int index=0;index<textCodecs.size();index++)
-					{
-						//Check codec
-						if (textCodecs.get(index).equals(codec))
-						{
-							//Check if it is first codec for audio
-							if (priority==Integer.MAX_VALUE)
-							{
-								//Set port
-								setSendTextPort(port);
-								//And Ip
-								setSendTextIp(mediaIp);
-							}							
-							//Check if we have a lower priority
-							if (index<priority)
-							{
-								//Store priority
-								priority = index;
-								//Set codec
-								setTextCodec(codec);
-							}
-						}
-					}
-				}
-			}
 			//Check ice credentials
-			if (remoteMediaICEFrag!=null && remtoeMediaICEPwd!=null)
+			if (mn.getICEUfrag()!=null && mn.getICEPwd()!=null)
 				//Create info and add to remote ones
-				remoteICEInfo.put(media, new ICEInfo(remoteMediaICEFrag,remtoeMediaICEPwd));
-			//Get extmap atrributes
-			ArrayList<Attribute> extmaps = md.getAttributes("extmap");
-			//Get supported extensions
-			HashMap<String, Integer> supported = supportedExtensions.get(media);
+				remoteICEInfo.put(media, new ICEInfo(mn.getICEUfrag(),mn.getICEPwd()));
+
+			//Get supported extensions offered
+			HashMap<String, Integer> extensions = mn.getExtensions();
 			//If some extensions are supported for this media
-			if (supported!=null)
+			if (extensions!=null)
 			{
 				boolean offer = false;
 				//If it has not been created yet
@@ -1716,20 +1320,14 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 					offer = true;
 				}
 				//For each one
-				for (Attribute attr : extmaps)
+				for (Entry<String,Integer> extension : extensions.entrySet())
 				{
-					//Cast
-					ExtMapAttribute extmap = (ExtMapAttribute) attr;
-					//Check if it is supperted
-					if (supported.containsKey(extmap.getName()))
-					{
-						//If it is an offer
-						if (offer)
-							//Add it also to the outgoing SDP extmap
-							rtpExtensionMap.get(media).put(extmap.getName(), extmap.getId());
-						//Add to the
-						rtpMediaProperties.get(media).put(extmap.getName(), extmap.getId().toString());
-					}
+					//If it is an offer
+					if (offer)
+						//Add it also to the outgoing SDP extmap
+						rtpExtensionMap.get(media).put(extension.getKey(), extension.getValue());
+					//Add to the
+					rtpMediaProperties.get(media).put(extension.getKey(), extension.getValue().toString());
 				}
 			}
 			//Disable rtcp SR sending
@@ -1751,6 +1349,68 @@ public final class SdpPortManagerImpl implements SdpPortManager{
 			throw new SdpPortManagerException("No suitable codec found for text");
 	}
 
+	private String getSendIp(MediaNegotiation mn) {
+		//Get remote address
+		String ip = mn.getAddress();
+		//Check we have it
+		if (ip==null)
+			//Nothing
+			return null;
+		//We don't support ipv6 yet, check also if ip should be nat for this media mixer
+		if (!mn.getAddrType().equalsIgnoreCase("IP4") || conn.getMediaServer().isNated(ip))
+			//Do natting
+			return "0.0.0.0";
+		//Use remote one
+		return ip;
+	}
+
+	private Capabilities getCapabilities() {
+		//If not created yet or codecs have changed
+		if (capabilities==null)
+		{
+			//Create them
+			capabilities = new Capabilities(codecTable);
+			//Add medias enabled in the configuration
+			if (mc.hasStream(JoinableStream.StreamType.audio))
+				//Add audio
+				capabilities.addMedia("audio", getSupportedCodecs("audio"), supportedExtensions.get("audio"));
+			if (mc.hasStream(JoinableStream.StreamType.video))
+				//Add video
+				capabilities.addMedia("video", getSupportedCodecs("video"), supportedExtensions.get("video"));
+			if (mc.hasStream(JoinableStream.StreamType.video))
+				//Add text
+				capabilities.addMedia("text", getSupportedCodecs("text"), supportedExtensions.get("text"));
+		}
+		//Return them
+		return capabilities;
+	}
+
+	private List<Integer> getSupportedCodecs(String media) {
+		//Get codecs
+		List<Integer> codecs = supportedCodecs.get(media);
+		//Return them or an empty list
+		return codecs!=null ? codecs : new ArrayList<Integer>();
+	}
+
+	private static CodecTable createCodecTable() {
+		//Create table resolving names with the media server codecs
+		CodecTable table = new CodecTable(new CodecTable.Resolver() {
+			public int getCodecForName(String media, String name) {
+				return Codecs.getCodecForName(media, name);
+			}
+		});
+		//Only speex at 16khz
+		table.setRate("audio", Codecs.SPEEX16, 16000);
+		//Select h264 by profile
+		table.setRole("video", Codecs.H264, CodecTable.H264);
+		table.setMaxH264Profile(Codecs.MaxH264SupportedProfile);
+		//Repair formats
+		table.setRole("video", Codecs.RTX, CodecTable.RTX | CodecTable.REPAIR);
+		table.setRole("video", Codecs.RED, CodecTable.REPAIR);
+		table.setRole("video", Codecs.ULPFEC, CodecTable.REPAIR);
+		//Return it
+		return table;
+	}
 
 	private void success(EventType eventType) {
 		//Create and fire event
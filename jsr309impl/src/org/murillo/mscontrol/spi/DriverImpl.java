@@ -15,7 +15,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.media.mscontrol.MediaSession;
@@ -43,6 +47,8 @@ public class DriverImpl implements Driver {
     private static final Logger logger = Logger.getLogger(DriverImpl.class.getName());
     
     public static String DEFAULT_NAME = "MCUMediaMixerDriver";
+    private static final int DEFAULT_THREADS = 10;
+    private static final int MAX_QUEUED = 1024;
 
     private final String name;
     private final HashMap<String,MediaServer> servers;
@@ -61,7 +67,7 @@ public class DriverImpl implements Driver {
         //NO default media server
         mediaServerDefault = null;
         //Create executor threads
-        threadPool = null;//Executors.newFixedThreadPool(10); FIX!!!!
+        threadPool = createThreadPool();
         //Get
         configuration = System.getProperty("org.murillo.mscontrol.configuration");
         //Load conf
@@ -78,7 +84,7 @@ public class DriverImpl implements Driver {
         //NO default media server
         mediaServerDefault = null;
         //Create executor threads
-        threadPool = Executors.newFixedThreadPool(10);
+        threadPool = createThreadPool();
         //Get
         configuration = System.getProperty("org.murillo.mscontrol.configuration");
         //Load conf
@@ -95,13 +101,37 @@ public class DriverImpl implements Driver {
         //NO default media server
         mediaServerDefault = null;
         //Create executor threads
-        threadPool = Executors.newFixedThreadPool(10);
+        threadPool = createThreadPool();
         //Store configuration
         this.configuration = configuration;
         //Load configuration
         loadConfiguration(configuration);
     }
 
+    private static ExecutorService createThreadPool() {
+        //Get number of threads
+        int threads = Integer.getInteger("org.murillo.mscontrol.threads", DEFAULT_THREADS);
+        //Thread counter
+        final AtomicInteger count = new AtomicInteger();
+        //Bounded pool shared by all the media sessions of the driver, each one only queues a task at a time
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                //Create thread
+                Thread thread = new Thread(r, "MediaSessionExecutor-" + count.incrementAndGet());
+                //Do not prevent shutdown
+                thread.setDaemon(true);
+                //Return it
+                return thread;
+            }
+        });
+        //Release idle threads
+        executor.allowCoreThreadTimeOut(true);
+        //If full, run on the caller so it is slowed down instead of creating more threads
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        //Return it
+        return executor;
+    }
+
     public final void saveMixersConfiguration(String filename) {
         //Check if not null
         if (filename==null)
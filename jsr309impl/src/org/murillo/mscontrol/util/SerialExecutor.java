@@ -0,0 +1,215 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.murillo.mscontrol.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks one at a time and in submission order on a shared pool,
+ * so each media session gets ordered execution without owning any thread.
+ * Queued tasks are run in batches, so a burst of events costs a single
+ * submission to the pool, and the queue depth is tracked for monitoring.
+ * @author Sergio
+ */
+public class SerialExecutor implements Executor {
+    //Max tasks run on each pool submission before giving the thread to other sessions
+    public static final int MAX_BATCH = 32;
+
+    private final Executor pool;
+    private final LinkedList<Runnable> tasks;
+    private boolean running;
+    private boolean shutdown;
+    private int maxPending;
+    private long executed;
+    private long batches;
+    private Thread owner;
+    private boolean inline;
+
+    private final Runnable drain = new Runnable() {
+        public void run() {
+            //Lock
+            synchronized(tasks) {
+                //If the pool is full and has run the resubmission on the draining thread
+                if (owner==Thread.currentThread()) {
+                    //Let the outer call run next batch instead of nesting
+                    inline = true;
+                    //Exit
+                    return;
+                }
+                //We are draining
+                owner = Thread.currentThread();
+            }
+            try {
+                //Until queue is empty or other thread continues
+                while (runBatch()) {
+                    //Lock
+                    synchronized(tasks) {
+                        //Not run inline yet
+                        inline = false;
+                    }
+                    //Continue with the rest after the tasks of other sessions
+                    submit();
+                    //Lock
+                    synchronized(tasks) {
+                        //If submitted to other thread
+                        if (!inline)
+                            //Done
+                            return;
+                    }
+                }
+            } finally {
+                //Lock
+                synchronized(tasks) {
+                    //If nobody else is draining
+                    if (owner==Thread.currentThread())
+                        //Not anymore
+                        owner = null;
+                }
+            }
+        }
+    };
+
+    public SerialExecutor(Executor pool) {
+        //Store shared pool
+        this.pool = pool;
+        //Create queue
+        tasks = new LinkedList<Runnable>();
+        //Not running
+        running = false;
+        shutdown = false;
+        owner = null;
+        inline = false;
+        //No stats
+        maxPending = 0;
+        executed = 0;
+        batches = 0;
+    }
+
+    private boolean runBatch() {
+        int num = 0;
+        //Run until batch is full
+        while (true) {
+            Runnable task;
+            //Lock
+            synchronized(tasks) {
+                //If batch is full and there are more
+                if (num==MAX_BATCH && !tasks.isEmpty()) {
+                    //One more batch
+                    batches++;
+                    //Resubmit
+                    return true;
+                }
+                //Get next
+                task = tasks.poll();
+                //If no more
+                if (task==null) {
+                    //Stop
+                    running = false;
+                    //Done
+                    return false;
+                }
+                //Inc counters
+                executed++;
+                num++;
+            }
+            try {
+                //Run it
+                task.run();
+            } catch (Exception ex) {
+                //Log it and continue with the rest of tasks
+                Logger.getLogger("jsr309").log(Level.SEVERE,"Error executing task",ex);
+            }
+        }
+    }
+
+    public void execute(Runnable task) {
+        //Lock
+        synchronized(tasks) {
+            //Check
+            if (shutdown)
+                //Error
+                throw new RejectedExecutionException("Executor has been shut down");
+            //Enqueue
+            tasks.add(task);
+            //Update high water mark
+            if (tasks.size()>maxPending)
+                maxPending = tasks.size();
+            //If already draining
+            if (running)
+                //It will be run after the queued ones
+                return;
+            //Start
+            running = true;
+            //One more batch
+            batches++;
+        }
+        //Run queued tasks on the pool
+        submit();
+    }
+
+    private void submit() {
+        try {
+            //Run queued tasks on the pool
+            pool.execute(drain);
+        } catch (RejectedExecutionException ex) {
+            //Pool is shut down, run them on this thread so none is left queued
+            drain.run();
+        }
+    }
+
+    /**
+     * Do not accept new tasks, the queued ones are still run.
+     */
+    public void shutdown() {
+        //Lock
+        synchronized(tasks) {
+            //Set flag
+            shutdown = true;
+        }
+    }
+
+    public boolean isShutdown() {
+        //Lock
+        synchronized(tasks) {
+            return shutdown;
+        }
+    }
+
+    public int getPendingTasks() {
+        //Lock
+        synchronized(tasks) {
+            return tasks.size();
+        }
+    }
+
+    public int getMaxPendingTasks() {
+        //Lock
+        synchronized(tasks) {
+            return maxPending;
+        }
+    }
+
+    public long getExecutedTasks() {
+        //Lock
+        synchronized(tasks) {
+            return executed;
+        }
+    }
+
+    /**
+     * Get number of times the queue has been submitted to the pool.
+     */
+    public long getBatches() {
+        //Lock
+        synchronized(tasks) {
+            return batches;
+        }
+    }
+}
@@ -30,6 +30,7 @@ public:
 	static const int AppMixerBroadcasterId = 2;
 public:
 	typedef std::map<std::string,MediaStatistics> ParticipantStatistics;
+	typedef std::map<int,ParticipantStatistics> ConferenceStatistics;
 public:
 	class NetStream : public RTMPNetStream
 	{
@@ -80,6 +81,7 @@ public:
 	int SendFPU(int partId);
 	int SetMute(int partId,MediaFrame::Type media,bool isMuted);
 	ParticipantStatistics* GetParticipantStatistic(int partId);
+	ConferenceStatistics* GetConferenceStatistics();
 	int SetParticipantMosaic(int partId,int mosaicId);
 	int SetParticipantSidebar(int partId,int sidebarId);
 	int DeleteParticipant(int partId);
@@ -1582,6 +1582,34 @@ MultiConf::ParticipantStatistics* MultiConf::GetParticipantStatistic(int partId)
 	return stats;
 }
 
+MultiConf::ConferenceStatistics* MultiConf::GetConferenceStatistics()
+{
+	//Create statistics map
+	ConferenceStatistics *stats = new ConferenceStatistics();
+
+	//Lock
+	participantsLock.IncUse();
+
+	//For each participant
+	for (Participants::iterator it=participants.begin(); it!=participants.end(); ++it)
+	{
+		//Get participant
+		Participant *part = it->second;
+		//Get its entry
+		ParticipantStatistics &partStats = (*stats)[it->first];
+		//Append
+		partStats["audio"] = part->GetStatistics(MediaFrame::Audio);
+		partStats["video"] = part->GetStatistics(MediaFrame::Video);
+		partStats["text"]  = part->GetStatistics(MediaFrame::Text);
+	}
+
+	//Unlock
+	participantsLock.DecUse();
+
+	//Return stats
+	return stats;
+}
+
 /********************************************************
  * SetMute
  *   Set participant mute
@@ -1768,6 +1768,59 @@ xmlrpc_value* GetParticipantStatistics(xmlrpc_env *env, xmlrpc_value *param_arra
 	return xmlok(env,arr);
 }
 
+xmlrpc_value* GetConferenceStatistics(xmlrpc_env *env, xmlrpc_value *param_array, void *user_data)
+{
+	MCU *mcu = (MCU *)user_data;
+	MultiConf *conf = NULL;
+
+	 //Parseamos
+	int confId;
+	xmlrpc_parse_value(env, param_array, "(i)", &confId);
+
+	//Comprobamos si ha habido error
+	if(env->fault_occurred)
+		return xmlerror(env,"Fault occurred");
+
+	//Get conference reference
+	if(!mcu->GetConferenceRef(confId,&conf))
+		return xmlerror(env,"Conference does not exist");
+
+	//Get statistics of all participants at once
+	MultiConf::ConferenceStatistics *confStats = conf->GetConferenceStatistics();
+
+	//Free conference reference
+	mcu->ReleaseConferenceRef(confId);
+
+	//Create array
+	xmlrpc_value* arr = xmlrpc_array_new(env);
+
+	//For each participant
+	for (MultiConf::ConferenceStatistics::iterator it = confStats->begin(); it!=confStats->end(); ++it)
+	{
+		//Get participant id
+		int partId = it->first;
+		//Process its medias
+		for (MultiConf::ParticipantStatistics::iterator it2 = it->second.begin(); it2!=it->second.end(); ++it2)
+		{
+			//Get media
+			std::string media = it2->first;
+			//Get stats
+			MediaStatistics stats = it2->second;
+			//Create array
+			xmlrpc_value* val = xmlrpc_build_value(env,"(isiiiiiii)",partId,media.c_str(),stats.isReceiving,stats.isSending,stats.lostRecvPackets,stats.numRecvPackets,stats.numSendPackets,stats.totalRecvBytes,stats.totalSendBytes);
+			//Add it
+			xmlrpc_array_append_item(env,arr,val);
+			//Release
+			xmlrpc_DECREF(val);
+		}
+	}
+	//Free stats
+	delete(confStats);
+
+	//return
+	return xmlok(env,arr);
+}
+
 xmlrpc_value* GetMosaicPositions(xmlrpc_env *env, xmlrpc_value *param_array, void *user_data)
 {
 	MCU *mcu = (MCU *)user_data;
@@ -2347,6 +2400,7 @@ XmlHandlerCmd mcuCmdList[] =
 	{"SetChair",SetChair},
 	{"SetAppMixerViewer",SetAppMixerViewer},
 	{"GetParticipantStatistics",GetParticipantStatistics},
+	{"GetConferenceStatistics",GetConferenceStatistics},
 	{"AddParticipantInputToken",AddParticipantInputToken},
 	{"AddParticipantOutputToken",AddParticipantOutputToken},
 	{"SetParticipantMosaic",SetParticipantMosaic},
@@ -47,9 +47,10 @@ import javax.xml.bind.annotation.XmlType;
 import org.apache.xmlrpc.XmlRpcException;
 import org.murillo.MediaServer.Codecs;
 import org.murillo.MediaServer.XmlRpcMcuClient;
-import org.murillo.MediaServer.XmlRpcMcuClient.MediaStatistics;
 import org.murillo.mcu.exceptions.ParticipantNotFoundException;
 import org.murillo.mcuWeb.Participant.State;
+import org.murillo.sdp.negotiation.Capabilities;
+import org.murillo.sdp.negotiation.CodecTable;
 
 /**
  *
@@ -124,6 +125,15 @@ public class Conference implements Participant.Listener,Serializable {
 	private Integer compType;
 	private Integer size;
 	private Integer slots[];
+	private HashMap<Integer,Integer[]> mosaics;
+	private HashMap<Integer,String> overlays;
+	private HashMap<Integer,HashSet<Integer>> mosaicParticipants;
+	private final SDPTemplateCache sdpTemplates = new SDPTemplateCache();
+	private Capabilities capabilities;
+	private String capabilitiesKey;
+
+	//Codecs known by the media server
+	private static final CodecTable codecTable = createCodecTable();
 
 	//Participant id counter
 	private final AtomicInteger count = new AtomicInteger(XmlRpcMcuClient.AppMixerId);
@@ -194,6 +204,10 @@ public class Conference implements Participant.Listener,Serializable {
 		addSupportedCodec("text", Codecs.T140);
 		//Create the participant map
 		participants = new ConcurrentHashMap<Integer,Participant>();
+		//Create mosaic state maps, needed to rebuild the conference on other mixer
+		mosaics = new HashMap<Integer, Integer[]>();
+		overlays = new HashMap<Integer, String>();
+		mosaicParticipants = new HashMap<Integer, HashSet<Integer>>();
 		//Set composition type
 		client.SetCompositionType(id,XmlRpcMcuClient.DefaultMosaic,compType, size);
 		//If it is a 1P type set fist slot for VAD
@@ -268,6 +282,8 @@ public class Conference implements Participant.Listener,Serializable {
 		}
 		//launch event
 		fireOnConferenceEnded();
+		//Stop collecting statistics
+		mixer.getStatisticsCollector().remove(this);
 		//Remove client
 		mixer.releaseMcuClient(client);
 	}
@@ -405,6 +421,53 @@ public class Conference implements Participant.Listener,Serializable {
 		return profile;
 	}
 
+	public SDPTemplateCache getSDPTemplates() {
+		return sdpTemplates;
+	}
+
+	/**
+	 * Get negotiation capabilities for the supported codecs and extensions of a participant.
+	 * Participants with the same ones share the same precomputed tables.
+	 */
+	public synchronized Capabilities getCapabilities(HashMap<String,List<Integer>> codecs,HashMap<String,HashMap<String,Integer>> extensions) {
+		//Get key
+		String key = codecs.toString() + extensions.toString();
+		//Check if they are the same as the last ones
+		if (capabilities!=null && key.equals(capabilitiesKey))
+			//Reuse them
+			return capabilities;
+		//Create new ones
+		capabilities = new Capabilities(codecTable);
+		//For each supported media
+		for (Entry<String,List<Integer>> media : codecs.entrySet())
+			//Add it with its extensions
+			capabilities.addMedia(media.getKey(), media.getValue(), extensions.get(media.getKey()));
+		//Store key
+		capabilitiesKey = key;
+		//Return them
+		return capabilities;
+	}
+
+	private static CodecTable createCodecTable() {
+		//Create table resolving names with the media server codecs
+		CodecTable table = new CodecTable(new CodecTable.Resolver() {
+			public int getCodecForName(String media, String name) {
+				return Codecs.getCodecForName(media, name);
+			}
+		});
+		//Only speex at 16khz
+		table.setRate("audio", Codecs.SPEEX16, 16000);
+		//Select h264 by profile
+		table.setRole("video", Codecs.H264, CodecTable.H264);
+		table.setMaxH264Profile(Codecs.MaxH264SupportedProfile);
+		//Repair formats
+		table.setRole("video", Codecs.RTX, CodecTable.RTX | CodecTable.REPAIR);
+		table.setRole("video", Codecs.RED, CodecTable.REPAIR);
+		table.setRole("video", Codecs.ULPFEC, CodecTable.REPAIR);
+		//Return it
+		return table;
+	}
+
 	public void setProfile(Profile profile) {
 		this.profile = profile;
 	}
@@ -430,6 +493,17 @@ public class Conference implements Participant.Listener,Serializable {
 		try {
 			//Add participant to mosaic
 			client.AddMosaicParticipant(id, mosaicId, partId);
+			//Lock
+			synchronized(mosaicParticipants) {
+				//Get mosaic members
+				HashSet<Integer> members = mosaicParticipants.get(mosaicId);
+				//If not found
+				if (members==null)
+					//Create it
+					mosaicParticipants.put(mosaicId, members = new HashSet<Integer>());
+				//Add it
+				members.add(partId);
+			}
 		} catch (XmlRpcException ex) {
 			logger.log(Level.SEVERE, null, ex);
 		}
@@ -439,6 +513,15 @@ public class Conference implements Participant.Listener,Serializable {
 		try {
 			//Remove participant from mosaic
 			client.RemoveMosaicParticipant(id, mosaicId, partId);
+			//Lock
+			synchronized(mosaicParticipants) {
+				//Get mosaic members
+				HashSet<Integer> members = mosaicParticipants.get(mosaicId);
+				//If found
+				if (members!=null)
+					//Remove it
+					members.remove(partId);
+			}
 		} catch (XmlRpcException ex) {
 			logger.log(Level.SEVERE, null, ex);
 		}
@@ -519,7 +602,11 @@ public class Conference implements Participant.Listener,Serializable {
 	public int createMosaic(Integer compType, Integer size) {
 		try {
 			//Create new mosaic
-			return client.CreateMosaic(id, compType, size);
+			Integer mosaicId = client.CreateMosaic(id, compType, size);
+			//Store it
+			mosaics.put(mosaicId, new Integer[]{compType,size});
+			//Return it
+			return mosaicId;
 		} catch (XmlRpcException ex) {
 			//Log
 			logger.log(Level.SEVERE, null, ex);
@@ -531,7 +618,11 @@ public class Conference implements Participant.Listener,Serializable {
 	public boolean setMosaicOverlayImage(Integer mosaicId, String fileName) {
 		try {
 			// create new mosaic
-			return client.SetMosaicOverlayImage(id, mosaicId, fileName);
+			boolean done = client.SetMosaicOverlayImage(id, mosaicId, fileName);
+			//Store it
+			overlays.put(mosaicId, fileName);
+			//Return result
+			return done;
 		} catch (XmlRpcException ex) {
 			//Log
 			logger.log(Level.SEVERE, "failed to send MCU setMosaicOverlayImage", ex);
@@ -542,6 +633,9 @@ public class Conference implements Participant.Listener,Serializable {
 
 	public boolean resetMosaicOverlay(Integer mosaicId) {
 		try {
+			//Remove it
+			overlays.remove(mosaicId);
+			//Reset it
 			return client.ResetMosaicOverlay(id, mosaicId);
 		} catch (XmlRpcException ex) {
 			//Log
@@ -553,6 +647,15 @@ public class Conference implements Participant.Listener,Serializable {
 
 	public boolean deleteMosaic(Integer mosaicId) {
 		try {
+			//Remove stored state
+			mosaics.remove(mosaicId);
+			overlays.remove(mosaicId);
+			//Lock
+			synchronized(mosaicParticipants) {
+				//Remove members
+				mosaicParticipants.remove(mosaicId);
+			}
+			//Delete it
 			return client.DeleteMosaic(id, mosaicId);
 		} catch (XmlRpcException ex) {
 			//Log
@@ -635,6 +738,10 @@ public class Conference implements Participant.Listener,Serializable {
 		try {
 			//Set composition
 			client.SetCompositionType(id, mosaicId, compType, size);
+			//If it is not the default one
+			if (!XmlRpcMcuClient.DefaultMosaic.equals(mosaicId))
+				//Store it
+				mosaics.put(mosaicId, new Integer[]{compType,size});
 			//Set composition size
 			setCompType(compType);
 			//Set mosaic size
@@ -715,14 +822,191 @@ public class Conference implements Participant.Listener,Serializable {
 		part.end();
 	}
 
-	Map<String, MediaStatistics> getParticipantStats(Integer partId) {
+	/**
+	 * Move the conference to another media mixer without dropping the calls.
+	 * The conference, its mosaics, slots and participants are recreated on the new mixer,
+	 * connected participants are sent a new offer pointing to it and the old instance is deleted.
+	 * Participants not connected yet can not be renegotiated so they are ended.
+	 * @param target mixer to move the conference to
+	 */
+	public synchronized void migrate(MediaMixer target) throws XmlRpcException {
+		//If already there or ending
+		if (target==mixer || isDestroying)
+			//Nothing to do
+			return;
+		//Log
+		logger.log(Level.INFO, "Migrating conference {0} from mixer {1} to {2}", new Object[]{UID,mixer.getUID(),target.getUID()});
+		//Create new client
+		XmlRpcMcuClient newClient = target.createMcuClient();
+		//Ids of the new mosaics
+		HashMap<Integer,Integer> mosaicIds = new HashMap<Integer, Integer>();
+		//Default one is always there
+		mosaicIds.put(XmlRpcMcuClient.DefaultMosaic, XmlRpcMcuClient.DefaultMosaic);
+		Integer newId = null;
 		try {
-			//Get them
-			return client.getParticipantStatistics(id, partId);
+			//Create conference with same UID so events are routed to us
+			newId = newClient.CreateConference(UID,target.getEventQueueId());
+			//Set default composition
+			newClient.SetCompositionType(newId,XmlRpcMcuClient.DefaultMosaic,compType,size);
+			//Recreate other mosaics
+			for (Entry<Integer,Integer[]> entry : mosaics.entrySet()) {
+				//Create it
+				Integer mosaicId = newClient.CreateMosaic(newId, entry.getValue()[0], entry.getValue()[1]);
+				//Store new id
+				mosaicIds.put(entry.getKey(), mosaicId);
+			}
+			//Restore overlays
+			for (Entry<Integer,String> entry : overlays.entrySet())
+				//Set it
+				newClient.SetMosaicOverlayImage(newId, mosaicIds.get(entry.getKey()), entry.getValue());
+			//Init conference with same properties
+			newClient.InitConference(newId,properties);
 		} catch (XmlRpcException ex) {
-			logger.log(Level.SEVERE, null, ex);
-			return null;
+			//If it was created
+			if (newId!=null)
+				try {
+					//Remove it
+					newClient.DeleteConference(newId);
+				} catch (XmlRpcException ex2) {
+					logger.log(Level.SEVERE, "Error deleting conference on failed migration", ex2);
+				}
+			//Release client
+			target.releaseMcuClient(newClient);
+			//Error
+			throw ex;
+		}
+		//Store old instance
+		MediaMixer oldMixer = mixer;
+		XmlRpcMcuClient oldClient = client;
+		Integer oldId = id;
+		boolean wasBroadcasting = broadcasting;
+		//Switch to the new one, from now on all requests go to the new mixer
+		mixer = target;
+		client = newClient;
+		id = newId;
+		//Stop broadcasting on old mixer
+		if (wasBroadcasting)
+			try {
+				//Stop it
+				oldClient.StopBroadcaster(oldId);
+			} catch (Exception ex) {
+				logger.log(Level.SEVERE, "Error StopBroadcaster on migration", ex);
+			}
+		//Start broadcast on new mixer
+		broadcasting = client.StartBroadcaster(id);
+		//If it was broadcasting
+		if (wasBroadcasting)
+			//Continue recording on a new file
+			startRecordingBroadcaster(applyVariables("/var/recordings/${DID}-${TS}-"+System.currentTimeMillis()+".flv"));
+		//New participant ids
+		HashMap<Integer,Integer> partIds = new HashMap<Integer, Integer>();
+		//For each participant
+		for (Participant part : participants.values()) {
+			//Get old id
+			Integer oldPartId = part.getPartId();
+			//Get new mosaic
+			Integer mosaicId = mosaicIds.get(part.getMosaicId());
+			//If it was deleted
+			if (mosaicId==null)
+				//Use default
+				mosaicId = XmlRpcMcuClient.DefaultMosaic;
+			//Only connected ones can be renegotiated
+			if (!(part instanceof RTPParticipant) || !State.CONNECTED.equals(part.getState())) {
+				//End it
+				part.end();
+				//Next
+				continue;
+			}
+			try {
+				//Create participant in the new conference
+				Integer partId = client.CreateParticipant(id,part.getName().replace('.','_'),part.getToken(),part.getType().valueOf(),mosaicId,part.getSidebarId());
+				//Store mosaic
+				part.setMosaicId(mosaicId);
+				//Store new id
+				partIds.put(oldPartId, partId);
+				//Update participant map
+				participants.remove(oldPartId);
+				participants.put(partId, part);
+				//Send new offer with the new mixer ports
+				part.restart(partId);
+				//Restore mute state
+				if (part.getAudioMuted())
+					client.SetMute(id, partId, Codecs.MediaType.AUDIO, true);
+				if (part.getVideoMuted())
+					client.SetMute(id, partId, Codecs.MediaType.VIDEO, true);
+				if (part.getTextMuted())
+					client.SetMute(id, partId, Codecs.MediaType.TEXT, true);
+			} catch (Exception ex) {
+				logger.log(Level.SEVERE, "Error migrating participant "+oldPartId, ex);
+				//End it
+				part.end();
+			}
+		}
+		//Restore slots of default mosaic
+		for (int i=0;i<numSlots;i++) {
+			//Get slot value
+			Integer slot = slots[i];
+			//If it is a participant
+			if (slot>0)
+				//Get new id
+				slot = partIds.get(slot);
+			//If not free or participant gone
+			if (slot!=null && !slot.equals(XmlRpcMcuClient.SLOTFREE))
+				//Set it
+				setMosaicSlot(i, slot);
+			else
+				//Free it
+				slots[i] = XmlRpcMcuClient.SLOTFREE;
+		}
+		//Get old members
+		HashMap<Integer,HashSet<Integer>> members;
+		//Lock
+		synchronized(mosaicParticipants) {
+			//Copy and clear them
+			members = new HashMap<Integer, HashSet<Integer>>(mosaicParticipants);
+			mosaicParticipants.clear();
+		}
+		//Restore explicit mosaic participants
+		for (Entry<Integer,HashSet<Integer>> entry : members.entrySet()) {
+			//Get new mosaic id
+			Integer mosaicId = mosaicIds.get(entry.getKey());
+			//For each one
+			for (Integer partId : entry.getValue())
+				//If still there
+				if (mosaicId!=null && partIds.containsKey(partId))
+					//Add it
+					addMosaicParticipant(mosaicId, partIds.get(partId));
+		}
+		//Update mosaic ids
+		HashMap<Integer,Integer[]> newMosaics = new HashMap<Integer, Integer[]>();
+		HashMap<Integer,String> newOverlays = new HashMap<Integer, String>();
+		for (Entry<Integer,Integer[]> entry : mosaics.entrySet())
+			newMosaics.put(mosaicIds.get(entry.getKey()), entry.getValue());
+		for (Entry<Integer,String> entry : overlays.entrySet())
+			newOverlays.put(mosaicIds.get(entry.getKey()), entry.getValue());
+		mosaics = newMosaics;
+		overlays = newOverlays;
+		try {
+			//Remove old conference
+			oldClient.DeleteConference(oldId);
+		} catch (Exception ex) {
+			logger.log(Level.SEVERE, "Error deleting old conference on migration", ex);
 		}
+		//Stop collecting statistics on old mixer
+		oldMixer.getStatisticsCollector().remove(this);
+		//Release old client
+		oldMixer.releaseMcuClient(oldClient);
+	}
+
+	/**
+	 * Get statistics of a participant, refreshing the ones of the whole conference if they are outdated.
+	 * @return the participant samples, updated in place
+	 */
+	ParticipantStatistics getParticipantStats(Participant part) throws XmlRpcException {
+		//Make sure they are not outdated
+		mixer.getStatisticsCollector().update(this);
+		//Return them
+		return part.getStatistics();
 	}
 
 	@Override
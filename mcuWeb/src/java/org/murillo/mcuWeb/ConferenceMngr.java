@@ -38,7 +38,10 @@ import javax.servlet.sip.SipServletResponse;
 import javax.xml.parsers.ParserConfigurationException;
 import org.apache.xmlrpc.XmlRpcException;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import javax.servlet.ServletContext;
 import javax.servlet.sip.SipFactory;
 import javax.servlet.sip.SipURI;
@@ -81,11 +84,14 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
 
     private final ConcurrentHashMap<String,MediaMixer> mixers;
     private final ConcurrentHashMap<String,Conference> conferences;
+    private final ConcurrentHashMap<String,Conference> conferencesByDid;
+    private final ConcurrentHashMap<String,FutureTask<Conference>> pendingConferences;
     private final ConcurrentHashMap<String,Broadcast> broadcasts;
     private final ConcurrentHashMap<String,Profile> profiles;
     private final ConcurrentHashMap<String,ConferenceTemplate> templates;
     private String confDir;
     private final HashSet<Listener> listeners;
+    private final MixerPlacement placement;
     private SipFactory sf;
     
     public ConferenceMngr(ServletContext context) {
@@ -106,8 +112,12 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
         profiles = new ConcurrentHashMap<String,Profile>();
         templates = new ConcurrentHashMap<String,ConferenceTemplate>();
         conferences = new ConcurrentHashMap<String,Conference>();
+        conferencesByDid = new ConcurrentHashMap<String,Conference>();
+        pendingConferences = new ConcurrentHashMap<String,FutureTask<Conference>>();
         broadcasts = new ConcurrentHashMap<String,Broadcast>();
         listeners = new HashSet<Listener>();
+        //Create mixer placement
+        placement = new MixerPlacement();
     }
 
     public void setSipFactory(SipFactory sf) {
@@ -427,22 +437,25 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
         }
     }
 
-    public Conference createConference(String name,String did, String mixerId,Integer size,Integer compType,int vad,String profileId,String audioCodecs,String videoCodecs,String textCodecs) {
-        Conference conf = null;
-        //Lock conferences
-        synchronized (conferences)
+    public Conference createConference(final String name,final String did, String mixerId,final Integer size,final Integer compType,final int vad,String profileId,final String audioCodecs,final String videoCodecs,final String textCodecs) {
+        //Check DID
+        if (did==null || did.isEmpty())
         {
-            //First check if a conference already exist with the same DID
-            if (searchConferenceByDid(did)!=null)
-            {
-                //Log error
-                Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference DID already present [did:{0}]", did);
-                //No conference created
-                return null;
-            }
+            //Log error
+            Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference, no DID provided");
+            //No conference created
+            return null;
+        }
+        //First check if a conference already exist with the same DID
+        if (searchConferenceByDid(did)!=null)
+        {
+            //Log error
+            Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference DID already present [did:{0}]", did);
+            //No conference created
+            return null;
         }
         //Get first available mixer
-        MediaMixer mixer = mixers.get(mixerId);
+        final MediaMixer mixer = mixers.get(mixerId);
         //Check it
         if (mixer == null) {
             //Log
@@ -452,7 +465,7 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
         }
 
             //Get profile
-            Profile profile = profiles.get(profileId);
+            final Profile profile = profiles.get(profileId);
         //Check it
         if (profile == null) {
             //Log
@@ -461,6 +474,50 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
             return null;
         }
 
+	//Create the task that will create the conference
+	FutureTask<Conference> task = new FutureTask<Conference>(new Callable<Conference>() {
+	    public Conference call() {
+		//Check again in case it was created before we reserved the did
+		if (searchConferenceByDid(did)!=null)
+		{
+		    //Log error
+		    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference DID already present [did:{0}]", did);
+		    //No conference created
+		    return null;
+		}
+		//Create conference
+		return createConference(name, did, mixer, size, compType, vad, profile, audioCodecs, videoCodecs, textCodecs);
+	    }
+	});
+	//Reserve the did before creating anything on the mixer
+	if (pendingConferences.putIfAbsent(did, task)!=null)
+	{
+	    //Log error
+	    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference DID already being created [did:{0}]", did);
+	    //No conference created
+	    return null;
+	}
+	try {
+	    //Create it on this thread
+	    task.run();
+	} finally {
+	    //Release reservation
+	    pendingConferences.remove(did, task);
+	}
+	try {
+	    //Get created conference
+	    return task.get();
+	} catch (InterruptedException ex) {
+	    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.WARNING, "Interrupted while creating conference [did:{0}]", did);
+	} catch (ExecutionException ex) {
+	    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference [did:"+did+"]", ex.getCause());
+	}
+	//No conference created
+	return null;
+    }
+
+    private Conference createConference(String name,String did,MediaMixer mixer,Integer size,Integer compType,int vad,Profile profile,String audioCodecs,String videoCodecs,String textCodecs) {
+        Conference conf = null;
         try {
 	    //Create uri
 	    SipURI uri = sf.createSipURI(did,"mcuWeb");
@@ -496,25 +553,14 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
                     //Add it
                     conf.addSupportedCodec("text", codec);
             }
-            //We don't want to call destroy inside the synchronized block
-            boolean done = false;
-            //Lock conferences
-            synchronized (conferences)
-            {
-                //Second check if a conference already exist with the same DID
-                if (searchConferenceByDid(did)==null)
-                {
-                    //Add listener
-                    conf.addListener(this);
-                    //Save to conferences
-                    conferences.put(conf.getUID(), conf);
-                    //We are done
-                    done = true;
-                }
-            }
-            //if the did was duplicated
-            if (!done)
+            //Reserve the DID, only one conference can get it
+            if (conferencesByDid.putIfAbsent(did, conf)==null)
             {
+                //Add listener
+                conf.addListener(this);
+                //Save to conferences
+                conferences.put(conf.getUID(), conf);
+            } else {
                 //Log error
                 Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating conference DID already present [did:{0}] destroying conference", did);
                 //Delete conference
@@ -542,8 +588,12 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
     public Conference createConferenceAdHoc(String did,SipURI uri, ConferenceTemplate template)
     {
         final Conference conf;
-        //Get first available mixer
-        MediaMixer mixer = template.getMixer();
+        //Select mixer based on current load
+        MediaMixer mixer = placement.select(did, template, mixers.values(), conferences.values());
+        //If none available
+        if (mixer==null)
+            //Use the one from the template
+            mixer = template.getMixer();
         //Get supported codecs
         String audioCodecs = template.getAudioCodecs();
         String videoCodecs = template.getVideoCodecs();
@@ -584,11 +634,22 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
                     //Add it
                     conf.addSupportedCodec("text", codec);
             }
-            //Lock conferences
-            synchronized (conferences) {
-                //Save to conferences
-                conferences.put(conf.getUID(), conf);
+            //Reserve the DID
+            Conference existing = conferencesByDid.putIfAbsent(did, conf);
+            //If another one was created meanwhile
+            if (existing!=null)
+            {
+                //Log
+                Logger.getLogger(ConferenceMngr.class.getName()).log(Level.WARNING, "Conference DID already present [did:{0}] destroying new one", did);
+                //Do not get its events
+                conf.removeListener(this);
+                //Delete it
+                conf.destroy();
+                //Use the existing one
+                return existing;
             }
+            //Save to conferences
+            conferences.put(conf.getUID(), conf);
         } catch (XmlRpcException ex) {
              //Log
             Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, null, ex);
@@ -618,6 +679,57 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
         Logger.getLogger(ConferenceMngr.class.getName()).log(Level.INFO, "Destroyed conference {0}", conf.getUID());
     }
 
+    public void migrateConference(String confId,String mixerId) throws ConferenceNotFoundExcetpion, XmlRpcException {
+        //Get the conference
+        Conference conf = getConference(confId);
+        //Get target mixer
+        MediaMixer mixer = mixers.get(mixerId);
+        //Check it
+        if (mixer==null || !mixer.isConnected())
+            //Error
+            throw new XmlRpcException("Mixer "+mixerId+" not available");
+        //Move it
+        conf.migrate(mixer);
+        //Log
+        Logger.getLogger(ConferenceMngr.class.getName()).log(Level.INFO, "Migrated conference {0} to mixer {1}", new Object[]{conf.getUID(),mixer.getUID()});
+    }
+
+    public int drainMixer(String uid) {
+        int moved = 0;
+        //Get other mixers
+        HashMap<String,MediaMixer> others = new HashMap<String,MediaMixer>(mixers);
+        //Remove the one being drained
+        others.remove(uid);
+        //For each conference
+        for (Conference conf : conferences.values())
+        {
+            //If it is not in the mixer
+            if (!conf.getMixer().getUID().equals(uid))
+                //Skip
+                continue;
+            //Select new mixer
+            MediaMixer mixer = placement.select(conf.getDID(), null, others.values(), conferences.values());
+            //If none available
+            if (mixer==null)
+            {
+                //Log
+                Logger.getLogger(ConferenceMngr.class.getName()).log(Level.WARNING, "No mixer available to drain conference {0}", conf.getUID());
+                //Next
+                continue;
+            }
+            try {
+                //Move it
+                conf.migrate(mixer);
+                //One more
+                moved++;
+            } catch (Exception ex) {
+                Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error migrating conference "+conf.getUID(), ex);
+            }
+        }
+        //Return number of conferences moved
+        return moved;
+    }
+
     public Broadcast createBroadcast(String name,String tag,String mixerId) {
         Integer sesId;
         Broadcast bcast = null;
@@ -710,6 +822,10 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
         return new HashMap<String,Broadcast>(broadcasts);
     }
 
+    public MixerPlacement getPlacement() {
+        return placement;
+    }
+
     public HashMap<String, ConferenceTemplate> getTemplates() {
         return new HashMap<String,ConferenceTemplate>(templates);
     }
@@ -763,47 +879,76 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
     }
 
     private Conference searchConferenceByDid(String did) {
-	synchronized(conferences)
-	{
-	    //Check all conferences
-	    for(Conference conf : conferences.values())
-	    {
-		//Check did
-		if(did.equals(conf.getDID()))
-		    //Return conference
-		    return conf;
-	    }
-	}
-        //Nothing found
-        return null;
+        //Check did
+        if (did==null)
+            //Nothing found
+            return null;
+        //Get it from the index
+        return conferencesByDid.get(did);
     }
 
-    public Conference getMappedConference(SipURI from,SipURI uri) {
+    public Conference getMappedConference(SipURI from,final SipURI uri) {
         //Get did
-        String did = uri.getUser();
+        final String did = uri.getUser();
 
         //Log
         Logger.getLogger(ConferenceMngr.class.getName()).log(Level.FINEST, "looking for conference uri={0} did={1}", new Object[]{uri, did});
 
-	//Block
-	synchronized (conferences)
-	{
-	    //Check if there is any conference with that UUID first
-	    try { return getConference(did); } catch (ConferenceNotFoundExcetpion ex) {}
-
-	    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.FINEST, "not 3W template looking in conferences");
-	    //Search it
-	    Conference conf = searchConferenceByDid(did);
-	    //If found
-	    if (conf!=null)
-		//Return it
-		return conf;
-	    //Find templates
-	    ConferenceTemplate template = getConferenceTemplateForDID(did);
-	    //If found
-	    if(template!=null)
+	//Check if there is any conference with that UUID first
+	Conference conf = conferences.get(did);
+	//If found
+	if (conf!=null)
+	    //Return it
+	    return conf;
+
+	Logger.getLogger(ConferenceMngr.class.getName()).log(Level.FINEST, "not 3W template looking in conferences");
+	//Search it
+	conf = searchConferenceByDid(did);
+	//If found
+	if (conf!=null)
+	    //Return it
+	    return conf;
+	//Find templates
+	final ConferenceTemplate template = getConferenceTemplateForDID(did);
+	//If not found
+	if(template==null)
+	    //NOt found
+	    return null;
+	//Create the task that will create the conference
+	FutureTask<Conference> task = new FutureTask<Conference>(new Callable<Conference>() {
+	    public Conference call() {
+		//Check again in case it was created before we reserved the did
+		Conference conf = searchConferenceByDid(did);
+		//If found
+		if (conf!=null)
+		    //Return it
+		    return conf;
 		//Create conference
 		return createConferenceAdHoc(did,uri,template);
+	    }
+	});
+	//Reserve the did, if another request is already creating it we will wait for that one
+	FutureTask<Conference> pending = pendingConferences.putIfAbsent(did, task);
+	//If we own the creation
+	if (pending==null)
+	{
+	    try {
+		//Create it on this thread without holding any global lock
+		task.run();
+	    } finally {
+		//Release reservation
+		pendingConferences.remove(did, task);
+	    }
+	    //Wait on our task
+	    pending = task;
+	}
+	try {
+	    //Wait for the conference
+	    return pending.get();
+	} catch (InterruptedException ex) {
+	    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.WARNING, "Interrupted while waiting for conference creation [did:{0}]", did);
+	} catch (ExecutionException ex) {
+	    Logger.getLogger(ConferenceMngr.class.getName()).log(Level.SEVERE, "Error creating ad hoc conference [did:"+did+"]", ex.getCause());
 	}
 	//NOt found
 	return null;
@@ -1165,6 +1310,10 @@ public class ConferenceMngr implements Serializable,Conference.Listener,MediaMix
         String confId = conf.getUID();
         //Remove conference from list
         conferences.remove(confId);
+        //Remove from index only if it is still the one for the DID
+        if (conf.getDID()!=null)
+            //Remove it
+            conferencesByDid.remove(conf.getDID(), conf);
         //fire event
         fireOnConferenceDestroyed(confId);
     }
@@ -0,0 +1,296 @@
+/*
+ * ConferenceStatisticsCollector.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.murillo.mcuWeb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.xmlrpc.XmlRpcException;
+import org.murillo.MediaServer.XmlRpcBatch;
+import org.murillo.MediaServer.XmlRpcBatch.Call;
+import org.murillo.MediaServer.XmlRpcMcuClient;
+import org.murillo.MediaServer.XmlRpcMcuClient.MediaStatistics;
+
+/**
+ * Periodically retrieves the statistics of all the participants of the conferences
+ * running on a media mixer, sending a single request per round instead of one per participant.
+ * Samples are stored in place in the statistics of each participant.
+ * @author Sergio Garcia Murillo
+ */
+public class ConferenceStatisticsCollector {
+    private static final Logger logger = Logger.getLogger(ConferenceStatisticsCollector.class.getName());
+
+    //Time between collection rounds in ms
+    public static final long INTERVAL = 20000;
+    //Maximum age of a snapshot before it is refreshed on read, lower than the participant timeout
+    public static final long MAX_AGE = 2*INTERVAL;
+
+    private static class Snapshot {
+        private final Integer confId;
+        private final long timestamp;
+
+        private Snapshot(Integer confId,long timestamp) {
+            //Store values
+            this.confId = confId;
+            this.timestamp = timestamp;
+        }
+
+        private boolean isValid(Conference conf) {
+            //Check it is from current conference in mixer and not too old
+            return confId.equals(conf.getId()) && System.currentTimeMillis()-timestamp<MAX_AGE;
+        }
+    }
+
+    private final XmlRpcMcuClient client;
+    private final ConcurrentHashMap<Conference,Snapshot> snapshots;
+    private final Object refreshLock;
+    private Timer timer;
+    private volatile boolean bulk;
+
+    public ConferenceStatisticsCollector(XmlRpcMcuClient client) {
+        //Store client
+        this.client = client;
+        //Create snapshot map
+        snapshots = new ConcurrentHashMap<Conference, Snapshot>();
+        //Lock for on demand refreshes, independent of the periodic rounds
+        refreshLock = new Object();
+        //Try bulk request first
+        bulk = true;
+    }
+
+    /**
+     * Make sure the statistics of the participants of a conference are not outdated, refreshing them if needed.
+     * The conference is collected periodically from then on until it is removed.
+     */
+    public void update(Conference conf) throws XmlRpcException {
+        //Get snapshot
+        Snapshot snapshot = snapshots.get(conf);
+        //If not collected yet or outdated
+        if (snapshot==null || !snapshot.isValid(conf))
+            //Refresh it now
+            refresh(conf);
+    }
+
+    /**
+     * Stop collecting statistics of a conference.
+     */
+    public synchronized void remove(Conference conf) {
+        //Remove it
+        snapshots.remove(conf);
+        //If no more conferences
+        if (snapshots.isEmpty() && timer!=null) {
+            //Stop timer
+            timer.cancel();
+            //Remove it
+            timer = null;
+        }
+    }
+
+    private void refresh(Conference conf) throws XmlRpcException {
+        //Only one on demand refresh at a time, periodic rounds run without it
+        synchronized(refreshLock) {
+            //Check if other thread has already refreshed it
+            Snapshot snapshot = snapshots.get(conf);
+            //If still not valid
+            if (snapshot==null || !snapshot.isValid(conf)) {
+                //Collect only this one
+                collect(Collections.singletonList(conf));
+                //Get new one
+                snapshot = snapshots.get(conf);
+                //If not updated
+                if (snapshot==null || !snapshot.isValid(conf))
+                    //Error
+                    throw new XmlRpcException("Could not get statistics of conference " + conf.getId());
+            }
+        }
+        //Start periodic collection
+        start();
+    }
+
+    private synchronized void start() {
+        //If not running
+        if (timer==null) {
+            //Create timer for periodic collection
+            timer = new Timer("ConferenceStatisticsCollector",true);
+            //Schedule rounds
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    //Collect all
+                    collectAll();
+                }
+            }, INTERVAL, INTERVAL);
+        }
+    }
+
+    private void collectAll() {
+        try {
+            //Collect all registered conferences, without holding any lock while waiting for the mixer
+            collect(new ArrayList<Conference>(snapshots.keySet()));
+        } catch (XmlRpcException ex) {
+            //Log
+            logger.log(Level.WARNING, "Error collecting conference statistics: {0}", ex.getMessage());
+        }
+        //Lock
+        synchronized(this) {
+            //If all conferences are gone
+            if (snapshots.isEmpty() && timer!=null) {
+                //Stop timer
+                timer.cancel();
+                //Remove it
+                timer = null;
+            }
+        }
+    }
+
+    private void collect(List<Conference> conferences) throws XmlRpcException {
+        //Check
+        if (conferences.isEmpty())
+            //Nothing to do
+            return;
+        //Create batch so all conferences are requested at once
+        XmlRpcMcuClient.Batch batch = client.createBatch();
+        //Conference ids requested
+        HashMap<Conference,Integer> confIds = new HashMap<Conference, Integer>();
+        //Calls of each conference
+        HashMap<Conference,Call> confCalls = new HashMap<Conference, Call>();
+        HashMap<Conference,HashMap<Integer,Call>> partCalls = new HashMap<Conference, HashMap<Integer, Call>>();
+        //For each conference
+        for (Conference conf : conferences) {
+            //Get its current id
+            Integer confId = conf.getId();
+            //Store it
+            confIds.put(conf, confId);
+            //If server supports it
+            if (bulk) {
+                //Get all participants at once
+                confCalls.put(conf, batch.GetConferenceStatistics(confId));
+            } else {
+                //Ask each participant
+                HashMap<Integer,Call> calls = new HashMap<Integer, Call>();
+                //For each one
+                for (Participant part : conf.getParticipants())
+                    //Queue it
+                    calls.put(part.getPartId(), batch.GetParticipantStatistics(confId, part.getPartId()));
+                //Store them
+                partCalls.put(conf, calls);
+            }
+        }
+        //Send them
+        batch.execute();
+        //Record for parsing the responses of this round
+        MediaStatistics sample = new MediaStatistics();
+        //For each conference
+        for (Conference conf : conferences) {
+            //Get time of the responses
+            long timestamp = System.currentTimeMillis();
+            //Get bulk call
+            Call call = confCalls.get(conf);
+            //Check how it was requested
+            if (call!=null) {
+                //If it failed
+                if (call.getError()!=null) {
+                    //If the server does not know about bulk requests
+                    if (XmlRpcBatch.isMethodNotFound(call.getError())) {
+                        //Log
+                        logger.log(Level.INFO, "Media server does not support GetConferenceStatistics, requesting participants one by one");
+                        //Do not try again
+                        bulk = false;
+                        //Retry with participant requests
+                        collect(conferences);
+                        //Done
+                        return;
+                    }
+                    //Log
+                    logger.log(Level.FINE, "Error getting statistics of conference {0}: {1}", new Object[]{confIds.get(conf),call.getError().getMessage()});
+                    //Next
+                    continue;
+                }
+                //If conference is not in the mixer anymore
+                if (!call.getReturnCode()) {
+                    //Stop collecting it
+                    snapshots.remove(conf);
+                    //Next
+                    continue;
+                }
+                //If conference has been migrated meanwhile
+                if (!confIds.get(conf).equals(conf.getId()))
+                    //Skip
+                    continue;
+                //Get values
+                Object[] returnVal = call.getReturnVal();
+                //For each entry
+                for (int i=0;i<returnVal.length;i++) {
+                    //Get array
+                    Object[] arr = (Object[]) returnVal[i];
+                    //Store it
+                    update(conf, (Integer)arr[0], (String)arr[1], arr, 2, timestamp, sample);
+                }
+            } else {
+                //If conference has been migrated meanwhile
+                if (!confIds.get(conf).equals(conf.getId()))
+                    //Skip
+                    continue;
+                //For each participant
+                for (Map.Entry<Integer,Call> entry : partCalls.get(conf).entrySet()) {
+                    //Get call
+                    Call partCall = entry.getValue();
+                    //If it has failed
+                    if (partCall.getError()!=null || !partCall.getReturnCode())
+                        //Next
+                        continue;
+                    //Get values
+                    Object[] returnVal = partCall.getReturnVal();
+                    //For each media
+                    for (int i=0;i<returnVal.length;i++) {
+                        //Get array
+                        Object[] arr = (Object[]) returnVal[i];
+                        //Store it
+                        update(conf, entry.getKey(), (String)arr[0], arr, 1, timestamp, sample);
+                    }
+                }
+            }
+            //Store new snapshot time
+            snapshots.put(conf, new Snapshot(confIds.get(conf), timestamp));
+        }
+    }
+
+    private void update(Conference conf,Integer partId,String media,Object[] arr,int offset,long timestamp,MediaStatistics sample) {
+        //Get participant
+        Participant part = conf.participants.get(partId);
+        //If it is not there anymore
+        if (part==null)
+            //Skip
+            return;
+        //Parse into the record of the round
+        XmlRpcMcuClient.parseMediaStatistics(arr, offset, sample);
+        //Set time
+        sample.timestamp = timestamp;
+        //Copy it into the participant samples
+        part.getStatistics().update(media, sample);
+    }
+}
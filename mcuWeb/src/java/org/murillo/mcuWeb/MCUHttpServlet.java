@@ -58,6 +58,8 @@ public class MCUHttpServlet extends HttpServlet {
         confMngr.setSipFactory(sf);
         //Set it
         context.setAttribute("confMngr", confMngr);
+        //Export metrics
+        Metrics.getInstance().register(confMngr);
         try {
             //Get the input stream
             InputStream inputStream = context.getResourceAsStream("/META-INF/MANIFEST.MF");
@@ -73,6 +75,12 @@ public class MCUHttpServlet extends HttpServlet {
         }
     }
     
+    @Override
+    public void destroy() {
+        //Stop exporting metrics
+        Metrics.getInstance().unregister();
+    }
+
     /** Handles the HTTP <code>GET</code> method.
      * @param request servlet request
      * @param response servlet response
@@ -80,6 +88,17 @@ public class MCUHttpServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        //Get uri of the request
+        String uri = request.getRequestURI();
+        //If asking for metrics
+        if (uri.endsWith("/metrics")) {
+            //Prometheus text format
+            response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+            //Write them
+            Metrics.getInstance().writePrometheus(response.getWriter());
+            //Exit
+            return;
+        }
         response.setContentType("text/html;charset=UTF-8");
         PrintWriter out = response.getWriter();
         out.println("<html>");
@@ -223,6 +242,21 @@ public class MCUHttpServlet extends HttpServlet {
                     confMngr.addMixer(name,url,ip,publicIp,localNet);
                 //Redirect
                 response.sendRedirect(path);
+            } else if (method.equals("migrateConference")) {
+                //Get parameters
+                String  uid  = request.getParameter("uid");
+                String  mixerId  = request.getParameter("mixerId");
+                //Call
+                confMngr.migrateConference(uid,mixerId);
+                //Redirect
+                response.sendRedirect(path+"/conference.jsp?uid=" + uid);
+            } else if (method.equals("drainMixer")) {
+                //Get parameters
+                String  uid  = request.getParameter("uid");
+                //Call
+                confMngr.drainMixer(uid);
+                //Redirect
+                response.sendRedirect(path);
             } else if (method.equals("removeMixer")) {
                 //Get parameters
                 String  uid  = request.getParameter("uid");
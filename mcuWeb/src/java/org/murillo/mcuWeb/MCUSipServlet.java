@@ -77,6 +77,8 @@ public class MCUSipServlet extends SipServlet implements SipSessionListener,SipA
             part.onInfoResponse(resp);
         else if (resp.getMethod().equals("INVITE"))
             part.onInviteResponse(resp);
+        else if (resp.getMethod().equals("UPDATE"))
+            part.onUpdateResponse(resp);
         else if (resp.getMethod().equals("BYE"))
             part.onByeResponse(resp);
         else if (resp.getMethod().equals("CANCEL"))
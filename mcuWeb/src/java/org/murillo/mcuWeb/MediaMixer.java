@@ -43,6 +43,8 @@ import org.murillo.util.SubNetInfo;
 @XmlType
 @XmlAccessorType(XmlAccessType.NONE)
 public class MediaMixer implements Serializable,MediaMixerMCUEventQueue.Listener {
+    private static final int MAX_CONNECTIONS = 4;
+
     private String uid;
     @XmlElement
     private String name;
@@ -70,6 +72,7 @@ public class MediaMixer implements Serializable,MediaMixerMCUEventQueue.Listener
     private HashSet<XmlRpcMcuClient> mcuClients;
     private Thread reconnectThread;
     private XmlRpcMcuClient client;
+    private ConferenceStatisticsCollector statisticsCollector;
     private Listener listener;
 
     public interface Listener  {
@@ -98,6 +101,8 @@ public class MediaMixer implements Serializable,MediaMixerMCUEventQueue.Listener
         this.publicIp = publicIp;
         //Create default client
         client = new XmlRpcMcuClient(url + "/mcu");
+        //Use persistent connections
+        client.enableConnectionPool(MAX_CONNECTIONS);
         //Create client list
         mcuClients = new HashSet<XmlRpcMcuClient>();
         //Set local net
@@ -218,6 +223,8 @@ public class MediaMixer implements Serializable,MediaMixerMCUEventQueue.Listener
         try {
             //Create client
             mcuClient = new XmlRpcMcuClient(url + "/mcu");
+            //Share persistent connections with the rest of clients of this mixer
+            mcuClient.enableConnectionPool(MAX_CONNECTIONS);
             //Append to set
             mcuClients.add(mcuClient);
             //Start event listener
@@ -444,6 +451,15 @@ public class MediaMixer implements Serializable,MediaMixerMCUEventQueue.Listener
         return state;
     }
 
+    synchronized ConferenceStatisticsCollector getStatisticsCollector() {
+        //If not created yet
+        if (statisticsCollector==null)
+            //Collect using default client
+            statisticsCollector = new ConferenceStatisticsCollector(client);
+        //Return it
+        return statisticsCollector;
+    }
+
     void releaseMcuClient(XmlRpcMcuClient client) {
         //Release client
         mcuClients.remove(client);
@@ -5,15 +5,19 @@
 
 package org.murillo.mcuWeb;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.murillo.MediaServer.XmlRpcEventManager;
+import org.murillo.util.ThreadPool;
 
 /**
  *
  * @author Sergio
  */
-public class MediaMixerMCUEventQueue implements XmlRpcEventManager.Listener, Runnable{
+public class MediaMixerMCUEventQueue implements XmlRpcEventManager.Listener {
 
     public interface Listener {
         public abstract void onMCUEventQueueConnected();
@@ -23,28 +27,302 @@ public class MediaMixerMCUEventQueue implements XmlRpcEventManager.Listener, Run
 	public abstract void onCPULoadInfo(Integer user,Integer sys, Integer load, Integer cpus);
     }
 
+    public static abstract class Event {
+        private final int type;
+        private long received;
+
+        protected Event(int type) {
+            this.type = type;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Events with the same key replace each other while waiting to be dispatched.
+         * @return coalescing key or null if the event must always be delivered
+         */
+        public Object getKey() {
+            return null;
+        }
+
+        /**
+         * Events that may be dropped when the queue is full.
+         */
+        protected boolean isDiscardable() {
+            return true;
+        }
+
+        protected abstract void dispatch(Listener listener);
+    }
+
+    public interface EventDecoder {
+        public Event decode(Object[] arr);
+    }
+
+    public static class ParticipantRequestFPUEvent extends Event {
+        public static final int TYPE = 1;
+        private final Integer confId;
+        private final String tag;
+        private final Integer partId;
+
+        public ParticipantRequestFPUEvent(Integer confId, String tag, Integer partId) {
+            super(TYPE);
+            this.confId = confId;
+            this.tag = tag;
+            this.partId = partId;
+        }
+
+        public Integer getConfId() {
+            return confId;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public Integer getPartId() {
+            return partId;
+        }
+
+        @Override
+        public Object getKey() {
+            //Only one pending FPU per participant
+            return TYPE + ":" + confId + ":" + partId;
+        }
+
+        @Override
+        protected void dispatch(Listener listener) {
+            //Send onConferenceParticipantRequestFPU
+            listener.onConferenceParticipantRequestFPU(confId,tag,partId);
+        }
+    }
+
+    public static class CPULoadInfoEvent extends Event {
+        public static final int TYPE = 2;
+        private final Integer user;
+        private final Integer sys;
+        private final Integer load;
+        private final Integer cpus;
+
+        public CPULoadInfoEvent(Integer user, Integer sys, Integer load, Integer cpus) {
+            super(TYPE);
+            this.user = user;
+            this.sys = sys;
+            this.load = load;
+            this.cpus = cpus;
+        }
+
+        public Integer getUser() {
+            return user;
+        }
+
+        public Integer getSys() {
+            return sys;
+        }
+
+        public Integer getLoad() {
+            return load;
+        }
+
+        public Integer getCpus() {
+            return cpus;
+        }
+
+        @Override
+        public Object getKey() {
+            //Only the newest sample matters
+            return TYPE;
+        }
+
+        @Override
+        protected void dispatch(Listener listener) {
+            //Call listener
+            listener.onCPULoadInfo(user,sys,load,cpus);
+        }
+    }
+
+    private static class StateEvent extends Event {
+        private static final int CONNECTED = 0;
+        private static final int DISCONNECTED = -1;
+        private static final int ERROR = -2;
+
+        public StateEvent(int state) {
+            super(state);
+        }
+
+        @Override
+        protected boolean isDiscardable() {
+            //Connection state changes must always be delivered so the mixer can reconnect
+            return false;
+        }
+
+        @Override
+        protected void dispatch(Listener listener) {
+            //Depending on the state
+            switch(getType())
+            {
+                case CONNECTED:
+                    listener.onMCUEventQueueConnected();
+                    break;
+                case DISCONNECTED:
+                    listener.onMCUEventQueueDisconnected();
+                    break;
+                case ERROR:
+                    listener.onMCUEventQueueError();
+                    break;
+            }
+        }
+    }
+
+    private static class Dispatcher implements Runnable {
+        private static final int MAX_QUEUED = 256;
+        private static final int MAX_BATCH = 32;
+        private final Listener listener;
+        private final String url;
+        private final LinkedHashMap<Object,Event> queue;
+        private boolean running;
+        private int dropped;
+
+        public Dispatcher(Listener listener,String url) {
+            //Store listener
+            this.listener = listener;
+            //Store url for the metrics
+            this.url = url;
+            //Create queue
+            this.queue = new LinkedHashMap<Object, Event>();
+            //Not running
+            this.running = false;
+            this.dropped = 0;
+        }
+
+        public void offer(Event event) {
+            //Get key
+            Object key = event.getKey();
+            //If it can not be coalesced
+            if (key==null)
+                //Use an unique one
+                key = new Object();
+            //Store reception time
+            event.received = System.nanoTime();
+            boolean schedule = false;
+            //Lock
+            synchronized(queue) {
+                //If not replacing a queued one and full
+                if (!queue.containsKey(key) && queue.size()>=MAX_QUEUED) {
+                    //Get oldest
+                    Iterator<Event> it = queue.values().iterator();
+                    //Find the oldest one that can be dropped
+                    while (it.hasNext()) {
+                        //If it can be dropped
+                        if (it.next().isDiscardable()) {
+                            //Drop it, never block the reader
+                            it.remove();
+                            //Log
+                            if (dropped++ % 100 == 0)
+                                Logger.getLogger(MediaMixerMCUEventQueue.class.getName()).log(Level.WARNING, "Event queue full, dropped {0} events", dropped);
+                            //Done
+                            break;
+                        }
+                    }
+                    //If only state events are queued the new one is enqueued anyway
+                }
+                //Enqueue or replace previous one keeping its position
+                queue.put(key, event);
+                //If not already dispatching
+                if (!running) {
+                    //Start
+                    running = true;
+                    schedule = true;
+                }
+            }
+            //Check if we need to start dispatching
+            if (schedule)
+                //Run it on the pool
+                ThreadPool.Execute(this);
+        }
+
+        public void run() {
+            //Dispatch a batch so other listeners get the pool too
+            for (int i=0; i<MAX_BATCH; i++) {
+                Event event;
+                //Lock
+                synchronized(queue) {
+                    //Get first
+                    Iterator<Event> it = queue.values().iterator();
+                    //If empty
+                    if (!it.hasNext()) {
+                        //Stop
+                        running = false;
+                        //Exit
+                        return;
+                    }
+                    //Dequeue
+                    event = it.next();
+                    it.remove();
+                }
+                //Record time waiting in the queue
+                Metrics.getInstance().recordEventLag(url, System.nanoTime()-event.received);
+                try {
+                    //Call listener
+                    event.dispatch(listener);
+                } catch (Exception ex) {
+                    Logger.getLogger(MediaMixerMCUEventQueue.class.getName()).log(Level.SEVERE, "Error dispatching event of type " + event.getType(), ex);
+                }
+            }
+            //Continue later
+            ThreadPool.Execute(this);
+        }
+    }
+
+    private static final ConcurrentHashMap<Integer,EventDecoder> decoders = new ConcurrentHashMap<Integer, EventDecoder>();
+
+    static {
+        //Register known events
+        registerEventDecoder(ParticipantRequestFPUEvent.TYPE, new EventDecoder() {
+            public Event decode(Object[] arr) {
+                //Get parameters
+                Integer confId  = (Integer) arr[1];
+                String tag  = (String) arr[2];
+                Integer partId = (Integer) arr[3];
+                //Create event
+                return new ParticipantRequestFPUEvent(confId, tag, partId);
+            }
+        });
+        registerEventDecoder(CPULoadInfoEvent.TYPE, new EventDecoder() {
+            public Event decode(Object[] arr) {
+                //Get parameters
+                Integer user = (Integer) arr[1];
+                Integer sys  = (Integer) arr[2];
+                Integer load = (Integer) arr[3];
+                Integer cpus = (Integer) arr[4];
+                //Create event
+                return new CPULoadInfoEvent(user, sys, load, cpus);
+            }
+        });
+    }
+
+    public static void registerEventDecoder(Integer type,EventDecoder decoder) {
+        //Set it
+        decoders.put(type, decoder);
+    }
+
     private final XmlRpcEventManager em;
-    private Listener listener;
-    private Thread thread;
+    private volatile Dispatcher dispatcher;
     private final String url;
     private final Integer id;
 
-    @Override
-    public void run() {
+    public void start(){
         try{
-            //Connect
-            em.Connect(url, this);
+            //Connect, events will be read by the event reactor
+            em.Open(url, this);
         } catch(Exception e) {
             //Send error
             onError();
         }
     }
 
-    public void start(){
-        //Create thread and start
-        thread.start();
-    }
-
     public void stop() {
         //Cancel event manager
         em.Cancel();
@@ -60,46 +338,48 @@ public class MediaMixerMCUEventQueue implements XmlRpcEventManager.Listener, Run
         this.url = url;
         //Create event manager
         em = new XmlRpcEventManager();
-        //Create thread;
-        thread = new Thread(this);
     }
 
     public void setListener(Listener listener){
-        this.listener = listener;
+        //Events are delivered to the listener from its own queue
+        this.dispatcher = listener!=null ? new Dispatcher(listener,url) : null;
     }
 
     public Integer getId() {
         return id;
     }
 
+    private void dispatch(Event event) {
+        //Get dispatcher
+        Dispatcher current = dispatcher;
+        //Check listener
+        if (current!=null)
+            //Queue it
+            current.offer(event);
+    }
+
     @Override
     public void onConnect() {
-        //Check listener
-        if (listener!=null)
-            //call it
-            listener.onMCUEventQueueConnected();
+        //Queue it
+        dispatch(new StateEvent(StateEvent.CONNECTED));
     }
 
     @Override
     public void onError() {
-        //Check listener
-        if (listener!=null)
-            //call it
-            listener.onMCUEventQueueError();
+        //Queue it
+        dispatch(new StateEvent(StateEvent.ERROR));
     }
 
     @Override
     public void onDisconnect() {
-        //Check listener
-        if (listener!=null)
-            //call it
-            listener.onMCUEventQueueDisconnected();
+        //Queue it
+        dispatch(new StateEvent(StateEvent.DISCONNECTED));
     }
 
     @Override
     public void onEvent(Object result) {
         //Check listener
-        if (listener==null)
+        if (dispatcher==null)
             //Exit
             return;
 
@@ -109,27 +389,18 @@ public class MediaMixerMCUEventQueue implements XmlRpcEventManager.Listener, Run
         Integer type = (Integer) arr[0];
 
         Logger.getLogger(this.getClass().getName()).log(Level.FINEST, "Got event of type {0}", type);
-        
-        //Depending on the type
-        switch(type)
-        {
-            case 1:
-                //Get parameters
-                Integer confId  = (Integer) arr[1];
-                String tag  = (String) arr[2];
-                Integer partId = (Integer) arr[3];
-                //Send onConferenceParticipantRequestFPU
-                listener.onConferenceParticipantRequestFPU(confId,tag,partId);
-                break;
-	    case 2:
-		//Get parameters
-		Integer user = (Integer) arr[1];
-		Integer sys  = (Integer) arr[2];
-		Integer load = (Integer) arr[3];
-		Integer cpus = (Integer) arr[4];
-		//Call listener
-		listener.onCPULoadInfo(user,sys,load,cpus);
-		break;
+
+        //Get decoder for type
+        EventDecoder decoder = decoders.get(type);
+        //If unknown
+        if (decoder==null)
+            //Skip
+            return;
+        try {
+            //Decode and queue it
+            dispatch(decoder.decode(arr));
+        } catch (Exception ex) {
+            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Wrong event of type " + type, ex);
         }
     }
 }
@@ -0,0 +1,389 @@
+/*
+ * Metrics.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.murillo.mcuWeb;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.murillo.MediaServer.XmlRpcMcuClient.MediaStatistics;
+import org.murillo.MediaServer.XmlRpcTimedClient;
+import org.murillo.util.Histogram;
+
+/**
+ * Instrumentation of the mcuWeb application.
+ * Records media server request latencies, event queue lag and SIP call setup times,
+ * and exposes them together with conference and participant gauges via JMX and
+ * the Prometheus text format.
+ * @author Sergio Garcia Murillo
+ */
+public class Metrics implements MetricsMBean, XmlRpcTimedClient.Listener {
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+    private static final String OBJECT_NAME = "org.murillo.mcuWeb:type=Metrics";
+    private static final Metrics instance = new Metrics();
+
+    private static class Key {
+        private final String endpoint;
+        private final String name;
+
+        private Key(String endpoint, String name) {
+            this.endpoint = endpoint;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            //Check type
+            if (!(obj instanceof Key))
+                return false;
+            //Get other
+            Key other = (Key) obj;
+            //Compare
+            return endpoint.equals(other.endpoint) && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return endpoint.hashCode()*31 + name.hashCode();
+        }
+    }
+
+    private final ConcurrentHashMap<Key,Histogram> rpcLatencies;
+    private final ConcurrentHashMap<Key,AtomicLong> rpcErrors;
+    private final ConcurrentHashMap<String,Histogram> eventLags;
+    private final Histogram incomingInvites;
+    private final Histogram outgoingInvites;
+    private volatile ConferenceMngr confMngr;
+    private ObjectName objectName;
+
+    private Metrics() {
+        //Create maps
+        rpcLatencies = new ConcurrentHashMap<Key, Histogram>();
+        rpcErrors = new ConcurrentHashMap<Key, AtomicLong>();
+        eventLags = new ConcurrentHashMap<String, Histogram>();
+        //Create call setup histograms
+        incomingInvites = new Histogram();
+        outgoingInvites = new Histogram();
+    }
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start collecting media server timings and register the MBean.
+     */
+    public synchronized void register(ConferenceMngr confMngr) {
+        //Store manager for the gauges
+        this.confMngr = confMngr;
+        //Listen for request timings
+        XmlRpcTimedClient.setListener(this);
+        //Check if already registered
+        if (objectName!=null)
+            //Done
+            return;
+        try {
+            //Get server
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            //Create name
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            //If a previous deployment did not clean up
+            if (server.isRegistered(name))
+                //Remove it
+                server.unregisterMBean(name);
+            //Register
+            server.registerMBean(this, name);
+            //Store it
+            objectName = name;
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not register metrics MBean", ex);
+        }
+    }
+
+    public synchronized void unregister() {
+        //Stop listening
+        XmlRpcTimedClient.setListener(null);
+        //Remove manager
+        confMngr = null;
+        //Check if registered
+        if (objectName==null)
+            //Done
+            return;
+        try {
+            //Unregister
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not unregister metrics MBean", ex);
+        }
+        //Clean
+        objectName = null;
+    }
+
+    private static <K> Histogram getHistogram(ConcurrentHashMap<K,Histogram> map, K key) {
+        //Get it
+        Histogram histogram = map.get(key);
+        //If not found
+        if (histogram==null) {
+            //Create it
+            map.putIfAbsent(key, new Histogram());
+            //Get the stored one
+            histogram = map.get(key);
+        }
+        //Return it
+        return histogram;
+    }
+
+    public void onExecuted(String url, String method, long nanos, boolean failed) {
+        //Get key
+        Key key = new Key(url, method);
+        //Record latency
+        getHistogram(rpcLatencies, key).record(nanos);
+        //If it has failed
+        if (failed) {
+            //Get counter
+            AtomicLong errors = rpcErrors.get(key);
+            //If not found
+            if (errors==null) {
+                //Create it
+                rpcErrors.putIfAbsent(key, new AtomicLong());
+                //Get the stored one
+                errors = rpcErrors.get(key);
+            }
+            //Increase it
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record time from the reception of a media server event until it is dispatched.
+     */
+    public void recordEventLag(String url, long nanos) {
+        //Record it
+        getHistogram(eventLags, url).record(nanos);
+    }
+
+    /**
+     * Record time from the INVITE until the call is established.
+     */
+    public void recordInvite(boolean incoming, long nanos) {
+        //Record it
+        (incoming ? incomingInvites : outgoingInvites).record(nanos);
+    }
+
+    public int getConferences() {
+        //Get manager
+        ConferenceMngr mngr = confMngr;
+        //Return number of conferences
+        return mngr!=null ? mngr.getConferences().size() : 0;
+    }
+
+    public int getParticipants() {
+        //Get manager
+        ConferenceMngr mngr = confMngr;
+        //Check
+        if (mngr==null)
+            return 0;
+        int num = 0;
+        //For each conference
+        for (Conference conf : mngr.getConferences().values())
+            //Add its participants
+            num += conf.getParticipants().size();
+        //Return total
+        return num;
+    }
+
+    public long getRpcRequests() {
+        long num = 0;
+        //For each method
+        for (Histogram histogram : rpcLatencies.values())
+            //Add them
+            num += histogram.getCount();
+        //Return total
+        return num;
+    }
+
+    public long getRpcErrors() {
+        long num = 0;
+        //For each method
+        for (AtomicLong errors : rpcErrors.values())
+            //Add them
+            num += errors.get();
+        //Return total
+        return num;
+    }
+
+    public double getRpcMeanLatency() {
+        return getMean(rpcLatencies.values());
+    }
+
+    public double getEventQueueMeanLag() {
+        return getMean(eventLags.values());
+    }
+
+    public long getSipInvites() {
+        return incomingInvites.getCount() + outgoingInvites.getCount();
+    }
+
+    public double getSipInviteMeanDuration() {
+        //Get totals
+        long num = getSipInvites();
+        //Avoid division by zero
+        return num>0 ? (incomingInvites.getSum()+outgoingInvites.getSum())*1000/num : 0;
+    }
+
+    private static double getMean(Iterable<Histogram> histograms) {
+        long num = 0;
+        double sum = 0;
+        //For each one
+        for (Histogram histogram : histograms) {
+            //Add values
+            num += histogram.getCount();
+            sum += histogram.getSum();
+        }
+        //Mean in ms
+        return num>0 ? sum*1000/num : 0;
+    }
+
+    public String getPrometheusText() {
+        //Create writer
+        StringWriter writer = new StringWriter();
+        //Write all
+        writePrometheus(new PrintWriter(writer));
+        //Return text
+        return writer.toString();
+    }
+
+    /**
+     * Write all metrics in the Prometheus text exposition format.
+     */
+    public void writePrometheus(PrintWriter out) {
+        //Request latencies
+        out.println("# HELP mcu_rpc_duration_seconds Media server xmlrpc request latency");
+        out.println("# TYPE mcu_rpc_duration_seconds histogram");
+        for (Map.Entry<Key,Histogram> entry : rpcLatencies.entrySet())
+            writeHistogram(out, "mcu_rpc_duration_seconds", "endpoint=\"" + escape(entry.getKey().endpoint) + "\",method=\"" + escape(entry.getKey().name) + "\"", entry.getValue());
+        out.println("# HELP mcu_rpc_errors_total Media server xmlrpc requests that failed");
+        out.println("# TYPE mcu_rpc_errors_total counter");
+        for (Map.Entry<Key,AtomicLong> entry : rpcErrors.entrySet())
+            out.println("mcu_rpc_errors_total{endpoint=\"" + escape(entry.getKey().endpoint) + "\",method=\"" + escape(entry.getKey().name) + "\"} " + entry.getValue().get());
+        //Event queues
+        out.println("# HELP mcu_event_queue_lag_seconds Time from the reception of a media server event until it is dispatched");
+        out.println("# TYPE mcu_event_queue_lag_seconds histogram");
+        for (Map.Entry<String,Histogram> entry : eventLags.entrySet())
+            writeHistogram(out, "mcu_event_queue_lag_seconds", "endpoint=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+        //Call setup
+        out.println("# HELP mcu_sip_invite_duration_seconds Time from the INVITE until the call is established");
+        out.println("# TYPE mcu_sip_invite_duration_seconds histogram");
+        writeHistogram(out, "mcu_sip_invite_duration_seconds", "direction=\"incoming\"", incomingInvites);
+        writeHistogram(out, "mcu_sip_invite_duration_seconds", "direction=\"outgoing\"", outgoingInvites);
+        //Get manager
+        ConferenceMngr mngr = confMngr;
+        //If not running
+        if (mngr==null) {
+            //Done
+            out.flush();
+            return;
+        }
+        //Mixers
+        out.println("# HELP mcu_mixer_load Media mixer CPU load");
+        out.println("# TYPE mcu_mixer_load gauge");
+        for (MediaMixer mixer : mngr.getMediaMixers().values())
+            out.println("mcu_mixer_load{mixer=\"" + escape(mixer.getName()) + "\"} " + mixer.getLoad());
+        out.println("# HELP mcu_mixer_cpus Media mixer number of CPUs");
+        out.println("# TYPE mcu_mixer_cpus gauge");
+        for (MediaMixer mixer : mngr.getMediaMixers().values())
+            out.println("mcu_mixer_cpus{mixer=\"" + escape(mixer.getName()) + "\"} " + mixer.getCpus());
+        //Get conferences
+        Map<String,Conference> conferences = mngr.getConferences();
+        //Counts
+        out.println("# HELP mcu_conferences Number of conferences");
+        out.println("# TYPE mcu_conferences gauge");
+        out.println("mcu_conferences " + conferences.size());
+        out.println("# HELP mcu_participants Number of participants per conference");
+        out.println("# TYPE mcu_participants gauge");
+        for (Conference conf : conferences.values())
+            out.println("mcu_participants{conference=\"" + escape(conf.getUID()) + "\"} " + conf.getParticipants().size());
+        //Latest media samples and their labels
+        ArrayList<MediaStatistics> samples = new ArrayList<MediaStatistics>();
+        ArrayList<String> labels = new ArrayList<String>();
+        for (Conference conf : conferences.values()) {
+            for (Participant part : conf.getParticipants()) {
+                for (String media : ParticipantStatistics.MEDIAS) {
+                    //Get latest sample
+                    MediaStatistics stats = part.getStatistics().getLatest(media);
+                    //If none
+                    if (stats==null)
+                        //Next
+                        continue;
+                    //Add it
+                    samples.add(stats);
+                    labels.add("{conference=\"" + escape(conf.getUID()) + "\",participant=\"" + part.getId() + "\",media=\"" + media + "\"} ");
+                }
+            }
+        }
+        //Media rates, each family must be written contiguously
+        out.println("# HELP mcu_participant_recv_bitrate Received bitrate in bps on the latest statistics sample");
+        out.println("# TYPE mcu_participant_recv_bitrate gauge");
+        for (int i=0;i<samples.size();i++)
+            out.println("mcu_participant_recv_bitrate" + labels.get(i) + samples.get(i).recvBitrate);
+        out.println("# HELP mcu_participant_send_bitrate Sent bitrate in bps on the latest statistics sample");
+        out.println("# TYPE mcu_participant_send_bitrate gauge");
+        for (int i=0;i<samples.size();i++)
+            out.println("mcu_participant_send_bitrate" + labels.get(i) + samples.get(i).sendBitrate);
+        out.println("# HELP mcu_participant_recv_packet_rate Received packets per second on the latest statistics sample");
+        out.println("# TYPE mcu_participant_recv_packet_rate gauge");
+        for (int i=0;i<samples.size();i++)
+            out.println("mcu_participant_recv_packet_rate" + labels.get(i) + samples.get(i).recvPacketRate);
+        out.println("# HELP mcu_participant_loss_percent Lost packets percentage on the latest statistics sample");
+        out.println("# TYPE mcu_participant_loss_percent gauge");
+        for (int i=0;i<samples.size();i++)
+            out.println("mcu_participant_loss_percent" + labels.get(i) + samples.get(i).lossRate);
+        //Done
+        out.flush();
+    }
+
+    private static void writeHistogram(PrintWriter out, String name, String labels, Histogram histogram) {
+        //Get values
+        double[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCumulativeCounts();
+        //For each bucket
+        for (int i=0;i<bounds.length;i++)
+            out.println(name + "_bucket{" + labels + ",le=\"" + bounds[i] + "\"} " + counts[i]);
+        //Last one
+        out.println(name + "_bucket{" + labels + ",le=\"+Inf\"} " + counts[bounds.length]);
+        out.println(name + "_sum{" + labels + "} " + histogram.getSum());
+        out.println(name + "_count{" + labels + "} " + counts[bounds.length]);
+    }
+
+    private static String escape(String value) {
+        //Check
+        if (value==null)
+            return "";
+        //Escape backslash, quotes and new lines
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * MetricsMBean.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.murillo.mcuWeb;
+
+/**
+ * JMX view of the mcuWeb metrics.
+ * @author Sergio Garcia Murillo
+ */
+public interface MetricsMBean {
+    public int getConferences();
+    public int getParticipants();
+    public long getRpcRequests();
+    public long getRpcErrors();
+    public double getRpcMeanLatency();
+    public double getEventQueueMeanLag();
+    public long getSipInvites();
+    public double getSipInviteMeanDuration();
+    public String getPrometheusText();
+}
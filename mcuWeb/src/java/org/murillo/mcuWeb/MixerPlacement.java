@@ -0,0 +1,303 @@
+/*
+ * MixerPlacement.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.mcuWeb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Chooses the media mixer where new conferences are created based on the live load
+ * reported by each mixer and the conferences and participants already running on it.
+ * @author Sergio Garcia Murillo
+ */
+public class MixerPlacement {
+
+    public static final String FIXED = "fixed";
+    public static final String LEAST_LOADED = "leastLoaded";
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String AFFINITY = "affinity";
+
+    public static final String PROPERTY = "placement";
+    public static final String AFFINITY_PROPERTY = "placement.affinity";
+
+    //Cost of each conference and participant in cpu percent units
+    private static final int CONFERENCE_COST = 10;
+    private static final int PARTICIPANT_COST = 2;
+    //Mixers above this load are only used if there is no other one
+    private static final int MAX_LOAD = 90;
+
+    public static class MixerLoad {
+        private final MediaMixer mixer;
+        private int conferences;
+        private int participants;
+
+        public MixerLoad(MediaMixer mixer) {
+            this.mixer = mixer;
+        }
+
+        public MediaMixer getMixer() {
+            return mixer;
+        }
+
+        public int getConferences() {
+            return conferences;
+        }
+
+        public int getParticipants() {
+            return participants;
+        }
+
+        public boolean isOverloaded() {
+            return mixer.getLoadAverage()>MAX_LOAD;
+        }
+
+        public int getScore() {
+            //Get reported values
+            int cpus = mixer.getCpus();
+            int load = mixer.getLoadAverage();
+            //If not reported yet, assume an idle single cpu mixer
+            int headroom = cpus>0 && load>=0 ? (100-load)*cpus : 100;
+            //Remove the cost of what it is already running, load info lags behind new conferences
+            return headroom - conferences*CONFERENCE_COST - participants*PARTICIPANT_COST;
+        }
+    }
+
+    public interface Policy {
+        public MediaMixer select(String did,MediaMixer preferred,List<MixerLoad> candidates);
+    }
+
+    public static class FixedPolicy implements Policy {
+        public MediaMixer select(String did, MediaMixer preferred, List<MixerLoad> candidates) {
+            //Always the configured one
+            return preferred;
+        }
+    }
+
+    public static class LeastLoadedPolicy implements Policy {
+        //Score difference needed to move away from the last chosen mixer
+        private static final int HYSTERESIS = 50;
+        private MediaMixer last;
+
+        public synchronized MediaMixer select(String did, MediaMixer preferred, List<MixerLoad> candidates) {
+            MixerLoad best = null;
+            MixerLoad current = null;
+            //For each candidate
+            for (MixerLoad candidate : candidates) {
+                //Check if it is the best one
+                if (best==null || candidate.getScore()>best.getScore())
+                    //Store it
+                    best = candidate;
+                //Check if it is the last one used
+                if (candidate.getMixer()==last)
+                    //Store it
+                    current = candidate;
+            }
+            //If none available
+            if (best==null)
+                //Use preferred
+                return preferred;
+            //Stick to the last one unless the best is clearly better, to avoid flapping between similar mixers
+            if (current!=null && current.getScore()+HYSTERESIS>best.getScore())
+                //Keep it
+                best = current;
+            //Store it
+            last = best.getMixer();
+            //Return it
+            return last;
+        }
+    }
+
+    public static class WeightedRoundRobinPolicy implements Policy {
+        private final HashMap<String,Integer> weights = new HashMap<String, Integer>();
+
+        public synchronized MediaMixer select(String did, MediaMixer preferred, List<MixerLoad> candidates) {
+            MixerLoad best = null;
+            int total = 0;
+            //Smooth weighted round robin, each candidate gains its weight and the chosen one pays the total
+            for (MixerLoad candidate : candidates) {
+                //Get weight
+                int weight = Math.max(1, candidate.getScore());
+                //Get accumulated
+                Integer current = weights.get(candidate.getMixer().getUID());
+                //Increase
+                int updated = (current!=null ? current : 0) + weight;
+                //Store it
+                weights.put(candidate.getMixer().getUID(), updated);
+                //Sum
+                total += weight;
+                //Check if it is the best one
+                if (best==null || updated>weights.get(best.getMixer().getUID()))
+                    //Store it
+                    best = candidate;
+            }
+            //If none available
+            if (best==null)
+                //Use preferred
+                return preferred;
+            //Decrease chosen one
+            weights.put(best.getMixer().getUID(), weights.get(best.getMixer().getUID())-total);
+            //Return it
+            return best.getMixer();
+        }
+    }
+
+    public static class AffinityPolicy implements Policy {
+        private final Map<String,String> prefixes;
+        private final Policy fallback;
+
+        public AffinityPolicy(Map<String,String> prefixes,Policy fallback) {
+            this.prefixes = prefixes;
+            this.fallback = fallback;
+        }
+
+        public MediaMixer select(String did, MediaMixer preferred, List<MixerLoad> candidates) {
+            String match = null;
+            //Find longest matching prefix
+            for (String prefix : prefixes.keySet())
+                //Check it
+                if (did!=null && did.startsWith(prefix) && (match==null || prefix.length()>match.length()))
+                    //Store it
+                    match = prefix;
+            //If found
+            if (match!=null) {
+                //Get mixer id
+                String uid = prefixes.get(match);
+                //Find it in the available ones
+                for (MixerLoad candidate : candidates)
+                    //If it is not overloaded
+                    if (candidate.getMixer().getUID().equals(uid) && !candidate.isOverloaded())
+                        //Use it
+                        return candidate.getMixer();
+            }
+            //Not found or not available
+            return fallback.select(did, preferred, candidates);
+        }
+
+        public static Map<String,String> parse(String value) {
+            HashMap<String,String> prefixes = new HashMap<String, String>();
+            //Check value
+            if (value==null)
+                //Empty
+                return prefixes;
+            //Format is prefix=mixerUID,prefix=mixerUID
+            for (String pair : value.split(",")) {
+                //Split
+                String[] kv = pair.split("=");
+                //Check
+                if (kv.length==2)
+                    //Add it
+                    prefixes.put(kv[0].trim(), kv[1].trim());
+            }
+            //Return them
+            return prefixes;
+        }
+    }
+
+    private final HashMap<String,Policy> policies;
+    private String defaultPolicy;
+
+    public MixerPlacement() {
+        //Create policies
+        policies = new HashMap<String, Policy>();
+        policies.put(FIXED, new FixedPolicy());
+        policies.put(LEAST_LOADED, new LeastLoadedPolicy());
+        policies.put(ROUND_ROBIN, new WeightedRoundRobinPolicy());
+        //Default
+        defaultPolicy = LEAST_LOADED;
+    }
+
+    public void setDefaultPolicy(String name) {
+        //Check it exists
+        if (policies.containsKey(name))
+            //Set it
+            defaultPolicy = name;
+    }
+
+    public String getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public void addPolicy(String name,Policy policy) {
+        //Add it
+        policies.put(name, policy);
+    }
+
+    public Policy getPolicy(String name) {
+        //Get it
+        Policy policy = policies.get(name!=null ? name : defaultPolicy);
+        //Return it or default
+        return policy!=null ? policy : policies.get(defaultPolicy);
+    }
+
+    public List<MixerLoad> getLoads(Collection<MediaMixer> mixers,Collection<Conference> conferences) {
+        HashMap<MediaMixer,MixerLoad> loads = new HashMap<MediaMixer, MixerLoad>();
+        //For each mixer
+        for (MediaMixer mixer : mixers)
+            //Only connected ones are candidates
+            if (mixer.isConnected())
+                //Create load
+                loads.put(mixer, new MixerLoad(mixer));
+        //For each running conference
+        for (Conference conf : conferences) {
+            //Get load of its mixer
+            MixerLoad load = loads.get(conf.getMixer());
+            //If it is a candidate
+            if (load!=null) {
+                //Add it
+                load.conferences++;
+                load.participants += conf.getNumParcitipants();
+            }
+        }
+        //Return them
+        return new ArrayList<MixerLoad>(loads.values());
+    }
+
+    public MediaMixer select(String did,ConferenceTemplate template,Collection<MediaMixer> mixers,Collection<Conference> conferences) {
+        //Get configured mixer
+        MediaMixer preferred = template!=null ? template.getMixer() : null;
+        //Get policy name
+        String name = template!=null ? template.getProperty(PROPERTY) : null;
+        //Get policy
+        Policy policy = getPolicy(name);
+        //If it has affinity
+        if (AFFINITY.equals(name))
+            //Create it with the template mappings
+            policy = new AffinityPolicy(AffinityPolicy.parse(template.getProperty(AFFINITY_PROPERTY)), policies.get(defaultPolicy));
+        //Get current loads
+        List<MixerLoad> loads = getLoads(mixers, conferences);
+        //Get not overloaded ones
+        List<MixerLoad> available = new ArrayList<MixerLoad>();
+        for (MixerLoad load : loads)
+            //If not overloaded
+            if (!load.isOverloaded())
+                //Add it
+                available.add(load);
+        //Select from the available ones, or from all if all are overloaded
+        MediaMixer mixer = policy.select(did, preferred, available.isEmpty() ? loads : available);
+        //Log
+        Logger.getLogger(MixerPlacement.class.getName()).log(Level.FINE, "Placing conference {0} on mixer {1}", new Object[]{did, mixer!=null ? mixer.getUID() : null});
+        //Return it
+        return mixer;
+    }
+}
@@ -81,6 +81,7 @@ public abstract class Participant  implements Serializable {
 
     protected HashSet<Listener> listeners = null;
     protected Conference conf = null;
+    protected final ParticipantStatistics statistics = new ParticipantStatistics();
     private boolean autoAccept;
     private String token;
 
@@ -168,6 +169,13 @@ public abstract class Participant  implements Serializable {
         return partId;
     }
 
+    /**
+     * Get recent statistics samples, updated in place by the conference statistics collector.
+     */
+    public ParticipantStatistics getStatistics() {
+        return statistics;
+    }
+
     public Object getData() {
 	return data;
     }
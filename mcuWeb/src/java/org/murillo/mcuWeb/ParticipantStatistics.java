@@ -0,0 +1,220 @@
+/*
+ * ParticipantStatistics.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.murillo.mcuWeb;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import org.murillo.MediaServer.XmlRpcMcuClient.MediaStatistics;
+
+/**
+ * Recent statistics samples of a participant, kept in a fixed ring buffer per media.
+ * Records are allocated once and overwritten in place on each update, and counters
+ * are extended to 64 bits across the 32 bit wrap of the media server values.
+ * @author Sergio Garcia Murillo
+ */
+public class ParticipantStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+    //Number of samples kept per media
+    public static final int SIZE = 16;
+    //Medias tracked
+    public static final String[] MEDIAS = {"audio","video","text"};
+
+    private static final long WRAP = 0x100000000L;
+
+    private final MediaStatistics[][] samples;
+    private final int[] count;
+    private final int[] last;
+    private long timestamp;
+
+    public ParticipantStatistics() {
+        //Create buffers
+        samples = new MediaStatistics[MEDIAS.length][SIZE];
+        count = new int[MEDIAS.length];
+        last = new int[MEDIAS.length];
+        //For each media
+        for (int i=0;i<MEDIAS.length;i++)
+            //For each slot
+            for (int j=0;j<SIZE;j++)
+                //Preallocate record
+                samples[i][j] = new MediaStatistics();
+    }
+
+    private static int getMediaIndex(String media) {
+        //Find it
+        for (int i=0;i<MEDIAS.length;i++)
+            //If it is the one
+            if (MEDIAS[i].equals(media))
+                //Found
+                return i;
+        //Not tracked
+        return -1;
+    }
+
+    private static long extend(long prev,long value) {
+        //If it is already a 64 bit value
+        if (value>=WRAP)
+            //Use it
+            return value;
+        //Get lower and upper parts of previous value
+        long low = prev & (WRAP-1);
+        long high = prev - low;
+        //If it has not gone backwards
+        if (value>=low)
+            //Same upper part
+            return high + value;
+        //If it went back more than half the range it has wrapped
+        if (low-value>WRAP/2)
+            //Next upper part
+            return high + WRAP + value;
+        //Counters have been reset
+        return value;
+    }
+
+    /**
+     * Store a new sample, copying its values into the next slot of the media.
+     * @param media media of the sample
+     * @param sample raw values as received from the media server, with its timestamp set
+     */
+    public synchronized void update(String media,MediaStatistics sample) {
+        //Get media
+        int i = getMediaIndex(media);
+        //If not tracked
+        if (i==-1)
+            //Skip
+            return;
+        //Get previous one
+        MediaStatistics prev = count[i]>0 ? samples[i][last[i]] : null;
+        //Get next slot
+        int next = count[i]>0 ? (last[i]+1)%SIZE : 0;
+        //Get record to overwrite
+        MediaStatistics stats = samples[i][next];
+        //Copy values
+        stats.set(sample);
+        //If there was a previous one
+        if (prev!=null) {
+            //Extend counters
+            stats.lostRecvPackets = extend(prev.lostRecvPackets, sample.lostRecvPackets);
+            stats.numRecvPackets  = extend(prev.numRecvPackets, sample.numRecvPackets);
+            stats.numSendPackets  = extend(prev.numSendPackets, sample.numSendPackets);
+            stats.totalRecvBytes  = extend(prev.totalRecvBytes, sample.totalRecvBytes);
+            stats.totalSendBytes  = extend(prev.totalSendBytes, sample.totalSendBytes);
+            //If counters have not been reset
+            if (stats.lostRecvPackets>=prev.lostRecvPackets && stats.numRecvPackets>=prev.numRecvPackets && stats.numSendPackets>=prev.numSendPackets
+                && stats.totalRecvBytes>=prev.totalRecvBytes && stats.totalSendBytes>=prev.totalSendBytes)
+                //Calculate rates
+                stats.calculateRates(prev);
+            else
+                //No rates
+                stats.calculateRates(null);
+        } else {
+            //No rates
+            stats.calculateRates(null);
+        }
+        //Move to next
+        last[i] = next;
+        //Increase count
+        if (count[i]<SIZE)
+            count[i]++;
+        //Update time
+        timestamp = sample.timestamp;
+    }
+
+    /**
+     * Remove all samples, for example when the participant is recreated in a new mixer.
+     */
+    public synchronized void clear() {
+        //Reset all medias
+        for (int i=0;i<MEDIAS.length;i++) {
+            //Empty
+            count[i] = 0;
+            last[i] = 0;
+        }
+        //No samples
+        timestamp = 0;
+    }
+
+    /**
+     * Get time of the last update.
+     * @return the timestamp in ms or 0 if no sample has been stored
+     */
+    public synchronized long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get a copy of the latest sample of a media.
+     * @return the sample or null if there is none
+     */
+    public synchronized MediaStatistics getLatest(String media) {
+        //Get media
+        int i = getMediaIndex(media);
+        //If not tracked or empty
+        if (i==-1 || count[i]==0)
+            //Nothing
+            return null;
+        //Create copy
+        MediaStatistics stats = new MediaStatistics();
+        //Copy it
+        stats.set(samples[i][last[i]]);
+        //Return it
+        return stats;
+    }
+
+    /**
+     * Get copies of the stored samples of a media, oldest first.
+     */
+    public synchronized List<MediaStatistics> getSamples(String media) {
+        //Create list
+        ArrayList<MediaStatistics> list = new ArrayList<MediaStatistics>();
+        //Get media
+        int i = getMediaIndex(media);
+        //If not tracked
+        if (i==-1)
+            //Empty
+            return list;
+        //For each sample, starting on the oldest
+        for (int j=count[i]-1;j>=0;j--) {
+            //Create copy
+            MediaStatistics stats = new MediaStatistics();
+            //Copy it
+            stats.set(samples[i][(last[i]-j+SIZE)%SIZE]);
+            //Add it
+            list.add(stats);
+        }
+        //Return them
+        return list;
+    }
+
+    /**
+     * Get the received packets of all medias on the latest samples.
+     */
+    public synchronized long getTotalRecvPackets() {
+        long num = 0;
+        //For each media
+        for (int i=0;i<MEDIAS.length;i++)
+            //If it has samples
+            if (count[i]>0)
+                //Increase packet count
+                num += samples[i][last[i]].numRecvPackets;
+        //Return total
+        return num;
+    }
+}
@@ -53,22 +53,23 @@ import org.murillo.MediaServer.Codecs;
 import org.murillo.MediaServer.Codecs.Direction;
 import org.murillo.MediaServer.Codecs.MediaType;
 import org.murillo.MediaServer.Codecs.Setup;
+import org.murillo.MediaServer.XmlRpcBatch.Call;
 import org.murillo.MediaServer.XmlRpcMcuClient;
 import org.murillo.MediaServer.XmlRpcMcuClient.MediaStatistics;
 import org.murillo.abnf.ParserException;
 import org.murillo.mcuWeb.Participant.State;
-import org.murillo.sdp.Attribute;
-import org.murillo.sdp.Bandwidth;
-import org.murillo.sdp.Connection;
 import org.murillo.sdp.CryptoAttribute;
 import org.murillo.sdp.ExtMapAttribute;
 import org.murillo.sdp.FingerprintAttribute;
 import org.murillo.sdp.FormatAttribute;
 import org.murillo.sdp.MediaDescription;
-import org.murillo.sdp.RTPMapAttribute;
 import org.murillo.sdp.SSRCAttribute;
 import org.murillo.sdp.SSRCGroupAttribute;
 import org.murillo.sdp.SessionDescription;
+import org.murillo.sdp.negotiation.Capabilities;
+import org.murillo.sdp.negotiation.Negotiation;
+import org.murillo.sdp.negotiation.Negotiation.MediaNegotiation;
+import org.murillo.sdp.negotiation.Negotiator;
 import org.murillo.util.H264ProfileLevelID;
 
 /**
@@ -96,7 +97,8 @@ public class RTPParticipant extends Participant {
 	private Integer videoCodec;
 	private Integer textCodec;
 	private String location;
-	private Integer totalPacketCount;
+	private long totalPacketCount = -1;
+	private long inviteTime;
 	@XmlElement
 	private Map<String, MediaStatistics> stats;
 
@@ -104,6 +106,7 @@ public class RTPParticipant extends Participant {
 	private HashMap<String,HashMap<Integer,Integer>> rtpInMediaMap = null;
 	private HashMap<String,HashMap<Integer,Integer>> rtpOutMediaMap = null;
 	private HashMap<String,HashMap<String,Integer>> supportedExtensions = null;
+	private Capabilities capabilities = null;
 	private HashMap<String,HashMap<String,Integer>> rtpExtensionMap = null;
 	private ArrayList<MediaDescription> rejectedMedias;
 	private String videoContentType;
@@ -135,6 +138,7 @@ public class RTPParticipant extends Participant {
 	private boolean useUpdate;
 	private boolean useRTPTimeout;
 	private boolean useRTX;
+	private boolean renegotiating;
 
 
 	public static final String ALLOWED = "INVITE, ACK, CANCEL, UPDATE, INFO, OPTIONS, BYE";
@@ -327,59 +331,110 @@ public class RTPParticipant extends Participant {
 	public void restart(Integer partId) {
 		//Store new id
 		this.partId = partId;
+		//Counters start again on the new mixer
+		statistics.clear();
+		totalPacketCount = -1;
 		try {
-		//Clear ports so we can start receiving again
-		sendAudioPort = 0;
-		sendVideoPort = 0;
-		sendTextPort = 0;
-		recAudioPort = 0;
-		recVideoPort = 0;
-		recTextPort = 0;
-		//Reset RTP setup
-		rtpSetups = new HashMap<String,Setup>(3);
-		//Actpass by default
-		rtpSetups.put("audio",Setup.ACTPASS);
-		rtpSetups.put("video",Setup.ACTPASS);
-		rtpSetups.put("text" ,Setup.ACTPASS);
-		//Start receiving media
+			//Clear ports so we can start receiving again
+			sendAudioPort = 0;
+			sendVideoPort = 0;
+			sendTextPort = 0;
+			recAudioPort = 0;
+			recVideoPort = 0;
+			recTextPort = 0;
+			//Reset RTP setup
+			rtpSetups = new HashMap<String,Setup>(3);
+			//Actpass by default
+			rtpSetups.put("audio",Setup.ACTPASS);
+			rtpSetups.put("video",Setup.ACTPASS);
+			rtpSetups.put("text" ,Setup.ACTPASS);
+			//Start receiving media
 			startReceiving();
-		// create an UPDATE
-		SipServletRequest updateRequest = session.createRequest("UPDATE");
-		//Check session refresh request
-		if (timerSupported && sessionExpires>0)
+			//Use UPDATE if allowed by the peer, re-INVITE otherwise
+			SipServletRequest request = session.createRequest(useUpdate ? "UPDATE" : "INVITE");
+			//Check session refresh request
+			if (timerSupported && sessionExpires>0)
 			{
-		//RFC 4208 Session Timers
-		//	If the UAS wishes to accept the request, it copies the value of the
-		//	Session-Expires header field from the request into the 2xx response.
-		updateRequest.addHeader("Session-expires", sessionExpires.toString()+";refresher=uac");
-		//Add require and supported
-		updateRequest.addHeader("Supported","timer");
-		updateRequest.addHeader("Require","timer");
+				//RFC 4208 Session Timers
+				//	If the UAS wishes to accept the request, it copies the value of the
+				//	Session-Expires header field from the request into the 2xx response.
+				request.addHeader("Session-expires", sessionExpires.toString()+";refresher=uac");
+				//Add require and supported
+				request.addHeader("Supported","timer");
+				request.addHeader("Require","timer");
 			}
-		//add allowed header
-		updateRequest.addHeader("Allow", ALLOWED);
-		//Add custom headers with conf id and participant id
-			updateRequest.addHeader("X-Conference-ID", conf.getUID());
-		updateRequest.addHeader("X-Participant-ID", getId().toString());
-		updateRequest.addHeader("X-Participant-Token", getToken());
-		updateRequest.addHeader("X-Conference-Mixer-ID", conf.getId().toString());
-		updateRequest.addHeader("X-Conference-Mixer-PartID", partId.toString());
-		
+			//add allowed header
+			request.addHeader("Allow", ALLOWED);
+			//Add custom headers with conf id and participant id
+			request.addHeader("X-Conference-ID", conf.getUID());
+			request.addHeader("X-Participant-ID", getId().toString());
+			request.addHeader("X-Participant-Token", getToken());
+			request.addHeader("X-Conference-Mixer-ID", conf.getId().toString());
+			request.addHeader("X-Conference-Mixer-PartID", partId.toString());
 			//Create sdp
 			localSDP = createSDP();
-			//Convert to
-			String sdp = localSDP.toString();
 			//Attach body
-			updateRequest.setContent(sdp,"application/sdp");
+			request.setContent(localSDP.toByteArray(),"application/sdp");
+			//Waiting for the answer
+			renegotiating = true;
 			//Send it
-			updateRequest.send();
+			request.send();
 			//Log
-			logger.log(Level.WARNING, "doInvite [idSession:{0}]",new Object[]{session.getId()});
+			logger.log(Level.INFO, "restart {0} [idSession:{1}]",new Object[]{request.getMethod(),session.getId()});
 		} catch (Exception ex) {
-	   throw new RuntimeException(ex);
+			throw new RuntimeException(ex);
 		}
 	}
 
+	private void onRenegotiationResponse(SipServletResponse resp) throws IOException {
+		//Get code
+		Integer code = resp.getStatus();
+		//Skip provisional
+		if (code<200)
+			//Wait for final
+			return;
+		//Not waiting anymore
+		renegotiating = false;
+		//If failed
+		if (code>=300) {
+			//Log
+			logger.log(Level.WARNING, "Renegotiation rejected with {0} [id:{1}]",new Object[]{code,getId()});
+			//If it was an INVITE
+			if (resp.getMethod().equals("INVITE"))
+				//Ack it
+				resp.createAck().send();
+			//We have no media on the mixer, hang up
+			doBye(true);
+			//Exit
+			return;
+		}
+		try {
+			//Parse sdp without decoding the body
+			remoteSDP = processSDP(parseSDP(resp.getContent()));
+			//Negotiation done
+			onSDPNegotiationDone();
+			//If it was an INVITE
+			if (resp.getMethod().equals("INVITE"))
+				//Ack it
+				resp.createAck().send();
+			//Join it to the conference again
+			conf.joinParticipant(this);
+			//Start sending
+			startSending();
+		} catch (Exception ex) {
+			logger.log(Level.SEVERE, "Error processing renegotiation respose", ex);
+			//Terminate
+			doBye(true);
+		}
+	}
+
+	public void onUpdateResponse(SipServletResponse resp) throws IOException {
+		//Check if it was for a renegotiation
+		if (renegotiating)
+			//Process it
+			onRenegotiationResponse(resp);
+	}
+
 	public void addSupportedCodec(String media,Integer codec) {
 		 //Check if we have the media
 		 if (!supportedCodecs.containsKey(media))
@@ -387,6 +442,8 @@ public class RTPParticipant extends Participant {
 			 supportedCodecs.put(media, new Vector<Integer>());
 		 //Add codec to media
 		 supportedCodecs.get(media).add(codec);
+		 //Capabilities have changed
+		 capabilities = null;
 	 }
 
 	public Address getAddress() {
@@ -844,6 +901,97 @@ public class RTPParticipant extends Participant {
 		}
 		}
 
+		//Get extensions for media
+		HashMap<String, Integer> extensions = rtpExtensionMap.get(mediaName);
+	
+		//If we don't have yet an extension map, send the supported
+		if (extensions==null)
+			//Get supported extensions
+			extensions = supportedExtensions.get(mediaName);
+
+		//Check if we are offering first and h264 will be used
+		if (h264profileLevelId==null && rtpInMap.containsValue(Codecs.H264) && supportedCodecs.get(mediaName).contains(Codecs.H264))
+			//Set default profile
+			h264profileLevelId = new H264ProfileLevelID(h264profileLevelIdDefault);
+
+		//Get codec lines cache of the conference
+		SDPTemplateCache templates = conf.getSDPTemplates();
+		//Get key for this media, codecs and profile
+		String key = getTemplateKey(mediaName, rtpInMap, extensions);
+		//Get codec lines
+		SDPTemplateCache.MediaTemplate template = templates.get(key);
+		//If not created yet
+		if (template==null)
+		{
+			//Create empty media
+			MediaDescription codecs = new MediaDescription();
+			//Add codec lines
+			addCodecs(codecs, mediaName, rtpInMap, extensions);
+			//Create template from them
+			template = new SDPTemplateCache.MediaTemplate(codecs);
+			//Store it
+			templates.put(key, template);
+		}
+		//Add codec lines to media
+		template.apply(md);
+
+		//Check if fec has been negotiated
+		if (rtpInMap.containsValue(Codecs.ULPFEC) && supportedCodecs.get(mediaName).contains(Codecs.ULPFEC))
+			//Enable fec
+			rtpMediaProperties.get(mediaName).put("useFEC", "1");
+
+		//If not format has been found
+		if (md.getFormats().isEmpty())
+		{
+			//Log
+			logger.log(Level.FINE, "addMediaToSdp no compatible codecs found for media {0} ", new Object[]{mediaName});
+			//Disable
+			md.setPort(0);
+		}
+		//Return the media descriptor
+		return md;
+	}
+
+	private String getTemplateKey(String mediaName, HashMap<Integer, Integer> rtpInMap, HashMap<String, Integer> extensions)
+	{
+		//Media and profile
+		StringBuilder key = new StringBuilder(mediaName).append('|').append(profile.getUID());
+		//Add negotiated mappings in supported order
+		for (Integer codec : supportedCodecs.get(mediaName))
+			//Search for the codec
+			for (Entry<Integer,Integer> mapping : rtpInMap.entrySet())
+				//Check codec
+				if (mapping.getValue().equals(codec))
+					//Append it
+					key.append('|').append(mapping.getKey()).append('=').append(codec);
+		//If using h264
+		if (rtpInMap.containsValue(Codecs.H264))
+		{
+			//Append negotiated parameters
+			key.append("|h264=").append(h264profileLevelId).append('/').append(h264packetization);
+			//And the profile ones, they can be changed at any time
+			key.append('/').append(profile.getProperty("codecs.h264.max-mbps"));
+			key.append('/').append(profile.getProperty("codecs.h264.max-fs"));
+			key.append('/').append(profile.getProperty("codecs.h264.max-br"));
+			key.append('/').append(profile.getProperty("codecs.h264.max-smbps"));
+			key.append('/').append(profile.getProperty("codecs.h264.max-fps"));
+		}
+		//If it is video
+		if (mediaName.equals("video"))
+			//Append content
+			key.append("|content=").append(videoContentType);
+		//If we have extensions
+		if (extensions!=null)
+			//For each one
+			for (Entry<String,Integer> pair : extensions.entrySet())
+				//Append it
+				key.append('|').append(pair.getValue()).append('=').append(pair.getKey());
+		//Return it
+		return key.toString();
+	}
+
+	private void addCodecs(MediaDescription md, String mediaName, HashMap<Integer, Integer> rtpInMap, HashMap<String, Integer> extensions)
+	{
 		//Add rtmpmap for each codec in supported order
 		for (Integer codec : supportedCodecs.get(mediaName))
 		{
@@ -918,9 +1066,6 @@ public class RTPParticipant extends Participant {
 						fmtp.addParameter("stereo",0);
 						//Add opus params support
 						md.addAttribute(fmtp);
-					} else if (Codecs.ULPFEC.equals(codec)) {
-						//Enable fec
-						rtpMediaProperties.get(mediaName).put("useFEC", "1");
 			} else if (Codecs.RTX.equals(codec)) {
 						//Find VP8 codec
 						Integer vp8 = findTypeForCodec(rtpInMap,Codecs.VP8);
@@ -956,46 +1101,22 @@ public class RTPParticipant extends Participant {
 			//Add attribute
 			md.addAttribute("content",videoContentType);
 
-		//Get extensions for media
-		HashMap<String, Integer> extensions = rtpExtensionMap.get(mediaName);
-	
-		//If we don't have yet an extension map, send the supported
-		if (extensions==null)
-			//Get supported extensions
-			extensions = supportedExtensions.get(mediaName);
-	
 		//If we have extensions
 		if (extensions!=null)
 			//For each one
 			for (Entry<String,Integer> pair : extensions.entrySet())
 				//Add new extension attribute
 				md.addAttribute(new ExtMapAttribute(pair.getValue(), pair.getKey()));
-
-		//If not format has been found
-		if (md.getFormats().isEmpty())
-		{
-			//Log
-			logger.log(Level.FINE, "addMediaToSdp no compatible codecs found for media {0} ", new Object[]{mediaName});
-			//Disable
-			md.setPort(0);
-		}
-		//Return the media descriptor
-		return md;
 	}
 
 	private void proccesContent(String type, Object content) throws IOException {
 		//No SDP
-		String sdp = null;
+		Object sdp = null;
 		//Depending on the type
 		if (type.equalsIgnoreCase("application/sdp"))
 		{
-			//Check object type
-			if (content instanceof String)
-				//Get content
-				sdp = (String) content;
-			else
-			//Get it
-			sdp = new String((byte[])content);
+			//Keep content as it is, it will be parsed directly
+			sdp = content;
 		} else if (type.startsWith("multipart/mixed")) {
 			try {
 				//Get multopart
@@ -1016,8 +1137,8 @@ public class RTPParticipant extends Participant {
 						byte[] arr = new byte[inputStream.available()];
 						//Read them
 						inputStream.read(arr, 0, inputStream.available());
-						//Set length
-						sdp = new String(arr);
+						//Parse it directly
+						sdp = arr;
 					} else if (bodyType.equalsIgnoreCase("application/pidf+xml")) {
 						//Get input stream
 						InputStream inputStream = bodyPart.getInputStream();
@@ -1035,7 +1156,7 @@ public class RTPParticipant extends Participant {
 		}
 		try {
 			//Parse sdp
-			remoteSDP = processSDP(sdp);
+			remoteSDP = processSDP(parseSDP(sdp));
 			//Check if also have local SDP
 			if (localSDP!=null)
 				//Negotiation done
@@ -1049,6 +1170,22 @@ public class RTPParticipant extends Participant {
 	}
 	}
 
+	private static SessionDescription parseSDP(Object content) throws IllegalArgumentException, ParserException
+	{
+		//Check object type
+		if (content instanceof String)
+			//Parse text
+			return SessionDescription.Parse((String)content);
+		//Parse raw bytes, no need to decode them first
+		return SessionDescription.Parse((byte[])content);
+	}
+
+	public SessionDescription processSDP(byte[] body) throws IllegalArgumentException, ParserException
+	{
+		//Parse bytes and process it
+		return processSDP(SessionDescription.Parse(body));
+	}
+
 	public SessionDescription processSDP(String body) throws IllegalArgumentException, ParserException
 	{
 	 //Parse conent
@@ -1060,549 +1197,214 @@ public class RTPParticipant extends Participant {
 
 	public SessionDescription processSDP(SessionDescription sdp) throws IllegalArgumentException
 	{
-		//Connnection IP
-		String ip = null;
-		//ICE credentials
-		String remoteICEFrag = null;
-		String remtoeICEPwd = null;
-
-		//Get the connection field
-		Connection conn = sdp.getConnection();
-
-		if (conn!=null)
-		{
-			//Get IP addr
-			ip = conn.getAddress();
-
-			//We don't support ipv6 yet
-			if (!conn.getAddrType().equalsIgnoreCase("IP4"))
-				//Ignore it and do natting
-				ip = "0.0.0.0";
-		//Check if ip should be nat for this media mixer
-			else if (conf.getMixer().isNated(ip) || useICE)
-			//Do natting
-			ip = "0.0.0.0";
-		}
+		//Match it against our capabilities
+		Negotiation negotiation = Negotiator.negotiate(sdp, getCapabilities(), useDTLS);
 
 		//Disable supported media
 		audioSupported = false;
 		videoSupported = false;
 		textSupported = false;
 
-	//No sending ports
+		//No sending ports
 		sendAudioPort = 0;
 		sendVideoPort = 0;
 		sendTextPort = 0;
 
-		//NO bitrate by default
-		videoBitrate = 0;
-
-		//For each bandwith
-		for (Bandwidth band : sdp.getBandwidths())
-		{
-			//Get bitrate value
-			int rate = Integer.parseInt(band.getBandwidth());
-			//Check bandwith type
-			if (band.getType().equalsIgnoreCase("TIAS"))
-					//Convert to kbps
-					rate = rate/1000;
-			// Let some room for audio.
-			if (rate>=128)
-				//Remove maximum rate
-				rate -= 64;
-			//Check if is less
-			if (videoBitrate==0 || rate<videoBitrate)
-				//Set it
-				videoBitrate = rate;
-		}
-
-		//Check for global ice credentials
-		Attribute ufragAtrr = sdp.getAttribute("ice-ufrag");
-		Attribute pwdAttr = sdp.getAttribute("ice-pwd");
+		//Get bitrate
+		videoBitrate = negotiation.getVideoBitrate();
 
-		//Check if both present
-		if (ufragAtrr!=null && pwdAttr!=null)
-		{
+		//Check if remote is using ICE
+		if (negotiation.isICE())
 			//Using ice
 			useICE = true;
-			//Get values
-			remoteICEFrag = ufragAtrr.getValue();
-			remtoeICEPwd = pwdAttr.getValue();
-		}
-
-	//No DTLS fingerprint yet
-	String remoteHash = null;
-	String remoteFingerprint = null;
+		//Check DTLS
+		if (negotiation.isDTLS())
+			//Using DTLS
+			useDTLS = true;
+		//Check if it is secure
+		if (negotiation.isSecure())
+			//Secure (WARNING: if one media is secure, all will be secured, FIX!!)
+			isSecure = true;
+		//Check if has rtcp
+		if (negotiation.isRtcpFeedBack())
+			//With feedback (WARNING: if one media has feedback, all will have feedback, FIX!!)
+			rtcpFeedBack = true;
+		//Check content type
+		if (negotiation.getVideoContentType()!=null)
+			//Add the content type to the line
+			videoContentType = negotiation.getVideoContentType();
 
-	//Check global fingerprint attribute
-	FingerprintAttribute fingerprintAttr = (FingerprintAttribute) sdp.getAttribute("fingerprint");
+		//Add rejected medias
+		rejectedMedias.addAll(negotiation.getRejectedMedias());
 
-	//Check if there is one preset
-	if (fingerprintAttr!=null)
-	{
-		//Using DTLS
-		useDTLS = true;
-		//Get remote fingerprint
-			remoteHash		  = fingerprintAttr.getHashFunc();
-		remoteFingerprint = fingerprintAttr.getFingerprint();
-	}
-
-		for (MediaDescription md : sdp.getMedias())
+		//For each accepted media
+		for (MediaNegotiation mn : negotiation.getMedias())
 		{
-			//No default bitrate
-			int mediaBitrate = 0;
-
 			//Get media type
-			String media = md.getMedia();
-
-			//Get port
-			Integer port = md.getPort();
-			//Get transport
-			ArrayList<String> proto = md.getProto();
+			String media = mn.getMedia();
 
-			//If it its not RTP (i.e. RTP/(s)AVP(f) or UDP/TLS/RTP/SAVP(f) or port is 0
-			if (!proto.get(proto.size()-2).equals("RTP") || port==0)
-			{
-				//Create media descriptor
-				MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-				//set all  formats
-				rejected.setFormats(md.getFormats());
-				//add to rejected media
-				rejectedMedias.add(rejected);
-				//Not supported media type
-				continue;
-			}
-
-			//Get bandwiths
-			for (Bandwidth band : md.getBandwidths())
-			{
-				//Get bitrate value
-				int rate = Integer.parseInt(band.getBandwidth());
-				//Check bandwith type
-				 if (band.getType().equalsIgnoreCase("TIAS"))
-					//Convert to kbps
-					rate = rate/1000;
-				//Check if less than current
-				if (mediaBitrate==0 || rate<mediaBitrate)
-					//Set it
-					mediaBitrate = rate;
-			}
+			//Add support for the media
+			if (media.equals("audio"))
+				//Set as supported
+				audioSupported = true;
+			else if (media.equals("video"))
+				//Set as supported
+				videoSupported = true;
+			else if (media.equals("text"))
+				//Set as supported
+				textSupported = true;
 
 			//Check if it supports rtcp-muxing
-			if (md.hasAttribute("rtcp-mux"))
+			if (mn.isRtcpMux())
 				//Add attribute
 				rtpMediaProperties.get(media).put("rtcp-mux", "1");
 
 			//Check mid
-			if (md.hasAttribute("mid"))
+			if (mn.getMid()!=null)
 				//Set it
-				mids.put(media,md.getAttribute("mid").getValue());
+				mids.put(media,mn.getMid());
 
-		//Check direction attributes
-		if (md.hasAttribute("sendonly"))
-		{
-		//Part is sendonly
-		rtpDirections.put(media, Direction.SENDONLY);
-		} else if (md.hasAttribute("recvonly")) {
-		//Part is recvonly
-		rtpDirections.put(media, Direction.RECVONLY);
-		} else if (md.hasAttribute("inactive")) {
-		//Part is inactive
-		rtpDirections.put(media, Direction.INACTIVE);
-		} else {
-		//Part is sendrecv
-		rtpDirections.put(media, Direction.SENDRECV);
-		}
+			//Set direction
+			rtpDirections.put(media, Direction.valueOf(mn.getDirection().toUpperCase()));
 
-			//Add support for the media
-			if (media.equals("audio")) {
-				//Set as supported
-				audioSupported = true;
-			} else if (media.equals("video")) {
-				//Get content attribute
-				Attribute content = md.getAttribute("content");
-				//Check if we found it inside this media
-				if (content!=null)
-				{
-					//Get it
-					String mediaContentType = content.getValue();
-					//Check if it is not main
-					if (!mediaContentType.equalsIgnoreCase("main"))
-					{
-						//Create media descriptor
-						MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-						//set all  formats
-						rejected.setFormats(md.getFormats());
-						//Add content attribute
-						rejected.addAttribute(content);
-						//add to rejected media
-						rejectedMedias.add(rejected);
-						//Skip it
-						continue;
-					} else {
-						//Add the content type to the line
-						videoContentType = mediaContentType;
-					}
-				}
-				//Check if we have a media rate less than the current bitrate
-				if (videoBitrate==0 || (mediaBitrate>0 && mediaBitrate<videoBitrate))
-					//Store bitrate
-					videoBitrate = mediaBitrate;
-				//Set as supported
-				videoSupported = true;
-			} else if (media.equals("text")) {
-				//Set as supported
-				textSupported = true;
-			} else {
-				//Create media descriptor
-				MediaDescription rejected = new MediaDescription(media,0,md.getProtoString());
-				//set all  formats
-				rejected.setFormats(md.getFormats());
-				//add to rejected media
-				rejectedMedias.add(rejected);
-				//Not supported media type
-				continue;
-			}
-
-			//Check if we have input map for that
+			//Check if we have output map for that
 			if (!rtpOutMediaMap.containsKey(media))
 				//Create new map
 				rtpOutMediaMap.put(media, new HashMap<Integer, Integer>());
+			//Add offered codecs
+			rtpOutMediaMap.get(media).putAll(mn.getRTPMap());
 
-			//Get all codecs
-			//No codec priority yet
-			Integer priority = Integer.MAX_VALUE;
-
-			 //ICE credentials
-			String remoteMediaICEFrag = remoteICEFrag;
-			String remtoeMediaICEPwd = remtoeICEPwd;
-			//Check for global ice credentials
-			ufragAtrr = md.getAttribute("ice-ufrag");
-			pwdAttr = md.getAttribute("ice-pwd");
-
-			//Check if both present
-			if (ufragAtrr!=null && pwdAttr!=null)
-			{
-				//Using ice
-				useICE = true;
-				//Get values
-				remoteMediaICEFrag = ufragAtrr.getValue();
-				remtoeMediaICEPwd = pwdAttr.getValue();
-			}
-
-			//By default the media IP is the general IO
-			String mediaIp = ip;
+			//Check if we have type for h264
+			if (mn.getH264Type()>0)
+				//Store profile level
+				h264profileLevelId = mn.getH264ProfileLevelId()!=null ? new H264ProfileLevelID(mn.getH264ProfileLevelId()) : null;
+			//Check if it has packetization parameter
+			if (mn.getH264Packetization()!=null)
+				//Set it
+				h264packetization = mn.getH264Packetization();
 
-			//Get connection info
-			for (Connection c : md.getConnections())
+			//We are using rtx
+			if (mn.getRTXApt()!=null)
 			{
-				//Get it
-				mediaIp = c.getAddress();
-				//Check if ip should be nat for this media mixer or we are using ICE
-				if (conf.getMixer().isNated(mediaIp) || useICE)
-					//Do natting
-					mediaIp = "0.0.0.0";
+				//Enable rtx, it must have apt
+				useRTX = true;
+				//Set it
+				rtpMediaProperties.get(media).put("useRTX", "1");
+				//Set PT
+				rtpMediaProperties.get(media).put("rtx.apt", mn.getRTXApt());
 			}
 
-		//Check if it is DTLS
-		if (proto.get(0).equals("UDP") && proto.get(1).equals("TLS"))
-			//Using DTLS
-			useDTLS = true;
-
-		//Get rtp profile
-			String rtpProfile = proto.get(proto.size()-1);
-
-			//Check if it is secure
-			if (rtpProfile.startsWith("S"))
+			//If we have found a common codec
+			if (mn.getCodec()!=null)
 			{
-				//Secure (WARNING: if one media is secure, all will be secured, FIX!!)
-				isSecure = true;
-
-		//Check media fingerprint attribute
-		fingerprintAttr = (FingerprintAttribute) md.getAttribute("fingerprint");
-
-		//Check if DTLS is available
-		if (fingerprintAttr!=null)
-		{
-			//Using DTLS
-			useDTLS = true;
-			//Get remote fingerprint and hash
-					remoteHash		= fingerprintAttr.getHashFunc();
-			remoteFingerprint = fingerprintAttr.getFingerprint();
-		}
-
-		//If we have fingerprint
-		if (useDTLS)
-		{
-			//Set deault setup
-			Setup setup = Setup.ACTPASS;
-			//Get setup attribute
-			Attribute attr = md.getAttribute("setup");
-			//Chekc it
-			if (attr!=null)
-			//Set it
-			setup = Setup.byValue(attr.getValue());
-			//Create new DTLS info
-			remoteDTLSInfo.put(media, new DTLSInfo(setup,remoteHash,remoteFingerprint));
-			//Set ur setup as reverese of remote
-			rtpSetups.put(media, setup.reverse());
-		} else {
-			//Check crypto attribute
-				CryptoAttribute crypto = (CryptoAttribute) md.getAttribute("crypto");
-
-		//Check SDES key
-				if (crypto!=null)
+				//Get ip for sending
+				String mediaIp = getSendIp(mn);
+				//Check the media type
+				if (media.equals("audio"))
 				{
-					//Create media crypto params
-					CryptoInfo info = new CryptoInfo();
-					//Get suite
-					info.suite = crypto.getSuite();
-					//Get key
-					info.key = crypto.getFirstKeyParam().getInfo();
-					//Add it
-					remoteCryptoInfo.put(media, info);
+					//Set port
+					setSendAudioPort(mn.getPort());
+					//And Ip
+					setSendAudioIp(mediaIp);
+					//Set codec
+					setAudioCodec(mn.getCodec());
+				} else if (media.equals("video")) {
+					//Set port
+					setSendVideoPort(mn.getPort());
+					//And Ip
+					setSendVideoIp(mediaIp);
+					//Set codec
+					setVideoCodec(mn.getCodec());
+				} else if (media.equals("text")) {
+					//Set port
+					setSendTextPort(mn.getPort());
+					//And Ip
+					setSendTextIp(mediaIp);
+					//Set codec
+					setTextCodec(mn.getCodec());
 				}
 			}
-			}
-			//Check if has rtcp
-			if (rtpProfile.endsWith("F"))
-				//With feedback (WARNING: if one media has feedback, all will have feedback, FIX!!)
-				rtcpFeedBack = true;
-
-			//FIX
-			Integer h264type = 0;
-			H264ProfileLevelID maxh264profile = null;
 
-			//For each format
-			for (String fmt : md.getFormats())
+			//Check if DTLS is used for this media
+			if (mn.getSetup()!=null)
 			{
-				Integer type = 0;
-				try {
-					//Get codec
-					type = Integer.parseInt(fmt);
-				} catch (Exception e) {
-					//Ignore non integer codecs, like '*' on application
-					continue;
-				}
-
-				//If it is dinamic
-				if (type>=96)
-				{
-					//Get map
-					RTPMapAttribute rtpMap = md.getRTPMap(type);
-					//Check it has mapping
-					if (rtpMap==null)
-						//Skip this one
-						continue;
-				//Get the media type
-				String codecName = rtpMap.getName();
-				//Get codec for name
-				Integer codec = Codecs.getCodecForName(media,codecName);
-					//if it is h264
-					if (Codecs.H264.equals(codec))
-				{
-						int k = -1;
-						//Get ftmp line
-						Map<String,String> params = md.getFormatParameters(type);
-						//Check if it has it
-						if (params!=null && params.containsKey("profile-level-id"))
-						{
-							//Get profile level indication
-							H264ProfileLevelID profileLevelId = new H264ProfileLevelID(params.get("profile-level-id"));
-							//Convert and compare
-							if (profileLevelId.getProfile()<=Codecs.MaxH264SupportedProfile && (maxh264profile==null || profileLevelId.getProfile()>maxh264profile.getProfile()) )
-							{
-								//Store this type provisionally
-								h264type = type;
-								//store new profile value
-								maxh264profile = profileLevelId;
-								//Check if it has packetization parameter
-								if (params.containsKey("packetization-mode"))
-									//Set it
-					h264packetization = Integer.parseInt(params.get("packetization-mode"));
-							}
-					} else {
-						//check if no profile has been received so far
-							if (maxh264profile==null)
-							//Store this type provisionally
-							h264type = type;
-					}
-					} else if (Codecs.SPEEX16.equals(codec)  ) {
-			//Check it is 16khz
-			if (rtpMap.getRate()==16000)
+				//Get remote setup
+				Setup setup = Setup.byValue(mn.getSetup());
+				//Create new DTLS info
+				remoteDTLSInfo.put(media, new DTLSInfo(setup,mn.getHash(),mn.getFingerprint()));
+				//Set ur setup as reverese of remote
+				rtpSetups.put(media, setup.reverse());
+			} else if (mn.getCryptoSuite()!=null) {
+				//Create media crypto params
+				CryptoInfo info = new CryptoInfo();
+				//Get suite
+				info.suite = mn.getCryptoSuite();
+				//Get key
+				info.key = mn.getCryptoKey();
 				//Add it
-				rtpOutMediaMap.get(media).put(type,codec);
-				} else if (codec!=-1) {
-					//Set codec mapping
-					 rtpOutMediaMap.get(media).put(type,codec);
-				}
-				} else {
-					//Static, put it in the map
-					rtpOutMediaMap.get(media).put(type,type);
-		}
+				remoteCryptoInfo.put(media, info);
 			}
 
-			//Check if we have type for h264
-			if (h264type>0)
-			{
-				//Store profile level
-				h264profileLevelId = maxh264profile;
-				//add it
-				rtpOutMediaMap.get(media).put(h264type,Codecs.H264);
-			}
-
-			//For each entry
-			for (Map.Entry<Integer,Integer> entry : rtpOutMediaMap.get(media).entrySet())
-			{
-		//Get Codec and type
-		Integer type = entry.getKey();
-		Integer codec = entry.getValue();
-				//Check the media type
-				if (media.equals("audio"))
-				{
-					//Get suppoorted codec for media
-					List<Integer> audioCodecs = supportedCodecs.get("audio");
-					//Get index
-					for (int index=0;index<audioCodecs.size();index++)
-					{
-						//Check codec
-						if (audioCodecs.get(index).equals(codec))
-						{
-							//Check if it is first codec for audio
-							if (priority==Integer.MAX_VALUE)
-							{
-								//Set port
-								setSendAudioPort(port);
-								//And Ip
-								setSendAudioIp(mediaIp);
-							}
-							//Check if we have a lower priority
-							if (index<priority)
-							{
-								//Store priority
-								priority = index;
-								//Set codec
-								setAudioCodec(codec);
-							}
-						}
-					}
-				}
-				else if (media.equals("video"))
-				{
-			//We are using rtx
-			if (codec.equals(Codecs.RTX))
+			//Check ice credentials
+			if (mn.getICEUfrag()!=null && mn.getICEPwd()!=null)
+				//Create info and add to remote ones
+				remoteICEInfo.put(media, new ICEInfo(mn.getICEUfrag(),mn.getICEPwd()));
+
+			//Get supported extensions offered
+			HashMap<String, Integer> extensions = mn.getExtensions();
+			//If some extensions are supported for this media
+			if (extensions!=null)
 			{
-				//Get format
-				Map<String,String> fp = md.getFormatParameters(type);
-				//Get associated payload type
-				if (fp.containsKey("apt"))
+				boolean offer = false;
+				//If it has not been created yet
+				if (rtpExtensionMap.containsKey(media))
 				{
-					//Enable rtx, it must have apt
-					useRTX = true;
 					//Set it
-					rtpMediaProperties.get(media).put("useRTX", "1");
-					//Set PT
-					rtpMediaProperties.get(media).put("rtx.apt", fp.get("apt"));
-				}
-			}
-					//Get suppoorted codec for media
-					List<Integer> videoCodecs = supportedCodecs.get("video");
-					//Get index
-					for (int index=0;index<videoCodecs.size();index++)
-					{
-						//Check codec
-						if (videoCodecs.get(index).equals(codec) && !codec.equals(Codecs.RED) && !codec.equals(Codecs.ULPFEC) && !codec.equals(Codecs.RTX))
-						{
-							//Check if it is first codec for video
-							if (priority==Integer.MAX_VALUE)
-							{
-								//Set port
-								setSendVideoPort(port);
-								//And Ip
-								setSendVideoIp(mediaIp);
-							}
-							//Check if we have a lower priority
-							if (index<priority)
-							{
-								//Store priority
-								priority = index;
-								//Set codec
-								setVideoCodec(codec);
-							}
-						}
-					}
+					rtpExtensionMap.put(media, new HashMap<String, Integer>());
+					//The SDP is an offer
+					offer = true;
 				}
-				else if (media.equals("text"))
+				//For each one
+				for (Entry<String,Integer> extension : extensions.entrySet())
 				{
-					//Get suppoorted codec for media
-					List<Integer> textCodecs = supportedCodecs.get("text");
-					//Get index
-					for (int index=0;index<textCodecs.size();index++)
-					{
-						//Check codec
-						if (textCodecs.get(index).equals(codec))
-						{
-							//Check if it is first codec for audio
-							if (priority==Integer.MAX_VALUE)
-							{
-								//Set port
-								setSendTextPort(port);
-								//And Ip
-								setSendTextIp(mediaIp);
-							}							
-							//Check if we have a lower priority
-							if (index<priority)
-							{
-								//Store priority
-								priority = index;
-								//Set codec
-								setTextCodec(codec);
-							}
-						}
-					}
+					//If it is an offer
+					if (offer)
+						//Add it also to the outgoing SDP extmap
+						rtpExtensionMap.get(media).put(extension.getKey(), extension.getValue());
+					//Add to the
+					rtpMediaProperties.get(media).put(extension.getKey(), extension.getValue().toString());
 				}
 			}
-			//Check ice credentials
-			if (remoteMediaICEFrag!=null && remtoeMediaICEPwd!=null)
-					//Create info and add to remote ones
-					remoteICEInfo.put(media, new ICEInfo(remoteMediaICEFrag,remtoeMediaICEPwd));
-		//Get extmap atrributes
-		ArrayList<Attribute> extmaps = md.getAttributes("extmap");
-		//Get supported extensions
-		HashMap<String, Integer> supported = supportedExtensions.get(media);
-		//If some extensions are supported for this media
-		if (supported!=null)
-		{
-		boolean offer = false;
-		//If it has not been created yet
-		if (rtpExtensionMap.containsKey(media))
-		{
-			//Set it
-			rtpExtensionMap.put(media, new HashMap<String, Integer>());
-			//The SDP is an offer
-			offer = true;
-		}
-		//For each one
-		for (Attribute attr : extmaps)
-		{
-			//Cast
-			ExtMapAttribute extmap = (ExtMapAttribute) attr;
-			//Check if it is supperted
-			if (supported.containsKey(extmap.getName()))
-			{
-			//If it is an offer
-			if (offer)
-				//Add it also to the outgoing SDP extmap
-				rtpExtensionMap.get(media).put(extmap.getName(), extmap.getId());
-			//Add to the
-			rtpMediaProperties.get(media).put(extmap.getName(), extmap.getId().toString());
-			}
-		}
-		}
 		}
 		return sdp;
 	}
 
+	private String getSendIp(MediaNegotiation mn)
+	{
+		//Get remote address
+		String ip = mn.getAddress();
+		//Check we have it
+		if (ip==null)
+			//Nothing
+			return null;
+		//We don't support ipv6 yet, check also if ip should be nat for this media mixer or we are using ICE
+		if (!mn.getAddrType().equalsIgnoreCase("IP4") || conf.getMixer().isNated(ip) || useICE)
+			//Do natting
+			return "0.0.0.0";
+		//Use remote one
+		return ip;
+	}
+
+	private Capabilities getCapabilities()
+	{
+		//If not created yet or codecs have changed
+		if (capabilities==null)
+			//Get the ones shared by the conference participants
+			capabilities = conf.getCapabilities(supportedCodecs, supportedExtensions);
+		//Return them
+		return capabilities;
+	}
+
 	public void onInfoRequest(SipServletRequest request) throws IOException {
 		//Check content type
 		if (request.getContentType().equals("application/media_control+xml"))
@@ -1656,6 +1458,8 @@ public class RTPParticipant extends Participant {
 	}
 
 	public void onInviteRequest(SipServletRequest request) throws IOException {
+		//Store call setup start time
+		inviteTime = System.nanoTime();
 		//Store invite request
 		inviteRequest = request;
 		//If it session timers are enabled
@@ -1813,25 +1617,16 @@ public class RTPParticipant extends Participant {
 		}
 		//add allowed header
 		resp.addHeader("Allow", ALLOWED);
-		//Body
-		String body = null;
 		//Get content
 		Object content = request.getContent();
-		//Check object type
-		if (content instanceof String)
-		//Get content
-		body = (String)content;
-	else if (content!=null)
-		//Get it
-		body = new String((byte[])content);
 		//Check body and type
-		if (body!=null && request.getContentType().equalsIgnoreCase("application/sdp"))
+		if (content!=null && request.getContentType().equalsIgnoreCase("application/sdp"))
 		{
 			SessionDescription sdp;
 
 			try {
-				//Parse conent
-				sdp = SessionDescription.Parse(body);
+				//Parse conent without decoding it
+				sdp = parseSDP(content);
 			} catch (ParserException ex) {
 				//Log
 				logger.log(Level.SEVERE, null, ex);
@@ -1870,7 +1665,7 @@ public class RTPParticipant extends Participant {
 		}
 		}
 			//Resend sdp
-			resp.setContent(localSDP.toString(),"application/sdp");
+			resp.setContent(localSDP.toByteArray(),"application/sdp");
 		}
 		//Send it
 		resp.send();
@@ -1920,7 +1715,7 @@ public class RTPParticipant extends Participant {
 				//Negotiation done
 				onSDPNegotiationDone();
 			//Attach body
-			resp.setContent(localSDP.toString(),"application/sdp");
+			resp.setContent(localSDP.toByteArray(),"application/sdp");
 			//Send it
 			resp.send();
 		} catch (Exception ex) {
@@ -1989,6 +1784,8 @@ public class RTPParticipant extends Participant {
 	void doInvite(SipFactory sf, Address from,Address to,SipURI proxy,int timeout,String location) throws XmlRpcException {
 		try
 		{
+			//Store call setup start time
+			inviteTime = System.nanoTime();
 			//Store to as participant address
 			address = to;
 			//Store proxy
@@ -2035,12 +1832,12 @@ public class RTPParticipant extends Participant {
 			appSession.setExpires(timeout);
 			//Create sdp
 			localSDP = createSDP();
-			//Convert to
-			String sdp = localSDP.toString();
 			//If it has location info
 			if (location!=null && !location.isEmpty())
 			{
 				try {
+					//Convert to
+					String sdp = localSDP.toString();
 
 					//Get SIP uri of calling user
 					SipURI uri = (SipURI)from.getURI();
@@ -2075,7 +1872,7 @@ public class RTPParticipant extends Participant {
 				}
 			} else {
 				//Attach body
-				inviteRequest.setContent(sdp,"application/sdp");
+				inviteRequest.setContent(localSDP.toByteArray(),"application/sdp");
 			}
 			//Set state
 			setState(State.CONNECTING);
@@ -2089,6 +1886,14 @@ public class RTPParticipant extends Participant {
 	}
 
 	public void onInviteResponse(SipServletResponse resp) throws IOException {
+		//If it is the answer to a re-INVITE
+		if (state==State.CONNECTED && renegotiating)
+		{
+			//Process it
+			onRenegotiationResponse(resp);
+			//Exit
+			return;
+		}
 		//Check state
 		if (state!=State.CONNECTING)
 		{
@@ -2187,19 +1992,8 @@ public class RTPParticipant extends Participant {
 		}
 		
 			try {
-		//Body
-		String body = null;
-		//Get content
-		Object content = resp.getContent();
-		//Check object type
-		if (content instanceof String)
-			//Get content
-			body = (String)content;
-		else
-			//Get it
-			body = new String((byte[])content);
-				//Parse sdp
-				remoteSDP = processSDP(body);
+				//Parse sdp without decoding the body
+				remoteSDP = processSDP(parseSDP(resp.getContent()));
 				//Check if also have local SDP
 				if (localSDP!=null)
 					//Negotiation done
@@ -2208,6 +2002,8 @@ public class RTPParticipant extends Participant {
 				SipServletRequest ack = resp.createAck();
 				//Send it
 				ack.send();
+				//Record call setup time
+				recordInviteTime(false);
 				//Set state before joining
 				setState(State.CONNECTED);
 				//Join it to the conference
@@ -2280,6 +2076,33 @@ public class RTPParticipant extends Participant {
 		}
 	}
 
+	private void recordInviteTime(boolean incoming) {
+		//If call setup is being measured
+		if (inviteTime!=0)
+			//Record INVITE to ACK time
+			Metrics.getInstance().recordInvite(incoming, System.nanoTime()-inviteTime);
+		//Only once
+		inviteTime = 0;
+	}
+
+	private void updateStats(ParticipantStatistics statistics) {
+		//Create map
+		HashMap<String,MediaStatistics> latest = new HashMap<String, MediaStatistics>();
+		//For each media
+		for (String media : ParticipantStatistics.MEDIAS) {
+			//Get latest sample
+			MediaStatistics sample = statistics.getLatest(media);
+			//If got any
+			if (sample!=null)
+				//Add it
+				latest.put(media, sample);
+		}
+		//If there was any
+		if (!latest.isEmpty())
+			//Update exported ones
+			stats = latest;
+	}
+
 	public void onTimeout() {
 		logger.log(Level.INFO, "onTimeout partId={0} state {1} totalPacketCount={2}", new Object[]{getId(),state,totalPacketCount});
 		//Check state
@@ -2302,20 +2125,14 @@ public class RTPParticipant extends Participant {
 			}
 			
 			try {
-		//Get client
-		XmlRpcMcuClient client = conf.getMCUClient();
-			//Get statiscits
-		stats =  client.getParticipantStatistics(conf.getId(), partId);
-			//Calculate acumulated packets
-			Integer num = 0;
-		//Check we found it
-		if (stats!=null)
-			//For each media
-			for (MediaStatistics s : stats.values())
-				//Increase packet count
-				num += s.numRecvPackets;
+			//Get statiscits collected for the conference
+			ParticipantStatistics statistics = conf.getParticipantStats(this);
+			//Update exported ones
+			updateStats(statistics);
+			//Get acumulated packets
+			long num = statistics.getTotalRecvPackets();
 			//Check
-			if (!num.equals(totalPacketCount)) {
+			if (num!=totalPacketCount) {
 				//Update
 				totalPacketCount = num;
 		}  else if (useRTPTimeout) {
@@ -2361,6 +2178,8 @@ public class RTPParticipant extends Participant {
 				//Append to info
 				info.add(callInfo);
 		}
+			//Record call setup time
+			recordInviteTime(true);
 			//Set state before joining
 			setState(State.CONNECTED);
 			//Join it to the conference
@@ -2465,16 +2284,17 @@ public class RTPParticipant extends Participant {
 
 	@Override
 	public void destroy() {
+		try {
+			//Update latest stats from the conference collection
+			updateStats(conf.getParticipantStats(this));
+		} catch (XmlRpcException ex) {
+			//Conference may be already gone, keep previous ones
+			logger.log(Level.FINE, "Could not update participant stats on destroy: {0}", ex.getMessage());
+		}
+
 		try {
 			//Get client
 			XmlRpcMcuClient client = conf.getMCUClient();
-		//Update stats
-		Map<String, MediaStatistics> updated = client.getParticipantStatistics(conf.getId(), partId);
-		//If no error
-		if (updated!=null)
-			//Update latest ones
-			stats = updated;
-	
 			//Delete participant
 			client.DeleteParticipant(conf.getId(), partId);
 		} catch (Exception ex) {
@@ -2512,21 +2332,28 @@ public class RTPParticipant extends Participant {
 		XmlRpcMcuClient client = conf.getMCUClient();
 		//Get conf id
 		Integer confId = conf.getId();
+		//Send all the requests at once
+		XmlRpcMcuClient.Batch batch = client.createBatch();
 
 		//Check audio
 		if (getSendAudioPort()!=0 && rtpDirections.get("audio").isReceving())
 			//Stop sending
-			client.StopSending(confId, partId, MediaType.AUDIO);
+			batch.StopSending(confId, partId, MediaType.AUDIO);
 
 		//Check video
 		if (getSendVideoPort()!=0 && rtpDirections.get("video").isReceving())
 		//Stop sending
-			client.StopSending(confId, partId, MediaType.VIDEO);
+			batch.StopSending(confId, partId, MediaType.VIDEO);
 
 		//Check text
 		if (getSendTextPort()!=0 && rtpDirections.get("text").isReceving())
 		//Stop sending
-			client.StopSending(confId, partId, MediaType.TEXT);
+			batch.StopSending(confId, partId, MediaType.TEXT);
+
+		//Execute
+		batch.execute();
+		//Check errors
+		batch.check();
 	}
 
 	public void startSending() throws XmlRpcException {
@@ -2534,14 +2361,16 @@ public class RTPParticipant extends Participant {
 		XmlRpcMcuClient client = conf.getMCUClient();
 		//Get conf id
 		Integer confId = conf.getId();
+		//Send all the requests at once
+		XmlRpcMcuClient.Batch batch = client.createBatch();
 
 		//Check audio
 		if (getSendAudioPort()!=0 && rtpDirections.get("audio").isReceving())
 		{
 			//Set codec
-			client.SetAudioCodec(confId, partId, getAudioCodec());
+			batch.SetAudioCodec(confId, partId, getAudioCodec());
 			//Send
-			client.StartSending(confId, partId, MediaType.AUDIO, getSendAudioIp(), getSendAudioPort(), getRtpOutMediaMap("audio"));
+			batch.StartSending(confId, partId, MediaType.AUDIO, getSendAudioIp(), getSendAudioPort(), getRtpOutMediaMap("audio"));
 		}
 
 		//Check video
@@ -2560,19 +2389,24 @@ public class RTPParticipant extends Participant {
 					//Add profile level id
 					params.put("h264.profile-level-id", h264profileLevelId.toString());
 			//Set codec
-			client.SetVideoCodec(confId, partId, getVideoCodec(), profile.getVideoSize() , profile.getVideoFPS(), bitrate,profile.getIntraPeriod(),params);
+			batch.SetVideoCodec(confId, partId, getVideoCodec(), profile.getVideoSize() , profile.getVideoFPS(), bitrate,profile.getIntraPeriod(),params);
 			//Send
-			client.StartSending(confId, partId, MediaType.VIDEO, getSendVideoIp(), getSendVideoPort(), getRtpOutMediaMap("video"));
+			batch.StartSending(confId, partId, MediaType.VIDEO, getSendVideoIp(), getSendVideoPort(), getRtpOutMediaMap("video"));
 		}
 
 		//Check text
 		if (getSendTextPort()!=0 && rtpDirections.get("text").isReceving())
 		{
 			//Set codec
-			client.SetTextCodec(confId, partId, getTextCodec());
+			batch.SetTextCodec(confId, partId, getTextCodec());
 			//Send
-			client.StartSending(confId, partId, MediaType.TEXT, getSendTextIp(), getSendTextPort(), getRtpOutMediaMap("text"));
+			batch.StartSending(confId, partId, MediaType.TEXT, getSendTextIp(), getSendTextPort(), getRtpOutMediaMap("text"));
 		}
+
+		//Execute
+		batch.execute();
+		//Check errors
+		batch.check();
 	}
 
 	public void startReceiving() throws XmlRpcException {
@@ -2580,11 +2414,21 @@ public class RTPParticipant extends Participant {
 		XmlRpcMcuClient client = conf.getMCUClient();
 		//Get conf id
 		Integer confId = conf.getId();
+		//Send all the requests at once
+		XmlRpcMcuClient.Batch batch = client.createBatch();
+		//Pending results
+		Call fingerprint = null;
+		Call startAudio = null;
+		Call stopAudio = null;
+		Call startVideo = null;
+		Call stopVideo = null;
+		Call startText = null;
+		Call stopText = null;
 
 	//Check if using DTLS
 	if (useDTLS)
 		//Get fingerprint
-		localFingerprint = client.GetLocalCryptoDTLSFingerprint(localHash);
+		fingerprint = batch.GetLocalCryptoDTLSFingerprint(localHash);
 
 		//If supported
 		if (getAudioSupported())
@@ -2610,18 +2454,16 @@ public class RTPParticipant extends Participant {
 				//Create new ICE Info
 				ICEInfo info = ICEInfo.Generate();
 				//Set them
-				client.SetLocalSTUNCredentials(confId, partId, MediaType.AUDIO, info.ufrag, info.pwd);
+				batch.SetLocalSTUNCredentials(confId, partId, MediaType.AUDIO, info.ufrag, info.pwd);
 				//Add to local info
 				localICEInfo.put("audio", info);
 			}
 			//Get receiving ports
-			recAudioPort = client.StartReceiving(confId, partId, MediaType.AUDIO, getRtpInMediaMap("audio"));
+			startAudio = batch.StartReceiving(confId, partId, MediaType.AUDIO, getRtpInMediaMap("audio"));
 		}
 		} else if (recAudioPort>0) {
 		//Stop it
-		if (client.StopReceiving(confId, partId, MediaType.AUDIO))
-			//Disable port
-			recAudioPort = 0;
+		stopAudio = batch.StopReceiving(confId, partId, MediaType.AUDIO);
 	}
 
 		//If supported
@@ -2648,18 +2490,16 @@ public class RTPParticipant extends Participant {
 				//Create new ICE Info
 				ICEInfo info = ICEInfo.Generate();
 				//Set them
-				client.SetLocalSTUNCredentials(confId, partId, MediaType.VIDEO, info.ufrag, info.pwd);
+				batch.SetLocalSTUNCredentials(confId, partId, MediaType.VIDEO, info.ufrag, info.pwd);
 				//Add to local info
 				localICEInfo.put("video", info);
 			}
 			//Get receiving ports
-			recVideoPort = client.StartReceiving(confId, partId, MediaType.VIDEO, getRtpInMediaMap("video"));
+			startVideo = batch.StartReceiving(confId, partId, MediaType.VIDEO, getRtpInMediaMap("video"));
 		}
 		} else if (recVideoPort>0) {
 		//Stop it
-		if (client.StopReceiving(confId, partId, MediaType.VIDEO))
-			//Disable port
-			recVideoPort = 0;
+		stopVideo = batch.StopReceiving(confId, partId, MediaType.VIDEO);
 	}
 
 		//If supported
@@ -2686,19 +2526,41 @@ public class RTPParticipant extends Participant {
 				//Create new ICE Info
 				ICEInfo info = ICEInfo.Generate();
 				//Set them
-				client.SetLocalSTUNCredentials(confId, partId, MediaType.TEXT, info.ufrag, info.pwd);
+				batch.SetLocalSTUNCredentials(confId, partId, MediaType.TEXT, info.ufrag, info.pwd);
 				//Add to local info
 				localICEInfo.put("text", info);
 			}
 			//Get receiving ports
-			recTextPort = client.StartReceiving(confId, partId, MediaType.TEXT, getRtpInMediaMap("text"));
+			startText = batch.StartReceiving(confId, partId, MediaType.TEXT, getRtpInMediaMap("text"));
 		}
 		} else if (recTextPort>0) {
 		//Stop it
-		if (client.StopReceiving(confId, partId, MediaType.TEXT))
-			//Disable port
+		stopText = batch.StopReceiving(confId, partId, MediaType.TEXT);
+	}
+
+		//Execute
+		batch.execute();
+
+		//If requested
+		if (fingerprint!=null)
+			//Get fingerprint
+			localFingerprint = fingerprint.getString();
+		//Get receiving ports
+		if (startAudio!=null)
+			recAudioPort = startAudio.getInteger();
+		if (startVideo!=null)
+			recVideoPort = startVideo.getInteger();
+		if (startText!=null)
+			recTextPort = startText.getInteger();
+		//Disable stopped ones
+		if (stopAudio!=null && stopAudio.getReturnCode())
+			recAudioPort = 0;
+		if (stopVideo!=null && stopVideo.getReturnCode())
+			recVideoPort = 0;
+		if (stopText!=null && stopText.getReturnCode())
 			recTextPort = 0;
-	}
+		//Check errors
+		batch.check();
 
 		//And ip
 		setRecIp(conf.getRTPIp());
@@ -2745,6 +2607,8 @@ public class RTPParticipant extends Participant {
 		XmlRpcMcuClient client = conf.getMCUClient();
 		//Get conf id
 		Integer confId = conf.getId();
+		//Send all the requests at once
+		XmlRpcMcuClient.Batch batch = client.createBatch();
 
 		//If supported
 		if (getAudioSupported())
@@ -2758,21 +2622,21 @@ public class RTPParticipant extends Participant {
 		//If present
 		if (info!=null)
 			//Set it
-			client.SetRemoteCryptoDTLS(confId, partId,  MediaType.AUDIO, info.getSetup(), info.getHash(), info.getFingerprint());
+			batch.SetRemoteCryptoDTLS(confId, partId,  MediaType.AUDIO, info.getSetup(), info.getHash(), info.getFingerprint());
 		} else {
 		//Get local crypto info
 		CryptoInfo local = localCryptoInfo.get("audio");
 		//If present
 		if (local!=null)
 			//Set it
-			client.SetLocalCryptoSDES(confId, partId, MediaType.AUDIO, local.suite, local.key);
+			batch.SetLocalCryptoSDES(confId, partId, MediaType.AUDIO, local.suite, local.key);
 
 		//Get cryto info
 		CryptoInfo remote = remoteCryptoInfo.get("audio");
 			//If present
 		if (remote!=null)
 				//Set it
-			   client.SetRemoteCryptoSDES(confId, partId, MediaType.AUDIO, remote.suite, remote.key);
+			   batch.SetRemoteCryptoSDES(confId, partId, MediaType.AUDIO, remote.suite, remote.key);
 		}
 
 			//Get ice info
@@ -2780,9 +2644,9 @@ public class RTPParticipant extends Participant {
 			//If present
 			if (ice!=null)
 				//Set it
-			   client.SetRemoteSTUNCredentials(confId, partId, MediaType.AUDIO, ice.ufrag, ice.pwd);
+			   batch.SetRemoteSTUNCredentials(confId, partId, MediaType.AUDIO, ice.ufrag, ice.pwd);
 			//Set RTP properties
-			client.SetRTPProperties(confId, partId, MediaType.AUDIO, rtpMediaProperties.get("audio"));
+			batch.SetRTPProperties(confId, partId, MediaType.AUDIO, rtpMediaProperties.get("audio"));
 		}
 
 		//If supported
@@ -2796,21 +2660,21 @@ public class RTPParticipant extends Participant {
 		//If present
 		if (info!=null)
 			//Set it
-			client.SetRemoteCryptoDTLS(confId, partId,  MediaType.VIDEO, info.getSetup(), info.getHash(), info.getFingerprint());
+			batch.SetRemoteCryptoDTLS(confId, partId,  MediaType.VIDEO, info.getSetup(), info.getHash(), info.getFingerprint());
 		} else {
 		//Get local crypto info
 		CryptoInfo local = localCryptoInfo.get("video");
 		//If present
 		if (local!=null)
 			//Set it
-			client.SetLocalCryptoSDES(confId, partId, MediaType.VIDEO, local.suite, local.key);
+			batch.SetLocalCryptoSDES(confId, partId, MediaType.VIDEO, local.suite, local.key);
 
 		//Get cryto info
 		CryptoInfo remote = remoteCryptoInfo.get("video");
 			//If present
 		if (remote!=null)
 				//Set it
-			   client.SetRemoteCryptoSDES(confId, partId, MediaType.VIDEO, remote.suite, remote.key);
+			   batch.SetRemoteCryptoSDES(confId, partId, MediaType.VIDEO, remote.suite, remote.key);
 		}
 
 						//Get ice info
@@ -2818,9 +2682,9 @@ public class RTPParticipant extends Participant {
 			//If present
 			if (ice!=null)
 				//Set it
-			   client.SetRemoteSTUNCredentials(confId, partId, MediaType.VIDEO, ice.ufrag, ice.pwd);
+			   batch.SetRemoteSTUNCredentials(confId, partId, MediaType.VIDEO, ice.ufrag, ice.pwd);
 			//Set RTP properties
-			client.SetRTPProperties(confId, partId, MediaType.VIDEO, rtpMediaProperties.get("video"));
+			batch.SetRTPProperties(confId, partId, MediaType.VIDEO, rtpMediaProperties.get("video"));
 		}
 
 		//If supported
@@ -2834,30 +2698,35 @@ public class RTPParticipant extends Participant {
 		//If present
 		if (info!=null)
 			//Set it
-			client.SetRemoteCryptoDTLS(confId, partId,  MediaType.TEXT, info.getSetup(), info.getHash(), info.getFingerprint());
+			batch.SetRemoteCryptoDTLS(confId, partId,  MediaType.TEXT, info.getSetup(), info.getHash(), info.getFingerprint());
 		} else {
 		//Get local crypto info
 		CryptoInfo local = localCryptoInfo.get("text");
 		//If present
 		if (local!=null)
 			//Set it
-			client.SetLocalCryptoSDES(confId, partId, MediaType.TEXT, local.suite, local.key);
+			batch.SetLocalCryptoSDES(confId, partId, MediaType.TEXT, local.suite, local.key);
 
 		//Get cryto info
 		CryptoInfo remote = remoteCryptoInfo.get("text");
 			//If present
 		if (remote!=null)
 				//Set it
-			   client.SetRemoteCryptoSDES(confId, partId, MediaType.TEXT, remote.suite, remote.key);
+			   batch.SetRemoteCryptoSDES(confId, partId, MediaType.TEXT, remote.suite, remote.key);
 		}
 			//Get ice info
 			ICEInfo ice = remoteICEInfo.get("text");
 			//If present
 			if (ice!=null)
 				//Set it
-			   client.SetRemoteSTUNCredentials(confId, partId, MediaType.TEXT, ice.ufrag, ice.pwd);
+			   batch.SetRemoteSTUNCredentials(confId, partId, MediaType.TEXT, ice.ufrag, ice.pwd);
 			//Set RTP properties
-			client.SetRTPProperties(confId, partId, MediaType.TEXT, rtpMediaProperties.get("text"));
+			batch.SetRTPProperties(confId, partId, MediaType.TEXT, rtpMediaProperties.get("text"));
 		}
+
+		//Execute
+		batch.execute();
+		//Check errors
+		batch.check();
 	}
 }
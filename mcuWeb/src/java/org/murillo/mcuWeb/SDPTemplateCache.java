@@ -0,0 +1,99 @@
+/*
+ * SDPTemplateCache.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.mcuWeb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.murillo.sdp.Attribute;
+import org.murillo.sdp.BaseAttribute;
+import org.murillo.sdp.MediaDescription;
+
+/**
+ * Cache of the codec related lines of the local media descriptions of a conference.
+ * Participants with the same profile and negotiated codecs share the same formats, rtpmap,
+ * fmtp, rtcp-fb and extmap lines, so they are serialized once and copied into each answer.
+ * @author Sergio Garcia Murillo
+ */
+public class SDPTemplateCache {
+
+    private static final int MAX_TEMPLATES = 64;
+
+    public static class MediaTemplate {
+        private final String[] formats;
+        private final String[] fields;
+        private final String[] values;
+
+        public MediaTemplate(MediaDescription md) {
+            //Get formats
+            formats = md.getFormats().toArray(new String[0]);
+            //Get attributes
+            ArrayList<Attribute> attributes = md.getAttributes();
+            //Create arrays
+            fields = new String[attributes.size()];
+            values = new String[attributes.size()];
+            //Serialize each attribute value once
+            for (int i=0; i<fields.length; i++) {
+                //Store them
+                fields[i] = attributes.get(i).getField();
+                values[i] = attributes.get(i).getValue();
+            }
+        }
+
+        public void apply(MediaDescription md) {
+            //Add formats
+            for (String format : formats)
+                //Add it
+                md.addFormat(format);
+            //Add attributes, new objects so the description can be modified
+            for (int i=0; i<fields.length; i++)
+                //Add it
+                md.addAttribute(new BaseAttribute(fields[i], values[i]));
+        }
+    }
+
+    private final LinkedHashMap<String,MediaTemplate> templates;
+
+    public SDPTemplateCache() {
+        //Create lru map
+        templates = new LinkedHashMap<String, MediaTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaTemplate> eldest) {
+                //Keep only the most used ones
+                return size()>MAX_TEMPLATES;
+            }
+        };
+    }
+
+    public synchronized MediaTemplate get(String key) {
+        return templates.get(key);
+    }
+
+    public synchronized void put(String key,MediaTemplate template) {
+        templates.put(key, template);
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    public synchronized void clear() {
+        templates.clear();
+    }
+}
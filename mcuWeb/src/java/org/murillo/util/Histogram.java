@@ -0,0 +1,93 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.murillo.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations with fixed bucket bounds in seconds.
+ * @author Sergio
+ */
+public class Histogram {
+
+    //Default bounds for request latencies
+    public static final double[] LATENCY_BOUNDS = {0.001,0.0025,0.005,0.01,0.025,0.05,0.1,0.25,0.5,1,2.5,5,10};
+
+    private final double[] bounds;
+    private final long[] limits;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+
+    public Histogram() {
+        this(LATENCY_BOUNDS);
+    }
+
+    public Histogram(double[] bounds) {
+        //Store bounds
+        this.bounds = bounds.clone();
+        //Precalculate them in nanoseconds
+        limits = new long[bounds.length];
+        for (int i=0;i<bounds.length;i++)
+            limits[i] = (long)(bounds[i]*1000000000L);
+        //One more bucket for the values over the last bound
+        buckets = new AtomicLongArray(bounds.length+1);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        //Find bucket
+        while (i<limits.length && nanos>limits[i])
+            i++;
+        //Increase it
+        buckets.incrementAndGet(i);
+        //Update totals
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+    }
+
+    public double[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * Get number of values lower or equal than each bound, plus the total.
+     */
+    public long[] getCumulativeCounts() {
+        long[] counts = new long[buckets.length()];
+        long acu = 0;
+        //For each bucket
+        for (int i=0;i<counts.length;i++)
+            //Accumulate
+            counts[i] = acu += buckets.get(i);
+        //Return them
+        return counts;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get sum of all values in seconds.
+     */
+    public double getSum() {
+        return sum.get()/1000000000.0;
+    }
+
+    /**
+     * Get mean value in milliseconds.
+     */
+    public double getMean() {
+        //Get count
+        long num = count.get();
+        //Avoid division by zero
+        return num>0 ? sum.get()/1000000.0/num : 0;
+    }
+}
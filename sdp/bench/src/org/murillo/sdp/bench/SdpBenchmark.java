@@ -0,0 +1,387 @@
+/*
+ * SdpBenchmark.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.murillo.sdp.Attribute;
+import org.murillo.sdp.MediaDescription;
+import org.murillo.sdp.SessionDescription;
+import org.murillo.sdp.negotiation.Capabilities;
+import org.murillo.sdp.negotiation.CodecTable;
+import org.murillo.sdp.negotiation.Negotiator;
+
+/**
+ * Throughput and allocation benchmarks of the sdp module over a corpus of descriptions.
+ * Each operation runs for a warm up period and then is measured in batches, reporting
+ * the time and the bytes allocated per call.
+ * Usage: SdpBenchmark [-w warmupSeconds] [-t measureSeconds] [-b benchmarkPrefix] files or directories...
+ * @author Sergio Garcia Murillo
+ */
+public class SdpBenchmark {
+
+    public interface Operation {
+        public Object run() throws Exception;
+    }
+
+    //Results are consumed here so the JIT can not remove the calls
+    public static volatile int sink;
+
+    private final long warmup;
+    private final long measure;
+    private final ThreadMXBean threads;
+    private Method allocatedBytes;
+
+    public SdpBenchmark(long warmup,long measure) {
+        //Store times in nanoseconds
+        this.warmup = warmup*1000000000L;
+        this.measure = measure*1000000000L;
+        //Get thread bean
+        threads = ManagementFactory.getThreadMXBean();
+        try {
+            //HotSpot extension to get allocated bytes per thread, by reflection so it runs on any jvm
+            allocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            //Check it works
+            allocatedBytes.invoke(threads, Thread.currentThread().getId());
+        } catch (Exception ex) {
+            //Allocation rate not available in this jvm
+            allocatedBytes = null;
+        }
+    }
+
+    private long getAllocatedBytes() {
+        //If not available
+        if (allocatedBytes==null)
+            //Nothing
+            return 0;
+        try {
+            //Get allocated bytes by this thread
+            return (Long) allocatedBytes.invoke(threads, Thread.currentThread().getId());
+        } catch (Exception ex) {
+            //Nothing
+            return 0;
+        }
+    }
+
+    private static int consume(Object obj) {
+        //Use identity hash, does not depend on the object content
+        return obj!=null ? System.identityHashCode(obj) : 0;
+    }
+
+    private int batch(Operation operation,int calls) throws Exception {
+        int hash = 0;
+        //Run them
+        for (int i=0; i<calls; i++)
+            //Consume result
+            hash ^= consume(operation.run());
+        //Return it
+        return hash;
+    }
+
+    public void run(String name,Operation operation) {
+        try {
+            int calls = 1;
+            //Warm up doubling the batch size until it takes at least 10ms
+            long start = System.nanoTime();
+            while (System.nanoTime()-start<warmup) {
+                //Run batch
+                long batchStart = System.nanoTime();
+                sink ^= batch(operation, calls);
+                //If too short
+                if (System.nanoTime()-batchStart<10000000L)
+                    //Double it
+                    calls *= 2;
+            }
+            long ops = 0;
+            long elapsed = 0;
+            //Get allocated bytes
+            long allocated = getAllocatedBytes();
+            //Measure
+            while (elapsed<measure) {
+                //Run batch
+                long batchStart = System.nanoTime();
+                sink ^= batch(operation, calls);
+                //Add time and ops
+                elapsed += System.nanoTime()-batchStart;
+                ops += calls;
+            }
+            //Get allocated during measurement
+            allocated = getAllocatedBytes()-allocated;
+            //Print it
+            System.out.println(String.format("  %-18s %12.0f ops/s %12.1f ns/op %12s B/op",
+                name,
+                ops*1000000000.0/elapsed,
+                elapsed/(double)ops,
+                allocatedBytes!=null ? String.format("%.0f", allocated/(double)ops) : "n/a"));
+        } catch (Exception ex) {
+            //Not supported for this input
+            System.out.println(String.format("  %-18s failed: %s", name, ex.getMessage()!=null ? ex.getMessage().split("\n")[0] : ex.toString()));
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        //Open file
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            //Read all
+            while ((len=in.read(buffer))>0)
+                //Append it
+                out.write(buffer, 0, len);
+            //Return it
+            return out.toByteArray();
+        } finally {
+            //Close it
+            in.close();
+        }
+    }
+
+    private static SessionDescription build(SessionDescription sdp) {
+        //Create new description with the same values, as the participants do for the local one
+        SessionDescription built = new SessionDescription();
+        //Set session values
+        built.setOrigin(sdp.getOrigin().getUsername(), sdp.getOrigin().getSessId(), sdp.getOrigin().getSessVersion(), "IN", "IP4", "127.0.0.1");
+        built.setSessionName("MediaMixerSession");
+        built.setConnection("IN", "IP4", "127.0.0.1");
+        built.addTime(0, 0);
+        //For each media
+        for (MediaDescription md : sdp.getMedias()) {
+            //Create media
+            MediaDescription media = new MediaDescription(md.getMedia(), md.getPort(), md.getProtoString());
+            //Add formats
+            for (String format : md.getFormats())
+                //Add it
+                media.addFormat(format);
+            //Add attributes
+            for (Attribute attr : md.getAttributes())
+                //As generic ones
+                media.addAttribute(attr.getField(), attr.getValue());
+            //Add it
+            built.addMedia(media);
+        }
+        //Return it
+        return built;
+    }
+
+    private static void access(SessionDescription sdp) {
+        int count = 0;
+        //Read what the participants read when processing an offer
+        for (MediaDescription md : sdp.getMedias()) {
+            //Get formats
+            for (String format : md.getFormats())
+                //Get rtpmap and fmtp
+                if (md.getRTPMap(Integer.parseInt(format))!=null && md.getFormatParameters(Integer.parseInt(format))!=null)
+                    count++;
+            //Get candidates, crypto and fingerprint
+            count += md.getAttributes("candidate").size();
+            count += md.getAttributes("extmap").size();
+            count += md.getAttribute("crypto")!=null ? 1 : 0;
+            count += md.getAttribute("fingerprint")!=null ? 1 : 0;
+        }
+        //Consume
+        sink ^= count;
+    }
+
+    private static Capabilities createCapabilities() {
+        //Codec ids by media and lower case name, same values as the media server ones
+        final HashMap<String,Integer> ids = new HashMap<String, Integer>();
+        ids.put("audio/opus", 98);
+        ids.put("audio/pcmu", 0);
+        ids.put("audio/pcma", 8);
+        ids.put("audio/g722", 9);
+        ids.put("audio/telephone-event", 100);
+        ids.put("video/vp8", 107);
+        ids.put("video/h264", 99);
+        ids.put("video/red", 109);
+        ids.put("video/ulpfec", 108);
+        ids.put("video/rtx", 110);
+        //Create table
+        CodecTable table = new CodecTable(new CodecTable.Resolver() {
+            public int getCodecForName(String media, String name) {
+                //Find it
+                Integer codec = ids.get(media + "/" + name.toLowerCase());
+                //Return it
+                return codec!=null ? codec : -1;
+            }
+        });
+        //Set roles
+        table.setRole("video", 99, CodecTable.H264);
+        table.setRole("video", 110, CodecTable.RTX | CodecTable.REPAIR);
+        table.setRole("video", 109, CodecTable.REPAIR);
+        table.setRole("video", 108, CodecTable.REPAIR);
+        //Extensions
+        HashMap<String,Integer> extensions = new HashMap<String, Integer>();
+        extensions.put("urn:ietf:params:rtp-hdrext:toffset", 2);
+        extensions.put("http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time", 3);
+        //Create capabilities
+        Capabilities capabilities = new Capabilities(table);
+        capabilities.addMedia("audio", Arrays.asList(98, 9, 0, 8, 100), null);
+        capabilities.addMedia("video", Arrays.asList(107, 99, 109, 108, 110), extensions);
+        //Return them
+        return capabilities;
+    }
+
+    private static List<File> getFiles(List<String> paths) {
+        ArrayList<File> files = new ArrayList<File>();
+        //For each path
+        for (String path : paths) {
+            //Get file
+            File file = new File(path);
+            //If it is a directory
+            if (file.isDirectory()) {
+                //Get sdps
+                File[] children = file.listFiles();
+                //Sort them
+                Arrays.sort(children);
+                //Add them
+                for (File child : children)
+                    //If it is an sdp
+                    if (child.getName().endsWith(".sdp"))
+                        //Add it
+                        files.add(child);
+            } else {
+                //Add it
+                files.add(file);
+            }
+        }
+        //Return them
+        return files;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long warmup = 2;
+        long measure = 5;
+        String filter = "";
+        ArrayList<String> paths = new ArrayList<String>();
+        //Parse arguments
+        for (int i=0; i<args.length; i++) {
+            //Check option
+            if (args[i].equals("-w") && i+1<args.length)
+                warmup = Long.parseLong(args[++i]);
+            else if (args[i].equals("-t") && i+1<args.length)
+                measure = Long.parseLong(args[++i]);
+            else if (args[i].equals("-b") && i+1<args.length)
+                filter = args[++i];
+            else
+                paths.add(args[i]);
+        }
+        //Create benchmark
+        SdpBenchmark benchmark = new SdpBenchmark(warmup, measure);
+        //Create negotiation capabilities
+        final Capabilities capabilities = createCapabilities();
+        //For each file
+        for (File file : getFiles(paths)) {
+            //Read it
+            final byte[] bytes = read(file);
+            final String text = new String(bytes, "UTF-8");
+            //Parse it once
+            final SessionDescription sdp = SessionDescription.Parse(bytes);
+            //Create operations
+            LinkedHashMap<String,Operation> operations = new LinkedHashMap<String, Operation>();
+            operations.put("parse-bytes", new Operation() {
+                public Object run() throws Exception {
+                    return SessionDescription.Parse(bytes);
+                }
+            });
+            operations.put("parse-string", new Operation() {
+                public Object run() throws Exception {
+                    return SessionDescription.Parse(text);
+                }
+            });
+            operations.put("parse-strict", new Operation() {
+                public Object run() throws Exception {
+                    return SessionDescription.Parse(text, true);
+                }
+            });
+            operations.put("parse-access", new Operation() {
+                public Object run() throws Exception {
+                    //Parse and decode what is used
+                    SessionDescription parsed = SessionDescription.Parse(bytes);
+                    access(parsed);
+                    return parsed;
+                }
+            });
+            operations.put("negotiate", new Operation() {
+                public Object run() throws Exception {
+                    //Negotiate a freshly parsed offer so lazy attributes are decoded as in a real one
+                    return Negotiator.negotiate(SessionDescription.Parse(bytes), capabilities, false);
+                }
+            });
+            operations.put("build", new Operation() {
+                public Object run() throws Exception {
+                    return build(sdp);
+                }
+            });
+            operations.put("clone", new Operation() {
+                public Object run() throws Exception {
+                    //Deep copy, nothing is left to be copied later
+                    return sdp.clone();
+                }
+            });
+            operations.put("clone-modify", new Operation() {
+                public Object run() throws Exception {
+                    //Clone and change one media
+                    SessionDescription cloned = sdp.clone();
+                    cloned.getMedias().get(0).setPort(0);
+                    return cloned;
+                }
+            });
+            operations.put("serialize-string", new Operation() {
+                public Object run() throws Exception {
+                    return sdp.toString();
+                }
+            });
+            operations.put("serialize-bytes", new Operation() {
+                public Object run() throws Exception {
+                    return sdp.toByteArray();
+                }
+            });
+            //Reused stream, as a message body output would be
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream(bytes.length*2);
+            operations.put("serialize-stream", new Operation() {
+                public Object run() throws Exception {
+                    stream.reset();
+                    sdp.writeTo(stream);
+                    return stream;
+                }
+            });
+            //Print file
+            System.out.println(file.getName() + " (" + bytes.length + " bytes, " + sdp.getMedias().size() + " medias)");
+            //Run them
+            for (Map.Entry<String,Operation> entry : operations.entrySet())
+                //If selected
+                if (entry.getKey().startsWith(filter))
+                    //Run it
+                    benchmark.run(entry.getKey(), entry.getValue());
+        }
+    }
+}
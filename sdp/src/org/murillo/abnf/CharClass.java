@@ -0,0 +1,123 @@
+/*
+ * CharClass.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.abnf;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup table for a set of 8 bit chars, used by the terminal rules instead of
+ * regular expressions and range comparisons.
+ * @author Sergio Garcia Murillo
+ */
+public final class CharClass {
+
+    //ALPHA = %x41-5A / %x61-7A
+    public static final CharClass ALPHA = new CharClass().range(0x41, 0x5A).range(0x61, 0x7A);
+    //token-char = %x21 / %x23-27 / %x2A-2B / %x2D-2E / %x30-39 / %x41-5A / %x5E-7E
+    public static final CharClass TOKEN = new CharClass().range(0x21, 0x21).range(0x23, 0x27).range(0x2A, 0x2B).range(0x2D, 0x2E).range(0x30, 0x39).range(0x41, 0x5A).range(0x5E, 0x7E);
+    //byte-string = 1*(%x01-09/%x0B-0C/%x0E-FF)
+    public static final CharClass BYTE_STRING = new CharClass().range(0x01, 0x09).range(0x0B, 0x0C).range(0x0E, 0xFF);
+
+    //Classes of the numeric terminals by regular expression
+    private static final ConcurrentHashMap<String,CharClass> classes = new ConcurrentHashMap<String, CharClass>();
+
+    private final boolean[] table = new boolean[256];
+
+    private CharClass range(int from,int to) {
+        //Set all chars in range
+        for (int c=from; c<=to; c++)
+            //Set it
+            table[c] = true;
+        //Return this for chaining
+        return this;
+    }
+
+    public boolean contains(char c) {
+        //Only 8 bit chars
+        return c<256 && table[c];
+    }
+
+    /**
+     * Get the end of the run of chars in the class.
+     * @param text text to check
+     * @param index start position
+     * @return index of the first char not in the class or the text length
+     */
+    public int span(String text,int index) {
+        //Get length
+        int len = text.length();
+        //While in the class
+        while (index<len && contains(text.charAt(index)))
+            //Next
+            index++;
+        //Return end
+        return index;
+    }
+
+    /**
+     * Get the char class for a numeric terminal regex, as "[\x30-\x39]" or "[\x0D]".
+     * @param regex regular expression generated for the terminal
+     * @return the char class or null if it is not a single char range
+     */
+    public static CharClass forRegex(String regex) {
+        //Check cache
+        CharClass charClass = classes.get(regex);
+        //If found
+        if (charClass!=null)
+            //Return it
+            return charClass;
+        //Get range values
+        int from;
+        int to;
+        //Depending on the format
+        if (regex.length()==6 && regex.startsWith("[\\x") && regex.endsWith("]")) {
+            //Single char
+            from = to = hex(regex, 3);
+        } else if (regex.length()==11 && regex.startsWith("[\\x") && regex.startsWith("-\\x", 5) && regex.endsWith("]")) {
+            //Range
+            from = hex(regex, 3);
+            to = hex(regex, 8);
+        } else {
+            //Not supported
+            return null;
+        }
+        //Check values
+        if (from<0 || to<0)
+            //Not supported
+            return null;
+        //Create it
+        charClass = new CharClass().range(from, to);
+        //Store it
+        classes.putIfAbsent(regex, charClass);
+        //Return it
+        return charClass;
+    }
+
+    private static int hex(String str,int index) {
+        //Get digits
+        int high = Character.digit(str.charAt(index), 16);
+        int low = Character.digit(str.charAt(index+1), 16);
+        //Check them
+        if (high<0 || low<0)
+            //Error
+            return -1;
+        //Return value
+        return high*16 + low;
+    }
+}
@@ -17,9 +17,14 @@ public class ParserContext
   public final String text;
   public int index;
 
-  private Stack<Integer> startStack = new Stack<Integer>();
-  private Stack<String> callStack = new Stack<String>();
-  private Stack<String> errorStack = new Stack<String>();
+  //Rule call stack, plain arrays so push and pop do not allocate
+  private int[] startStack = new int[64];
+  private String[] callStack = new String[64];
+  private int depth = 0;
+  //Call stack at the farthest failure, only converted to a Stack when requested
+  private String[] errorCalls = new String[64];
+  private int errorDepth = 0;
+  private Stack<String> errorStack = null;
   private int level = 0;
   private int errorIndex = 0;
 
@@ -39,8 +44,18 @@ public class ParserContext
 
   public void push(String rulename, String trace)
   {
-    callStack.push(rulename);
-    startStack.push(new Integer(index));
+    if (depth == callStack.length)
+    {
+      int[] starts = new int[depth * 2];
+      String[] calls = new String[depth * 2];
+      System.arraycopy(startStack, 0, starts, 0, depth);
+      System.arraycopy(callStack, 0, calls, 0, depth);
+      startStack = starts;
+      callStack = calls;
+    }
+    callStack[depth] = rulename;
+    startStack[depth] = index;
+    depth++;
 
     if (traceOn)
     {
@@ -51,8 +66,9 @@ public class ParserContext
 
   public void pop(String function, boolean result)
   {
-    Integer start = startStack.pop();
-    callStack.pop();
+    depth--;
+    int start = startStack[depth];
+    callStack[depth] = null;
 
     if (traceOn)
     {
@@ -70,13 +86,11 @@ public class ParserContext
       if (index > errorIndex)
       {
         errorIndex = index;
-        errorStack = new Stack<String>();
-        errorStack.addAll(callStack);
+        saveErrorCalls();
       }
-      else if (index == errorIndex && errorStack.isEmpty())
+      else if (index == errorIndex && errorDepth == 0)
       {
-        errorStack = new Stack<String>();
-        errorStack.addAll(callStack);
+        saveErrorCalls();
       }
     }
     else
@@ -85,8 +99,23 @@ public class ParserContext
     }
   }
 
+  private void saveErrorCalls()
+  {
+    if (errorCalls.length < depth)
+      errorCalls = new String[callStack.length];
+    System.arraycopy(callStack, 0, errorCalls, 0, depth);
+    errorDepth = depth;
+    errorStack = null;
+  }
+
   public Stack<String> getErrorStack()
   {
+    if (errorStack == null)
+    {
+      errorStack = new Stack<String>();
+      for (int i = 0; i < errorDepth; i++)
+        errorStack.push(errorCalls[i]);
+    }
     return errorStack;
   }
 
@@ -11,10 +11,13 @@
 package org.murillo.abnf;
 
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 public class Terminal$NumericValue extends Rule
 {
+  private static final ConcurrentHashMap<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+
   private Terminal$NumericValue(String spelling, ArrayList<Rule> rules)
   {
     super(spelling, rules);
@@ -26,31 +29,43 @@ public class Terminal$NumericValue extends Rule
     String regex, 
     int length)
   {
-    context.push("NumericValue", spelling + "," + regex);
+    context.push("NumericValue", spelling);
 
-    boolean parsed = true;
+    boolean parsed = false;
 
     Terminal$NumericValue numericValue = null;
-    try
+    int end = context.index + length;
+    if (end <= context.text.length())
     {
-      String value = 
-        context.text.substring(
-          context.index, 
-          context.index + length);
+      CharClass charClass = length == 1 ? CharClass.forRegex(regex) : null;
+      if (charClass != null)
+        parsed = charClass.contains(context.text.charAt(context.index));
+      else
+        parsed = pattern(regex).matcher(context.text.subSequence(context.index, end)).matches();
 
-      if ((parsed = Pattern.matches(regex, value)))
+      if (parsed)
       {
-        context.index += length;
-        numericValue = new Terminal$NumericValue(value, null);
+        numericValue = new Terminal$NumericValue(context.text.substring(context.index, end), null);
+        context.index = end;
       }
     }
-    catch (IndexOutOfBoundsException e) {parsed = false;}
 
     context.pop("NumericValue", parsed);
 
     return numericValue;
   }
 
+  private static Pattern pattern(String regex)
+  {
+    Pattern pattern = patterns.get(regex);
+    if (pattern == null)
+    {
+      pattern = Pattern.compile(regex);
+      patterns.putIfAbsent(regex, pattern);
+    }
+    return pattern;
+  }
+
   public Object accept(Visitor visitor)
   {
     return visitor.visit(this);
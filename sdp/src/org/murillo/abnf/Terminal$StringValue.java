@@ -25,23 +25,17 @@ public class Terminal$StringValue extends Rule
   {
     context.push("StringValue", regex);
 
-    boolean parsed = true;
+    boolean parsed = false;
 
     Terminal$StringValue stringValue = null;
-    try
+    int end = context.index + regex.length();
+    if (end <= context.text.length() &&
+        context.text.regionMatches(true, context.index, regex, 0, regex.length()))
     {
-      String value = 
-        context.text.substring(
-          context.index, 
-          context.index + regex.length());
-
-      if ((parsed = value.equalsIgnoreCase(regex)))
-      {
-        context.index += regex.length();
-        stringValue = new Terminal$StringValue(value, null);
-      }
+      parsed = true;
+      stringValue = new Terminal$StringValue(context.text.substring(context.index, end), null);
+      context.index = end;
     }
-    catch (IndexOutOfBoundsException e) {parsed = false;}
 
     context.pop("StringValue", parsed);
 
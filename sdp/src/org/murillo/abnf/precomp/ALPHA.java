@@ -9,6 +9,7 @@
  */
 package org.murillo.abnf.precomp;
 
+import org.murillo.abnf.CharClass;
 import org.murillo.abnf.ParserContext;
 import org.murillo.abnf.Rule;
 import org.murillo.abnf.Visitor;
@@ -26,12 +27,13 @@ final public class ALPHA extends Rule {
         ALPHA alpha = null;
         boolean parsed = false;
 
-        try
+        //Check end of input
+        if (context.index<context.text.length())
         {
             //Get char
             char c = context.text.charAt(context.index);
             //ALPHA = %x41-5A / %x61-7A
-            if ((c>=0x41 && c<=0x5A) || (c>=0x61 && c<=0x7A))
+            if (CharClass.ALPHA.contains(c))
             {
                 //Parserd
                 parsed = true;
@@ -40,7 +42,6 @@ final public class ALPHA extends Rule {
                 //Increase index
                 context.index++;
             }
-        } catch (IndexOutOfBoundsException e) {
         }
         context.pop("ALPHA", parsed);
 
@@ -9,6 +9,7 @@
  */
 package org.murillo.abnf.precomp;
 
+import org.murillo.abnf.CharClass;
 import org.murillo.abnf.ParserContext;
 import org.murillo.abnf.Rule;
 import org.murillo.abnf.Visitor;
@@ -26,22 +27,9 @@ final public class ByteString extends Rule {
         ByteString token = null;
         boolean parsed = false;
 
-        //Get data
-        int len = context.text.length();
-        int i = context.index;
-
-        //Check
-        while(i<len)
-        {
-            //Get char
-            char c = context.text.charAt(i);
-            //1*(%x01-09/%x0B-0C/%x0E-FF);
-            if ((c>=0x01 && c<=0x09) || (c>=0x0B && c<=0x0C) || (c>=0x0E && c<=0xFF))
-                //Next
-                i++;
-            else
-                break;
-        }
+        //Get end of valid chars
+        //1*(%x01-09/%x0B-0C/%x0E-FF);
+        int i = CharClass.BYTE_STRING.span(context.text, context.index);
 
         //Check
         if (i>context.index)
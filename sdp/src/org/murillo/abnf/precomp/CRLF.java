@@ -23,21 +23,19 @@ final public class CRLF extends Rule {
     public static Rule parse(ParserContext context) {
         context.push("CRLF");
 
-        boolean parsed = true;
+        boolean parsed = false;
 
         CRLF stringValue = null;
-        try {
-            String value =
-                    context.text.substring(
-                    context.index,
-                    context.index + 2);
-
-            if ((parsed = value.equalsIgnoreCase("\r\n"))) {
-                context.index += 2;
-                stringValue = new CRLF(value, null);
-            }
-        } catch (IndexOutOfBoundsException e) {
-            parsed = false;
+        //Get position
+        int i = context.index;
+        //Check end of input and chars
+        if (i+1<context.text.length() && context.text.charAt(i)=='\r' && context.text.charAt(i+1)=='\n') {
+            //Parsed
+            parsed = true;
+            //Increase index
+            context.index += 2;
+            //Create token
+            stringValue = new CRLF("\r\n", null);
         }
 
         context.pop("CRLF", parsed);
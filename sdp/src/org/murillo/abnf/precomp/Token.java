@@ -10,6 +10,7 @@
 package org.murillo.abnf.precomp;
 
 import java.util.ArrayList;
+import org.murillo.abnf.CharClass;
 import org.murillo.abnf.ParserContext;
 import org.murillo.abnf.Rule;
 import org.murillo.abnf.Visitor;
@@ -27,22 +28,9 @@ final public class Token extends Rule {
         Token token = null;
         boolean parsed = false;
 
-        //Get data
-        int len = context.text.length();
-        int i = context.index;
-
-        //Check
-        while(i<len)
-        {
-            //Get char
-            char c = context.text.charAt(i);
-            //token-char = %x21 / %x23-27 / %x2A-2B / %x2D-2E / %x30-39 / %x41-5A / %x5E-7E
-            if (c==0x21 || (c>=0x23 && c<=0x27) || (c>=0x2A && c<=0x2B) || (c>=0x2D && c<=0x2E)  || (c>=0x30 && c<=0x39) || (c>=0x41 && c<=0x5A) || (c>=0x5E && c<=0x7E))
-                //Next
-                i++;
-            else
-                break;
-        }
+        //Get end of valid chars
+        //token-char = %x21 / %x23-27 / %x2A-2B / %x2D-2E / %x30-39 / %x41-5A / %x5E-7E
+        int i = CharClass.TOKEN.span(context.text, context.index);
 
         //Check
         if (i>context.index)
@@ -11,5 +11,9 @@ package org.murillo.sdp;
 public interface Attribute {
     public String getField();
     public String getValue();
+    /**
+     * Append the attribute line, including the trailing CRLF, without creating intermediate strings
+     */
+    public void appendTo(StringBuilder builder);
     public Attribute clone();
 }
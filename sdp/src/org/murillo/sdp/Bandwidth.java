@@ -19,7 +19,17 @@ public class Bandwidth {
 
     @Override
     public String toString() {
-        return "b=" +  type + ":" + bandwidth + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("b=").append(type).append(':').append(bandwidth).append("\r\n");
     }
 
     public Bandwidth(String type, String bandwidth) {
@@ -38,10 +38,24 @@ public class BaseAttribute implements Attribute {
      
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField());
+        //If it has value
+        if (value!=null)
+            //Append it
+            builder.append(':').append(value);
+        //End line
+        builder.append("\r\n");
     }
 
     @Override
@@ -27,10 +27,24 @@ public class CNameAttribute implements Attribute {
     
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField());
+        //If it has value
+        if (cname!=null)
+            //Append it
+            builder.append(':').append(cname);
+        //End line
+        builder.append("\r\n");
     }
         
     @Override
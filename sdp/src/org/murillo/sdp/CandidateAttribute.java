@@ -75,22 +75,43 @@ public class CandidateAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        String value = fundation + " " + componentId + " " + transport + " " + priority + " " + address + " " + port + " typ " + type;
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+        //Mandatory values
+        builder.append(fundation).append(' ').append(componentId).append(' ').append(transport).append(' ').append(priority).append(' ').append(address).append(' ').append(port).append(" typ ").append(type);
         if (relAddr!=null)
-            value += " raddr " + relAddr;
+            builder.append(" raddr ").append(relAddr);
         if (relPort!=null)
-            value += " rport " + relPort;
+            builder.append(" rport ").append(relPort);
         for (Extension ext : extensions)
-            value += " " + ext.name + " " + ext.value;
-        return value;
+            builder.append(' ').append(ext.name).append(' ').append(ext.value);
     }
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     public String getAddress() {
@@ -31,7 +31,17 @@ public class Connection {
     
     @Override
     public String toString() {
-        return "c=" + netType + " " + addrType + " " + address + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("c=").append(netType).append(' ').append(addrType).append(' ').append(address).append("\r\n");
     }
 
     public String getAddrType() {
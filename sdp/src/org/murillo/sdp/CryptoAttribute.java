@@ -103,28 +103,48 @@ public class CryptoAttribute implements Attribute {
 
     @Override
     public String getValue() {
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
         boolean first = true;
-        String value = tag + " " + suite + " ";
+        builder.append(tag).append(' ').append(suite).append(' ');
         for (KeyParam param : keyParams)
         {
             if (first)
                 first = false;
             else
-                value += ";";
-            value += param.method +":"+param.info;
+                builder.append(';');
+            builder.append(param.method).append(':').append(param.info);
 
         }
         if (sessionParams!=null)
-            value += " " + sessionParams;
-        return value;
+            builder.append(' ').append(sessionParams);
     }
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     public ArrayList<KeyParam> getKeyParams() {
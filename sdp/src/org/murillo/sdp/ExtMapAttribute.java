@@ -43,15 +43,41 @@ public class ExtMapAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        return id + (direction!=null ? "/" + direction : "") + " " + name + (attributes!=null ? " " + attributes : "");
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+        builder.append(id);
+        if (direction!=null)
+            builder.append('/').append(direction);
+        builder.append(' ').append(name);
+        if (attributes!=null)
+            builder.append(' ').append(attributes);
     }
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     public String getDirection() {
@@ -53,29 +53,54 @@ public class FormatAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        String string  = "";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+	//Format
+	builder.append(fmt);
+	boolean first = true;
 	//For each parameter
 	for (Map.Entry<String,String> entry : parameters.entrySet())
 	{
 		//Add separator
-	       if (string.isEmpty())
-		   string += " " + entry.getKey();
+	       if (first)
+		   builder.append(' ');
 	       else
-		   string += "; " + entry.getKey();
+		   builder.append("; ");
+	       first = false;
+	       //Add name
+	       builder.append(entry.getKey());
 	       //If got value
 	       if (entry.getValue()!=null)
 		       //Append it
-		       string += "="+entry.getValue();
+		       builder.append('=').append(entry.getValue());
 	}
-	return  fmt + string;
     }
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     public Integer getFmt() {
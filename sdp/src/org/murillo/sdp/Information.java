@@ -27,7 +27,17 @@ public class Information {
 	 
     @Override
     public String toString() {
-        return "i=" + text + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("i=").append(text).append("\r\n");
     }
 
     public String getText() {
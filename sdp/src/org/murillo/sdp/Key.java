@@ -28,7 +28,20 @@ public class Key {
     
     @Override
     public String toString() {
-        return "k=" + (key!=null? key + " " : "" ) + type + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("k=");
+        if (key!=null)
+            builder.append(key).append(' ');
+        builder.append(type).append("\r\n");
     }
 
     public String getKey() {
@@ -0,0 +1,133 @@
+/*
+ * LazyAttribute.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp;
+
+/**
+ * Attribute that keeps the raw line value and is only decoded into its typed
+ * attribute (candidate, ssrc, crypto...) the first time it is accessed.
+ * Once decoded, the typed attribute is the one serialized so changes made to it are kept.
+ * @author Sergio Garcia Murillo
+ */
+public class LazyAttribute implements Attribute {
+
+    public interface Decoder {
+        public Attribute decode(String field,String value) throws Exception;
+    }
+
+    private final String field;
+    private final String value;
+    private final Decoder decoder;
+    private Attribute decoded;
+
+    public LazyAttribute(String field, String value, Decoder decoder) {
+        this.field = field;
+        this.value = value;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Get typed attribute, decoding it if not done yet.
+     * @return the typed attribute or a generic one if the value could not be decoded
+     */
+    public Attribute getAttribute() {
+        //If not decoded yet
+        if (decoded==null) {
+            try {
+                //Decode it
+                decoded = decoder.decode(field, value);
+            } catch (Exception ex) {
+                //Keep it as generic attribute
+            }
+            //If it was not decoded
+            if (decoded==null)
+                //Generic one
+                decoded = new BaseAttribute(field, value);
+        }
+        //Return it
+        return decoded;
+    }
+
+    public boolean isDecoded() {
+        return decoded!=null;
+    }
+
+    /**
+     * Get the attribute as the application sees it.
+     * @param attr attribute stored in a description
+     * @return the typed attribute if it is a lazy one, or the same attribute otherwise
+     */
+    public static Attribute unwrap(Attribute attr) {
+        //If it is a lazy one
+        if (attr instanceof LazyAttribute)
+            //Decode it
+            return ((LazyAttribute)attr).getAttribute();
+        //Already typed
+        return attr;
+    }
+
+    @Override
+    public Attribute clone() {
+        //If already decoded
+        if (decoded!=null)
+            //It may have been modified, so clone the typed one
+            return decoded.clone();
+        //Keep it lazy
+        return new LazyAttribute(field, value, decoder);
+    }
+
+    @Override
+    public String toString() {
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //If decoded
+        if (decoded!=null) {
+            //Serialize typed one
+            decoded.appendTo(builder);
+            //Done
+            return;
+        }
+        //Raw line
+        builder.append("a=").append(field);
+        //If it has value
+        if (value!=null)
+            //Append it
+            builder.append(':').append(value);
+        //End line
+        builder.append("\r\n");
+    }
+
+    @Override
+    public String getField() {
+        return field;
+    }
+
+    @Override
+    public String getValue() {
+        //If decoded get current value, if not the raw one
+        return decoded!=null ? decoded.getValue() : value;
+    }
+}
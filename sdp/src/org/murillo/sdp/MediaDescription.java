@@ -6,6 +6,7 @@
 package org.murillo.sdp;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -25,6 +26,8 @@ public class MediaDescription {
     private ArrayList<Connection> connections;
     private ArrayList<Bandwidth> bandwidths;
     private ArrayList<Attribute> attributes;
+    //Attributes by lower case field name, in the same order as in the list
+    private HashMap<String,ArrayList<Attribute>> index;
     private Key key;
 
     public MediaDescription() {
@@ -34,6 +37,7 @@ public class MediaDescription {
         connections = new ArrayList<Connection>();
         bandwidths = new ArrayList<Bandwidth>();
         attributes = new ArrayList<Attribute>();
+        index = new HashMap<String, ArrayList<Attribute>>();
     }
 
     public MediaDescription(String media, Integer port, String proto) {
@@ -49,75 +53,90 @@ public class MediaDescription {
             this.proto.add(tokenizer.nextToken());
     }
     
+    /**
+     * Get a deep copy of the media, changing one of them does not change the other.
+     */
+    @Override
     public MediaDescription clone() {
-		//Serialize protocol
-		String value = "";
-		boolean first = true;
-		for (String p : proto)
-		{
-		    if (!first)
-			value += "/";
-		    else
-			first = false;
-		    value += p;
-		}
-		//Create new media
-		MediaDescription cloned = new MediaDescription(media, port, value);
-		//For each format
-		for (String format : formats)
-			//Add it
-			cloned.addFormat(format);
-		//For each connection
-		for (Connection connection: connections)
-			//Add it
-			cloned.addConnection(connection.clone());
-		//For each bandwidth
-		for (Bandwidth bandwidth: bandwidths)
-			//Add it
-			cloned.addBandwidth(bandwidth.clone());
-		//For each connection
-		for (Attribute attribute: attributes)
-			//Add it
-			cloned.addAttribute(attribute.clone());
-		
-		//Return cloned one
-		return cloned;
-    }
-	
+        //Copy everything
+        return new MediaDescription(this);
+    }
+
+    private MediaDescription(MediaDescription other) {
+        //Copy values
+        media = other.media;
+        port = other.port;
+        numberOfPorts = other.numberOfPorts;
+        //Copy protocol and formats
+        proto = new ArrayList<String>(other.proto);
+        formats = new ArrayList<String>(other.formats);
+        //Clone data
+        if (other.information!=null)	information = other.information.clone();
+        if (other.key!=null)		key = other.key.clone();
+        //Create arrays with the final size
+        connections = new ArrayList<Connection>(other.connections.size());
+        bandwidths = new ArrayList<Bandwidth>(other.bandwidths.size());
+        attributes = new ArrayList<Attribute>(other.attributes.size());
+        index = new HashMap<String, ArrayList<Attribute>>();
+        //For each connection
+        for (Connection connection: other.connections)
+            //Add it
+            connections.add(connection.clone());
+        //For each bandwidth
+        for (Bandwidth bandwidth: other.bandwidths)
+            //Add it
+            bandwidths.add(bandwidth.clone());
+        //For each attribute
+        for (Attribute attribute: other.attributes)
+            //Add it, undecoded ones keep sharing their text
+            addAttribute(attribute.clone());
+    }
 
     @Override
     public String toString() {
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
         //Create media line
-        String value ="m=" + media + " " + port;
+        builder.append("m=").append(media).append(' ').append(port);
         if (numberOfPorts!=null)
-            value += "/"+numberOfPorts;
-        value +=" ";
+            builder.append('/').append(numberOfPorts);
+        builder.append(' ');
         boolean first = true;
         for (String p : proto)
         {
             if (!first)
-                value += "/";
+                builder.append('/');
             else
                 first = false;
-            value += p;
+            builder.append(p);
         }
         for (String f : formats)
-            value += " " + f;
-        value += "\r\n";
+            builder.append(' ').append(f);
+        builder.append("\r\n");
         //Rest of lines of media
         if (information!=null)
-            value += information;
+            information.appendTo(builder);
         for (Connection c : connections)
-            value += c;
+            c.appendTo(builder);
         for (Bandwidth b : bandwidths)
-            value += b;
+            b.appendTo(builder);
         if (key!=null)
-            value += key;
+            key.appendTo(builder);
         for (Attribute b : attributes)
-            value += b;
-        return value;
+            b.appendTo(builder);
     }
 
+    /**
+     * Get all attributes as stored, decoded attributes are only available through the lookups by name.
+     * Use addAttribute and removeAttribute to modify them so the lookups stay in sync.
+     */
     public ArrayList<Attribute> getAttributes() {
         return attributes;
     }
@@ -182,7 +201,18 @@ public class MediaDescription {
     }
 
     public void addAttribute(Attribute attr) {
+        //Add it
         attributes.add(attr);
+        //Get key
+        String name = attr.getField().toLowerCase();
+        //Get attributes with same name
+        ArrayList<Attribute> list = index.get(name);
+        //If first one
+        if (list==null)
+            //Create it
+            index.put(name, list = new ArrayList<Attribute>(1));
+        //Index it
+        list.add(attr);
     }
 
     public void addBandwidth(Bandwidth bandwidth) {
@@ -230,8 +260,16 @@ public class MediaDescription {
     }
 
     public Map<String,String> getFormatParameters(int fmt) {
+        //Get fmtp attributes
+        ArrayList<Attribute> list = index.get("fmtp");
+        //If none
+        if (list==null)
+            //Not found
+            return null;
         //For each attribute
-        for (Attribute attr : attributes ) {
+        for (Attribute attr : list ) {
+            //Decode it
+            attr = LazyAttribute.unwrap(attr);
             //Check if it is a format attribute
             if (attr instanceof FormatAttribute)
             {
@@ -247,9 +285,17 @@ public class MediaDescription {
     }
 
     public RTPMapAttribute getRTPMap(int fmt) {
+        //Get rtpmap attributes
+        ArrayList<Attribute> list = index.get("rtpmap");
+        //If none
+        if (list==null)
+            //Not found
+            return null;
         //For each attribute
-        for (Attribute attr : attributes )
+        for (Attribute attr : list )
         {
+            //Decode it
+            attr = LazyAttribute.unwrap(attr);
             //Check if it is a format attribute
             if (attr instanceof RTPMapAttribute)
             {
@@ -265,26 +311,28 @@ public class MediaDescription {
     }
 
     public Attribute getAttribute(String key) {
-        //For each attribute
-        for (Attribute attr : attributes )
-            //Check if the one searhced
-            if (attr.getField().equalsIgnoreCase(key))
-                //Found
-                return attr;
-        //Not found
-        return null;
+        //Get attributes with that name
+        ArrayList<Attribute> list = index.get(key.toLowerCase());
+        //If not found
+        if (list==null || list.isEmpty())
+            //Not found
+            return null;
+        //Decode first one
+        return LazyAttribute.unwrap(list.get(0));
     }
 
     public ArrayList<Attribute> getAttributes(String key) {
 	//Create list
 	ArrayList<Attribute> attrs = new ArrayList<Attribute>();
-        //For each attribute
-        for (Attribute attr : attributes )
-            //Check if the one searhced
-            if (attr.getField().equalsIgnoreCase(key))
-                //Found
-                attrs.add(attr);
-        //Not found
+        //Get attributes with that name
+        ArrayList<Attribute> list = index.get(key.toLowerCase());
+        //If found
+        if (list!=null)
+            //For each attribute
+            for (Attribute attr : list )
+                //Decode it
+                attrs.add(LazyAttribute.unwrap(attr));
+        //Return them
         return attrs;
     }
 
@@ -335,18 +383,32 @@ public class MediaDescription {
     }
 
     public boolean hasAttribute(String key) {
-        //For each attribute
-        for (Attribute attr : attributes )
-            //Check if the one searhced
-            if (attr.getField().equalsIgnoreCase(key))
-                //Found
-                return true;
-        //Not found
-        return false;
+        //Get attributes with that name, no need to decode them
+        ArrayList<Attribute> list = index.get(key.toLowerCase());
+        //Check
+        return list!=null && !list.isEmpty();
     }
 
     public void removeAttribute(Attribute attr){
-        //remove attribute
-        attributes.remove(attr);
+        //Get attributes with same name
+        ArrayList<Attribute> list = index.get(attr.getField().toLowerCase());
+        //If not indexed
+        if (list==null) {
+            //remove attribute
+            attributes.remove(attr);
+            //Done
+            return;
+        }
+        //For each one
+        for (Attribute stored : list) {
+            //Check if it is the same one or the decoded version of it
+            if (stored==attr || (stored instanceof LazyAttribute && ((LazyAttribute)stored).isDecoded() && LazyAttribute.unwrap(stored)==attr)) {
+                //remove attribute
+                list.remove(stored);
+                attributes.remove(stored);
+                //Done
+                return;
+            }
+        }
     }
 }
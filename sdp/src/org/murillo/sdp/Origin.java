@@ -38,7 +38,17 @@ public class Origin {
     
     @Override
     public String toString() {
-        return "o=" + username + " " + sessId + " " + sessVersion + " " + nettype + " " + addrtype + " " + address + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("o=").append(username).append(' ').append(sessId).append(' ').append(sessVersion).append(' ').append(nettype).append(' ').append(addrtype).append(' ').append(address).append("\r\n");
     }
 
 
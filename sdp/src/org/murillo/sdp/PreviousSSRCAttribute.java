@@ -33,10 +33,26 @@ public class PreviousSSRCAttribute implements Attribute {
   
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField());
+        //If it has value
+        if (!SSRCs.isEmpty()) {
+            //Append it without building it first
+            builder.append(':');
+            appendValue(builder);
+        }
+        //End line
+        builder.append("\r\n");
     }
 
     @Override
@@ -46,13 +62,27 @@ public class PreviousSSRCAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        String value = null;
+        //No value if empty
+        if (SSRCs.isEmpty())
+            return null;
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+        boolean first = true;
         for (String SSRC : SSRCs)
-            if (value==null)
-                value = SSRC;
+        {
+            if (first)
+                first = false;
             else
-                value += " " + SSRC;
-        return value;
+                builder.append(' ');
+            builder.append(SSRC);
+        }
     }
 
     public void addSSRC(String SSRC) {
@@ -44,15 +44,38 @@ public class RTPMapAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        return format.toString() + " " + name + "/" + rate + (parameters!=null ? "/" + parameters : "" );
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+        builder.append(format).append(' ').append(name).append('/').append(rate);
+        if (parameters!=null)
+            builder.append('/').append(parameters);
     }
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     public Integer getFormat() {
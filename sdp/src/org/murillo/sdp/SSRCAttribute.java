@@ -32,10 +32,22 @@ public class SSRCAttribute implements Attribute {
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     @Override
@@ -45,7 +57,18 @@ public class SSRCAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        return SSRC + " " + attrField + (attrValue!=null ? ":" + attrValue: "");
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+        builder.append(SSRC).append(' ').append(attrField);
+        if (attrValue!=null)
+            builder.append(':').append(attrValue);
     }
 
     public Long getSSRC() {
@@ -39,10 +39,22 @@ public class SSRCGroupAttribute implements Attribute {
 
     @Override
     public String toString() {
-        //Get value
-        String value = getValue();
-        //Generic attr
-        return "a="+ getField() + (value!=null ? ":" + value : "") + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+        //Append field
+        builder.append("a=").append(getField()).append(':');
+        //Append value without building it first
+        appendValue(builder);
+        //End line
+        builder.append("\r\n");
     }
 
     @Override
@@ -52,10 +64,18 @@ public class SSRCGroupAttribute implements Attribute {
 
     @Override
     public String getValue() {
-        String value = semantics;
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize value
+        appendValue(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder) {
+        builder.append(semantics);
         for (String id : SSRCIds)
-            value += " " + id;
-        return value;
+            builder.append(' ').append(id);
     }
 
     public ArrayList<String> getSSRCIds() {
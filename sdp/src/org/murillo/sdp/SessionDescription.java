@@ -4,22 +4,46 @@
  */
 package org.murillo.sdp;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Stack;
 import org.murillo.abnf.ParserContext;
 import org.murillo.abnf.ParserException;
 import org.murillo.abnf.Rule$session_description;
 import org.murillo.sdp.impl.SessionDescriptionBuilder;
+import org.murillo.sdp.impl.SessionDescriptionParser;
 /**
  *
  * @author Sergio
  */
 public class SessionDescription {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     static public SessionDescription Parse(byte[] body) throws IllegalArgumentException, ParserException
     {
-        return Parse(new String(body));
+        //Parse bytes directly
+        return Parse(body, 0, body.length);
+    }
+
+    static public SessionDescription Parse(byte[] body,int offset,int length) throws IllegalArgumentException, ParserException
+    {
+        //Parse bytes directly without decoding the whole body
+        return new SessionDescriptionParser().parse(body, offset, length);
+    }
+
+    static public SessionDescription Parse(ByteBuffer body) throws IllegalArgumentException, ParserException
+    {
+        //Parse buffer content directly
+        return new SessionDescriptionParser().parse(body);
     }
     
     static public SessionDescription Clone(SessionDescription sdp) {
@@ -28,6 +52,22 @@ public class SessionDescription {
     
     static public SessionDescription Parse(String string) throws IllegalArgumentException, ParserException
     {
+        //Use the single pass parser
+        return Parse(string, false);
+    }
+
+    /**
+     * Parse SDP
+     * @param string sdp text
+     * @param strict validate it against the ABNF grammar instead of using the single pass parser
+     */
+    static public SessionDescription Parse(String string,boolean strict) throws IllegalArgumentException, ParserException
+    {
+        //If not strict
+        if (!strict)
+            //Parse lines directly into the objects
+            return new SessionDescriptionParser().parse(string);
+        //Parse with the ABNF grammar
        ParserContext context = new ParserContext(string, false);
 
         Rule$session_description rule = Rule$session_description.parse(context);
@@ -80,6 +120,8 @@ public class SessionDescription {
     private Connection connection;
     private ArrayList<Bandwidth> bandwidths;
     private ArrayList<Attribute> attributes;
+    //Attributes by lower case field name, in the same order as in the list
+    private HashMap<String,ArrayList<Attribute>> index;
     private Key key;
     private ArrayList<Time> times;
     private ArrayList<MediaDescription> medias;
@@ -92,94 +134,199 @@ public class SessionDescription {
         phones = new ArrayList<String>();
         bandwidths = new ArrayList<Bandwidth>();
         attributes = new ArrayList<Attribute>();
+        index = new HashMap<String, ArrayList<Attribute>>();
         times = new ArrayList<Time>();
         medias = new ArrayList<MediaDescription>();
     }
     
+    private SessionDescription(SessionDescription other) {
+        //Copy values
+        version = other.version;
+        uri = other.uri;
+        //Clone data
+        if (other.origin!=null)		origin = other.origin.clone();
+        if (other.sessionName!=null)	sessionName = other.sessionName.clone();
+        if (other.information!=null)	information = other.information.clone();
+        if (other.connection!=null)	connection = other.connection.clone();
+        if (other.key!=null)		key = other.key.clone();
+        //Copy emails and phones
+        emails = new ArrayList<String>(other.emails);
+        phones = new ArrayList<String>(other.phones);
+        //Create arrays with the final size
+        bandwidths = new ArrayList<Bandwidth>(other.bandwidths.size());
+        attributes = new ArrayList<Attribute>(other.attributes.size());
+        index = new HashMap<String, ArrayList<Attribute>>();
+        times = new ArrayList<Time>(other.times.size());
+        medias = new ArrayList<MediaDescription>(other.medias.size());
+        //For each bandwidth
+        for (Bandwidth bandwidth: other.bandwidths)
+            //Add it
+            bandwidths.add(bandwidth.clone());
+        //For each attribute
+        for (Attribute attribute: other.attributes)
+            //Add it, undecoded ones keep sharing their text
+            addAttribute(attribute.clone());
+        //For each time
+        for (Time time: other.times)
+            //Add it
+            times.add(time.clone());
+        //For each media
+        for (MediaDescription media: other.medias)
+            //Add it
+            medias.add(media.clone());
+    }
+
     public String getA() {return "a";}
 
+    /**
+     * Get a deep copy of the description, changing one of them does not change the other.
+     */
     @Override
     public SessionDescription clone() {
-	//Create clone
-	SessionDescription cloned = new SessionDescription();
-	//Clone data
-	cloned.setVersion(version);
-	if (origin!=null)	cloned.setOrigin(origin.clone());
-	if (sessionName!=null)	cloned.setSessionName(sessionName.clone());
-	if (information!=null)	cloned.setInformation(information.clone());
-	if (connection!=null)	cloned.setConnection(connection.clone());
-	if (key!=null)		cloned.setKey(key.clone());
-	//For each email
-	for (String email: emails)
-	    //Add it
-	    cloned.addEmail(email);
-	//For each phone
-	for (String phone: phones)
-	    //Add it
-	    cloned.addPhone(phone);
-	//For each bandwidth
-	for (Bandwidth bandwidth: bandwidths)
-		//Add it
-		cloned.addBandwidth(bandwidth.clone());
-	//For each connection
-	for (Attribute attribute: attributes)
-		//Add it
-		cloned.addAttribute(attribute.clone());
-	//For each connection
-	for (Attribute attribute: attributes)
-		//Add it
-		cloned.addAttribute(attribute.clone());
-	//For each time
-	for (Time time: times)
-		//Add it
-		cloned.addTime(time.clone());
-	//For each media
-	for (MediaDescription media: medias)
-		//Add it
-		cloned.addMedia(media.clone());
-	//return it
-	return cloned;
+        //Copy everything
+        return new SessionDescription(this);
     }
     
     @Override
     public String toString() {
-        String sdp = "v="+version+"\r\n";
-        sdp+=origin.toString();
-        sdp+=sessionName.toString();
+        //Create builder big enough for a typical description
+        StringBuilder builder = new StringBuilder(1024);
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    /**
+     * Serialize the whole description into the builder, it can be reused between calls.
+     * @param builder builder to append to
+     */
+    public void appendTo(StringBuilder builder) {
+        builder.append("v=").append(version).append("\r\n");
+        origin.appendTo(builder);
+        sessionName.appendTo(builder);
         if (uri!=null)
-            sdp+="u="+uri.toString();
+            builder.append("u=").append(uri.toString()).append("\r\n");
         for (String email:emails)
-            sdp+="e="+email+"\r\n";
+            builder.append("e=").append(email).append("\r\n");
         for (String phone:phones)
-            sdp+="p="+phone+"\r\n";
+            builder.append("p=").append(phone).append("\r\n");
         if (connection!=null)
-            sdp+=connection.toString();
+            connection.appendTo(builder);
         for (Time time:times)
-            sdp+=time.toString();
+            time.appendTo(builder);
         for (Attribute attr:attributes)
-            sdp+=attr.toString();
+            attr.appendTo(builder);
         for (MediaDescription media:medias)
-            sdp+=media.toString();
-        return sdp;
+            media.appendTo(builder);
+    }
+
+    /**
+     * Serialize the description as UTF-8 bytes, ready to be set as message body.
+     */
+    public byte[] toByteArray() {
+        //Create builder big enough for a typical description
+        StringBuilder builder = new StringBuilder(1024);
+        //Serialize it
+        appendTo(builder);
+        //Encode it
+        return builder.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Serialize the description as UTF-8 into the stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        //Create builder big enough for a typical description
+        StringBuilder builder = new StringBuilder(1024);
+        //Serialize it
+        appendTo(builder);
+        //Get length
+        int length = builder.length();
+        //Chars encoded at a time
+        int size = Math.min(Math.max(length,1), 2048);
+        //Create encoder
+        CharsetEncoder encoder = UTF8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        //Create buffers, a char never takes more than 3 bytes
+        CharBuffer chars = CharBuffer.allocate(size);
+        ByteBuffer bytes = ByteBuffer.allocate(size*3);
+        int i = 0;
+        //Encode it into the stream in chunks
+        while (true) {
+            //Get how many chars fit
+            int len = Math.min(chars.remaining(), length-i);
+            //Copy them after the ones left from previous chunk
+            builder.getChars(i, i+len, chars.array(), chars.position());
+            chars.position(chars.position()+len);
+            i += len;
+            //Encode
+            chars.flip();
+            encoder.encode(chars, bytes, i==length);
+            //Keep a split surrogate pair for next chunk
+            chars.compact();
+            //If all done
+            if (i==length)
+                //Flush encoder
+                encoder.flush(bytes);
+            //Write bytes
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+            //Check if finished
+            if (i==length)
+                break;
+        }
     }
 
+    /**
+     * Get all attributes as stored, decoded attributes are only available through the lookups by name.
+     * Use addAttribute or setAttributes to modify them so the lookups stay in sync.
+     */
     public ArrayList<Attribute> getAttributes() {
         return attributes;
     }
     
     public Attribute getAttribute(String key) {
-        //For each attribute
-        for (Attribute attr : attributes )
-            //Check if the one searhced
-            if (attr.getField().equalsIgnoreCase(key))
-                //Found
-                return attr;
-        //Not found
-        return null;
+        //Get attributes with that name
+        ArrayList<Attribute> list = index.get(key.toLowerCase());
+        //If not found
+        if (list==null || list.isEmpty())
+            //Not found
+            return null;
+        //Decode first one
+        return LazyAttribute.unwrap(list.get(0));
+    }
+
+    public ArrayList<Attribute> getAttributes(String key) {
+        //Create list
+        ArrayList<Attribute> attrs = new ArrayList<Attribute>();
+        //Get attributes with that name
+        ArrayList<Attribute> list = index.get(key.toLowerCase());
+        //If found
+        if (list!=null)
+            //For each attribute
+            for (Attribute attr : list )
+                //Decode it
+                attrs.add(LazyAttribute.unwrap(attr));
+        //Return them
+        return attrs;
+    }
+
+    public boolean hasAttribute(String key) {
+        //Get attributes with that name, no need to decode them
+        ArrayList<Attribute> list = index.get(key.toLowerCase());
+        //Check
+        return list!=null && !list.isEmpty();
     }
 
     public void setAttributes(ArrayList<Attribute> attributes) {
-        this.attributes = attributes;
+        //Clear index
+        index.clear();
+        //Set new list
+        this.attributes = new ArrayList<Attribute>(attributes.size());
+        //For each one
+        for (Attribute attr : attributes)
+            //Add and index it
+            addAttribute(attr);
     }
 
     public Connection getConnection() {
@@ -303,7 +450,18 @@ public class SessionDescription {
     }
 
     public void addAttribute(Attribute attr) {
+        //Add it
         attributes.add(attr);
+        //Get key
+        String name = attr.getField().toLowerCase();
+        //Get attributes with same name
+        ArrayList<Attribute> list = index.get(name);
+        //If first one
+        if (list==null)
+            //Create it
+            index.put(name, list = new ArrayList<Attribute>(1));
+        //Index it
+        list.add(attr);
     }
 
     public ArrayList<Bandwidth> getBandwidths() {
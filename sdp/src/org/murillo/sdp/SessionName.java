@@ -27,7 +27,17 @@ public class SessionName {
 
     @Override
     public String toString() {
-        return "s=" + name + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("s=").append(name).append("\r\n");
     }
 
     public String getName() {
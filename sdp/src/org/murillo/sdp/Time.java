@@ -30,7 +30,17 @@ public class Time {
 
     @Override
     public String toString() {
-        return "t=" + start.toString() + " " + stop.toString() + "\r\n";
+        //Create builder
+        StringBuilder builder = new StringBuilder();
+        //Serialize it
+        appendTo(builder);
+        //Return it
+        return builder.toString();
+    }
+
+    public void appendTo(StringBuilder builder) {
+        //Append line
+        builder.append("t=").append(start.toString()).append(' ').append(stop.toString()).append("\r\n");
     }
 
     public Integer getStart() {
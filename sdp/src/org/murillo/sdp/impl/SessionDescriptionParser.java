@@ -0,0 +1,693 @@
+/*
+ * SessionDescriptionParser.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp.impl;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Stack;
+import org.murillo.abnf.ParserException;
+import org.murillo.sdp.Attribute;
+import org.murillo.sdp.Bandwidth;
+import org.murillo.sdp.BaseAttribute;
+import org.murillo.sdp.CNameAttribute;
+import org.murillo.sdp.CandidateAttribute;
+import org.murillo.sdp.Connection;
+import org.murillo.sdp.CryptoAttribute;
+import org.murillo.sdp.ExtMapAttribute;
+import org.murillo.sdp.FingerprintAttribute;
+import org.murillo.sdp.FormatAttribute;
+import org.murillo.sdp.GroupAttribute;
+import org.murillo.sdp.Information;
+import org.murillo.sdp.Key;
+import org.murillo.sdp.LazyAttribute;
+import org.murillo.sdp.MediaDescription;
+import org.murillo.sdp.MidAttribute;
+import org.murillo.sdp.Origin;
+import org.murillo.sdp.PreviousSSRCAttribute;
+import org.murillo.sdp.RTPMapAttribute;
+import org.murillo.sdp.SSRCAttribute;
+import org.murillo.sdp.SSRCGroupAttribute;
+import org.murillo.sdp.SessionDescription;
+import org.murillo.sdp.SessionName;
+import org.murillo.sdp.Time;
+
+/**
+ * Line oriented single pass SDP parser.
+ * It fills the session description objects directly while reading each line, without building
+ * the ABNF rule tree. It is lenient: unknown lines are skipped and malformed attributes are kept
+ * as generic ones. Typed attributes are kept as raw values and only decoded when accessed.
+ * Use the ABNF parser when strict validation is needed.
+ * @author Sergio Garcia Murillo
+ */
+public class SessionDescriptionParser {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //Attributes with a typed representation
+    private static final HashSet<String> TYPED = new HashSet<String>(Arrays.asList(
+        "candidate", "ssrc", "rtpmap", "fmtp", "crypto", "mid", "extmap",
+        "fingerprint", "group", "ssrc-group", "cname", "previous-ssrc"
+    ));
+
+    //Decodes lazy attributes on first access
+    private static final LazyAttribute.Decoder DECODER = new LazyAttribute.Decoder() {
+        public Attribute decode(String field, String value) throws Exception {
+            //Use a new parser, the one that created the attribute may be gone or in use
+            return new SessionDescriptionParser().decode(field, value);
+        }
+    };
+
+    //Input, either text or raw bytes
+    private String text;
+    private byte[] data;
+    private int offset;
+    private int limit;
+    //Current position and end of current line
+    private int pos;
+    private int end;
+
+    public SessionDescription parse(String text) throws ParserException
+    {
+        //Store text
+        this.text = text;
+        this.data = null;
+        this.offset = 0;
+        //Parse all
+        return parse(0, text.length());
+    }
+
+    public SessionDescription parse(byte[] data,int offset,int length) throws ParserException
+    {
+        //Store bytes, they are only decoded for the values we keep
+        this.text = null;
+        this.data = data;
+        this.offset = offset;
+        //Parse all
+        return parse(offset, offset+length);
+    }
+
+    public SessionDescription parse(ByteBuffer buffer) throws ParserException
+    {
+        //If it is backed by an array
+        if (buffer.hasArray())
+            //Parse it in place
+            return parse(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
+        //Copy it
+        byte[] bytes = new byte[buffer.remaining()];
+        //Without moving the buffer position
+        buffer.duplicate().get(bytes);
+        //Parse it
+        return parse(bytes, 0, bytes.length);
+    }
+
+    private SessionDescription parse(int start,int limit) throws ParserException
+    {
+        //Create description
+        SessionDescription sdp = new SessionDescription();
+        //Current media
+        MediaDescription media = null;
+        //Store input end for error reporting
+        this.limit = limit;
+        //Mandatory lines
+        boolean version = false;
+        //For each line
+        while (start<limit)
+        {
+            //Find end of line
+            int next = start;
+            //Until line break
+            while (next<limit && at(next)!='\n')
+                //Next
+                next++;
+            //Set line limits
+            pos = start;
+            end = next;
+            //Skip \r
+            if (end>pos && at(end-1)=='\r')
+                //Remove it
+                end--;
+            //Move to next line
+            start = next+1;
+            //Skip empty lines
+            if (pos==end)
+                //Next
+                continue;
+            //Check line format
+            if (end-pos<2 || at(pos+1)!='=')
+                //Error
+                throw error("wrong line format", pos);
+            //Get type
+            char type = at(pos);
+            //Skip type and =
+            pos += 2;
+            try {
+                //Depending on the type
+                switch (type)
+                {
+                    case 'v':
+                        //Set version
+                        sdp.setVersion(integer());
+                        //Found
+                        version = true;
+                        break;
+                    case 'o':
+                        //Set origin
+                        sdp.setOrigin(origin());
+                        break;
+                    case 's':
+                        //Set session name
+                        sdp.setSessionName(new SessionName(rest()));
+                        break;
+                    case 'i':
+                        //Create information
+                        Information information = new Information(rest());
+                        //Set it to the current level
+                        if (media!=null)
+                            media.setInformation(information);
+                        else
+                            sdp.setInformation(information);
+                        break;
+                    case 'u':
+                        try {
+                            //Set uri
+                            sdp.setUri(new URI(rest()));
+                        } catch (URISyntaxException ex) {
+                            //Ignore it as the builder does
+                        }
+                        break;
+                    case 'e':
+                        //Add email
+                        sdp.addEmail(rest());
+                        break;
+                    case 'p':
+                        //Add phone
+                        sdp.addPhone(rest());
+                        break;
+                    case 'c':
+                        //Get connection
+                        Connection connection = new Connection(token(), token(), token());
+                        //Set it to the current level
+                        if (media!=null)
+                            media.addConnection(connection);
+                        else
+                            sdp.setConnection(connection);
+                        break;
+                    case 'b':
+                        //Get bandwidth
+                        Bandwidth bandwidth = new Bandwidth(until(':'), rest());
+                        //Set it to the current level
+                        if (media!=null)
+                            media.addBandwidth(bandwidth);
+                        else
+                            sdp.addBandwidth(bandwidth);
+                        break;
+                    case 't':
+                        //Add time
+                        sdp.addTime(new Time(integer(), integer()));
+                        break;
+                    case 'k':
+                        //Get key
+                        Key key = key();
+                        //Set it to the current level
+                        if (media!=null)
+                            media.setKey(key);
+                        else
+                            sdp.setKey(key);
+                        break;
+                    case 'a':
+                        //Get attribute
+                        Attribute attr = attribute();
+                        //Set it to the current level
+                        if (media!=null)
+                            media.addAttribute(attr);
+                        else
+                            sdp.addAttribute(attr);
+                        break;
+                    case 'm':
+                        //Create new media
+                        media = media();
+                        //Add it
+                        sdp.addMedia(media);
+                        break;
+                    default:
+                        //Repeat times, zone adjustments and unknown lines are skipped
+                        break;
+                }
+            } catch (ParserException ex) {
+                //Rethrow
+                throw ex;
+            } catch (RuntimeException ex) {
+                //Wrong value, do not chain it as ParserException expects causes of its own type
+                throw error("wrong '" + type + "' line: " + ex, pos);
+            }
+        }
+        //Check mandatory fields
+        if (!version)
+            //Error
+            throw error("version line not found", offset);
+        if (sdp.getOrigin()==null)
+            //Error
+            throw error("origin line not found", offset);
+        if (sdp.getSessionName()==null)
+            //Error
+            throw error("session name line not found", offset);
+        //Release input
+        this.text = null;
+        this.data = null;
+        //Return it
+        return sdp;
+    }
+
+    private ParserException error(String reason,int index)
+    {
+        //If parsing bytes
+        if (data!=null)
+            //Only now decode the parsed input for the error message
+            return new ParserException(reason, new String(data, offset, limit-offset, UTF8), index-offset, new Stack<String>());
+        //Create exception
+        return new ParserException(reason, text, index, new Stack<String>());
+    }
+
+    private char at(int i)
+    {
+        //SDP structure is ASCII, any other byte is only part of free text values
+        return data!=null ? (char)(data[i] & 0xFF) : text.charAt(i);
+    }
+
+    private String string(int start,int end)
+    {
+        //If parsing bytes
+        if (data!=null)
+            //Decode only this value
+            return new String(data, start, end-start, UTF8);
+        //Get substring
+        return text.substring(start, end);
+    }
+
+    private void skipSpaces()
+    {
+        //Skip spaces and tabs
+        while (pos<end && (at(pos)==' ' || at(pos)=='\t'))
+            //Next
+            pos++;
+    }
+
+    private boolean hasMore()
+    {
+        //Skip separator
+        skipSpaces();
+        //Check if anything is left
+        return pos<end;
+    }
+
+    private String token() throws ParserException
+    {
+        //Skip separator
+        skipSpaces();
+        //Start of token
+        int start = pos;
+        //Until space or end of line
+        while (pos<end && at(pos)!=' ' && at(pos)!='\t')
+            //Next
+            pos++;
+        //Check we got something
+        if (start==pos)
+            //Error
+            throw error("token expected", pos);
+        //Return it
+        return string(start, pos);
+    }
+
+    private String until(char delimiter) throws ParserException
+    {
+        //Start of token
+        int start = pos;
+        //Until delimiter, space or end of line
+        while (pos<end && at(pos)!=delimiter && at(pos)!=' ')
+            //Next
+            pos++;
+        //Check we got something
+        if (start==pos)
+            //Error
+            throw error("token expected", pos);
+        //Get token
+        String token = string(start, pos);
+        //Skip delimiter
+        if (pos<end && at(pos)==delimiter)
+            //Skip it
+            pos++;
+        //Return it
+        return token;
+    }
+
+    private String rest()
+    {
+        //Get rest of the line
+        String rest = string(pos, end);
+        //Consume it
+        pos = end;
+        //Return it
+        return rest;
+    }
+
+    private int integer() throws ParserException
+    {
+        //Skip separator
+        skipSpaces();
+        //Start of number
+        int start = pos;
+        long value = 0;
+        //While digits
+        while (pos<end && at(pos)>='0' && at(pos)<='9')
+        {
+            //Add digit
+            value = value*10 + (at(pos++)-'0');
+            //Check overflow
+            if (value>Integer.MAX_VALUE)
+                //Error
+                throw error("number too big", start);
+        }
+        //Check we got something
+        if (start==pos)
+            //Error
+            throw error("number expected", pos);
+        //Return it
+        return (int)value;
+    }
+
+    private Origin origin() throws ParserException
+    {
+        //Get values
+        String username = token();
+        Long sessId = Long.parseLong(token());
+        Long sessVersion = Long.parseLong(token());
+        //Create origin
+        return new Origin(username, sessId, sessVersion, token(), token(), token());
+    }
+
+    private Key key() throws ParserException
+    {
+        //Find method delimiter
+        int i = pos;
+        //Until : or end of line
+        while (i<end && at(i)!=':')
+            //Next
+            i++;
+        //If not found
+        if (i==end)
+            //prompt
+            return new Key(rest(), null);
+        //Get type
+        String type = string(pos, i);
+        //Skip it
+        pos = i+1;
+        //Create key
+        return new Key(type, rest());
+    }
+
+    private MediaDescription media() throws ParserException
+    {
+        //Create media
+        MediaDescription media = new MediaDescription();
+        //Set media name
+        media.setMedia(token());
+        //Set port
+        media.setPort(integer());
+        //If it has number of ports
+        if (pos<end && at(pos)=='/')
+        {
+            //Skip it
+            pos++;
+            //Set number of ports
+            media.setNumberOfPorts(integer());
+        }
+        //Set protocol
+        media.setProtoString(token());
+        //Add formats
+        while (hasMore())
+            //Add it
+            media.addFormat(token());
+        //Return it
+        return media;
+    }
+
+    private Attribute attribute() throws ParserException
+    {
+        //Start of attribute
+        int start = pos;
+        //Find field end
+        while (pos<end && at(pos)!=':')
+            //Next
+            pos++;
+        //Get field
+        String field = string(start, pos);
+        //If no value
+        if (pos==end)
+            //Flag attribute
+            return new BaseAttribute(field);
+        //Skip :
+        pos++;
+        //If it has a typed representation
+        if (TYPED.contains(field))
+            //Decode it only when accessed
+            return new LazyAttribute(field, rest(), DECODER);
+        //Generic one
+        return new BaseAttribute(field, rest());
+    }
+
+    private Attribute decode(String field,String value) throws ParserException
+    {
+        //Set attribute value as input
+        this.text = value;
+        this.data = null;
+        this.pos = 0;
+        this.end = value.length();
+        //Decode it
+        return typed(field);
+    }
+
+    private Attribute typed(String field) throws ParserException
+    {
+        //Depending on the field
+        if (field.equals("candidate"))
+            return candidate();
+        else if (field.equals("ssrc"))
+            return ssrc();
+        else if (field.equals("rtpmap"))
+            return rtpmap();
+        else if (field.equals("fmtp"))
+            return fmtp();
+        else if (field.equals("crypto"))
+            return crypto();
+        else if (field.equals("mid"))
+            return new MidAttribute(token());
+        else if (field.equals("extmap"))
+            return extmap();
+        else if (field.equals("fingerprint"))
+            return new FingerprintAttribute(token(), token());
+        else if (field.equals("group"))
+            return group();
+        else if (field.equals("ssrc-group"))
+            return ssrcGroup();
+        else if (field.equals("cname"))
+            return new CNameAttribute(rest());
+        else if (field.equals("previous-ssrc"))
+            return previousSSRC();
+        //Unknown
+        return null;
+    }
+
+    private CandidateAttribute candidate() throws ParserException
+    {
+        //Get mandatory values
+        String foundation = token();
+        Integer componentId = integer();
+        String transport = token();
+        Integer priority = Integer.parseInt(token());
+        String address = token();
+        Integer port = integer();
+        //Check type
+        if (!"typ".equals(token()))
+            //Error
+            throw error("candidate type expected", pos);
+        //Create candidate
+        CandidateAttribute candidate = new CandidateAttribute(foundation, componentId, transport, priority, address, port, token());
+        //Parse optional values
+        while (hasMore())
+        {
+            //Get name
+            String name = token();
+            //Check it
+            if (name.equals("raddr"))
+                //Set related address
+                candidate.setRelAddr(token());
+            else if (name.equals("rport"))
+                //Set related port
+                candidate.setRelPort(integer());
+            else
+                //Add extension
+                candidate.addExtension(name, token());
+        }
+        //Return it
+        return candidate;
+    }
+
+    private SSRCAttribute ssrc() throws ParserException
+    {
+        //Get ssrc
+        Long ssrc = Long.parseLong(token());
+        //Skip separator
+        skipSpaces();
+        //Get attribute field
+        String field = until(':');
+        //Get value if present
+        String value = pos<end ? rest() : null;
+        //Create it
+        return new SSRCAttribute(ssrc, field, value);
+    }
+
+    private RTPMapAttribute rtpmap() throws ParserException
+    {
+        //Get format
+        Integer format = integer();
+        //Skip separator
+        skipSpaces();
+        //Get name
+        String name = until('/');
+        //Get rate
+        Integer rate = integer();
+        //Get parameters
+        String parameters = null;
+        //If present
+        if (pos<end && at(pos)=='/')
+        {
+            //Skip it
+            pos++;
+            //Get them
+            parameters = token();
+        }
+        //Create it
+        return new RTPMapAttribute(format, name, rate, parameters);
+    }
+
+    private FormatAttribute fmtp() throws ParserException
+    {
+        //Get format
+        Integer fmt = integer();
+        //Skip separator
+        skipSpaces();
+        //Create it with parameters
+        return new FormatAttribute(fmt, rest());
+    }
+
+    private CryptoAttribute crypto() throws ParserException
+    {
+        //Create attribute
+        CryptoAttribute crypto = new CryptoAttribute();
+        //Set tag
+        crypto.setTag(integer());
+        //Set suite
+        crypto.setSuite(token());
+        //Skip separator
+        skipSpaces();
+        //Parse key params
+        do {
+            //Get method
+            String method = until(':');
+            //Start of info
+            int start = pos;
+            //Until next param or end of key params
+            while (pos<end && at(pos)!=';' && at(pos)!=' ' && at(pos)!='\t')
+                //Next
+                pos++;
+            //Add it
+            crypto.addKeyParam(new CryptoAttribute.KeyParam(method, string(start, pos)));
+        } while (pos<end && at(pos++)==';');
+        //Session params
+        if (hasMore())
+            //Set them
+            crypto.setSessionParams(rest());
+        //Return it
+        return crypto;
+    }
+
+    private ExtMapAttribute extmap() throws ParserException
+    {
+        //Create it
+        ExtMapAttribute extmap = new ExtMapAttribute();
+        //Set id
+        extmap.setId(integer());
+        //If it has direction
+        if (pos<end && at(pos)=='/')
+        {
+            //Skip it
+            pos++;
+            //Set direction
+            extmap.setDirection(token());
+        }
+        //Set name
+        extmap.setName(token());
+        //If it has attributes
+        if (hasMore())
+            //Set them
+            extmap.setAttributes(rest());
+        //Return it
+        return extmap;
+    }
+
+    private GroupAttribute group() throws ParserException
+    {
+        //Create it
+        GroupAttribute group = new GroupAttribute(token());
+        //Add tags
+        while (hasMore())
+            //Add it
+            group.addTag(token());
+        //Return it
+        return group;
+    }
+
+    private SSRCGroupAttribute ssrcGroup() throws ParserException
+    {
+        //Create it
+        SSRCGroupAttribute group = new SSRCGroupAttribute(token());
+        //Add ssrcs
+        while (hasMore())
+            //Add it
+            group.addSSRCId(token());
+        //Return it
+        return group;
+    }
+
+    private PreviousSSRCAttribute previousSSRC() throws ParserException
+    {
+        //Create it
+        PreviousSSRCAttribute previous = new PreviousSSRCAttribute();
+        //Add ssrcs
+        while (hasMore())
+            //Add it
+            previous.addSSRC(token());
+        //Return it
+        return previous;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Capabilities.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp.negotiation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Supported medias, codecs in order of preference and header extensions of an endpoint.
+ * It is built once when the supported codecs change and shared by all the negotiations,
+ * so it must not be modified after that.
+ * @author Sergio Garcia Murillo
+ */
+public class Capabilities {
+
+    private static class MediaCapabilities {
+        private final int[] priorities;
+        private final Set<String> extensions;
+
+        private MediaCapabilities(List<Integer> codecs,Set<String> extensions) {
+            //Create priority table
+            priorities = new int[CodecTable.MAX_CODEC+1];
+            //Not supported by default
+            Arrays.fill(priorities, -1);
+            //Set priorities in reverse order so the first one is kept for duplicates
+            for (int i=codecs.size()-1; i>=0; i--) {
+                //Get codec
+                Integer codec = codecs.get(i);
+                //Check it
+                if (codec!=null && codec>=0 && codec<=CodecTable.MAX_CODEC)
+                    //Set priority
+                    priorities[codec] = i;
+            }
+            //Store extensions
+            this.extensions = extensions;
+        }
+    }
+
+    private final CodecTable codecTable;
+    private final HashMap<String,MediaCapabilities> medias;
+
+    public Capabilities(CodecTable codecTable) {
+        //Store table
+        this.codecTable = codecTable;
+        //Create media map
+        medias = new HashMap<String, MediaCapabilities>();
+    }
+
+    /**
+     * Enable a media.
+     * @param media media type
+     * @param codecs supported codecs, most preferred first
+     * @param extensions supported header extensions by uri, null if extensions are not negotiated for the media
+     */
+    public void addMedia(String media,List<Integer> codecs,Map<String,Integer> extensions) {
+        //Add it
+        medias.put(media, new MediaCapabilities(codecs, extensions!=null ? new HashSet<String>(extensions.keySet()) : null));
+    }
+
+    public CodecTable getCodecTable() {
+        return codecTable;
+    }
+
+    public boolean hasMedia(String media) {
+        return medias.containsKey(media);
+    }
+
+    /**
+     * Get preference of a codec.
+     * @return index in the supported codec list or -1 if not supported
+     */
+    public int getPriority(String media,int codec) {
+        //Get media
+        MediaCapabilities capabilities = medias.get(media);
+        //Check it
+        if (capabilities==null || codec<0 || codec>CodecTable.MAX_CODEC)
+            //Not supported
+            return -1;
+        //Return it
+        return capabilities.priorities[codec];
+    }
+
+    public boolean hasExtensions(String media) {
+        //Get media
+        MediaCapabilities capabilities = medias.get(media);
+        //Check it
+        return capabilities!=null && capabilities.extensions!=null;
+    }
+
+    public boolean isExtensionSupported(String media,String uri) {
+        //Get media
+        MediaCapabilities capabilities = medias.get(media);
+        //Check it
+        return capabilities!=null && capabilities.extensions!=null && capabilities.extensions.contains(uri);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * CodecTable.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp.negotiation;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codecs known by the media server, indexed by their integer id.
+ * Encoding names from the rtpmap lines are resolved once and cached, and the
+ * codecs with special handling in the negotiation are flagged with roles.
+ * @author Sergio Garcia Murillo
+ */
+public class CodecTable {
+
+    public interface Resolver {
+        /**
+         * Get codec id for an encoding name.
+         * @return codec id or -1 if not supported
+         */
+        public int getCodecForName(String media,String name);
+    }
+
+    //Codec with profile-level-id selection
+    public static final int H264    = 1;
+    //Retransmission codec, its apt parameter is reported
+    public static final int RTX     = 2;
+    //Repair format, never selected as the media codec
+    public static final int REPAIR  = 4;
+
+    //Maximum codec id stored in the tables
+    public static final int MAX_CODEC = 255;
+    //Maximum number of cached names per media
+    private static final int MAX_NAMES = 64;
+
+    private static class MediaTable {
+        private final ConcurrentHashMap<String,Integer> names = new ConcurrentHashMap<String, Integer>();
+        private final int[] roles = new int[MAX_CODEC+1];
+        private final int[] rates = new int[MAX_CODEC+1];
+    }
+
+    private final Resolver resolver;
+    private final ConcurrentHashMap<String,MediaTable> medias;
+    private int maxH264Profile;
+
+    public CodecTable(Resolver resolver) {
+        //Store resolver
+        this.resolver = resolver;
+        //Create tables
+        medias = new ConcurrentHashMap<String, MediaTable>();
+        //Any profile by default
+        maxH264Profile = Integer.MAX_VALUE;
+    }
+
+    private MediaTable getMediaTable(String media) {
+        //Get table
+        MediaTable table = medias.get(media);
+        //If not found
+        if (table==null) {
+            //Create it
+            medias.putIfAbsent(media, new MediaTable());
+            //Get the stored one
+            table = medias.get(media);
+        }
+        //Return it
+        return table;
+    }
+
+    private static boolean isValid(int codec) {
+        return codec>=0 && codec<=MAX_CODEC;
+    }
+
+    public void setRole(String media,int codec,int role) {
+        //Check codec
+        if (!isValid(codec))
+            //Error
+            throw new IllegalArgumentException("Codec id out of range " + codec);
+        //Set it
+        getMediaTable(media).roles[codec] = role;
+    }
+
+    /**
+     * Only accept a codec if the rtpmap has this clock rate.
+     */
+    public void setRate(String media,int codec,int rate) {
+        //Check codec
+        if (!isValid(codec))
+            //Error
+            throw new IllegalArgumentException("Codec id out of range " + codec);
+        //Set it
+        getMediaTable(media).rates[codec] = rate;
+    }
+
+    public boolean hasRole(String media,int codec,int role) {
+        //Get table
+        MediaTable table = medias.get(media);
+        //Check it
+        return table!=null && isValid(codec) && (table.roles[codec] & role)!=0;
+    }
+
+    public int getMaxH264Profile() {
+        return maxH264Profile;
+    }
+
+    public void setMaxH264Profile(int maxH264Profile) {
+        this.maxH264Profile = maxH264Profile;
+    }
+
+    /**
+     * Get codec for a rtpmap line.
+     * @param media media type
+     * @param name encoding name
+     * @param rate clock rate, 0 if unknown
+     * @return codec id or -1 if it is not supported
+     */
+    public int getCodec(String media,String name,int rate) {
+        //Get table
+        MediaTable table = getMediaTable(media);
+        //Get cached one
+        Integer cached = table.names.get(name);
+        //Get codec
+        int codec = cached!=null ? cached : resolver.getCodecForName(media, name);
+        //If not cached and there is room for it
+        if (cached==null && table.names.size()<MAX_NAMES)
+            //Cache it, even if not supported
+            table.names.put(name, codec);
+        //If not supported or not in the tables
+        if (!isValid(codec))
+            //Not supported
+            return -1;
+        //Check rate
+        if (table.rates[codec]!=0 && table.rates[codec]!=rate)
+            //Not supported
+            return -1;
+        //Found
+        return codec;
+    }
+}
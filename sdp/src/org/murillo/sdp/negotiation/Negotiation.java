@@ -0,0 +1,243 @@
+/*
+ * Negotiation.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp.negotiation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import org.murillo.sdp.MediaDescription;
+
+/**
+ * Result of matching a remote description against the local capabilities.
+ * @author Sergio Garcia Murillo
+ */
+public class Negotiation {
+
+    /**
+     * Negotiated values of an accepted media.
+     */
+    public static class MediaNegotiation {
+        final String media;
+        final Integer port;
+        String address;
+        String addrType;
+        String direction;
+        String mid;
+        boolean rtcpMux;
+        final LinkedHashMap<Integer,Integer> rtpMap;
+        Integer codec;
+        int priority;
+        int h264Type;
+        String h264ProfileLevelId;
+        Integer h264Packetization;
+        String rtxApt;
+        String iceUfrag;
+        String icePwd;
+        String setup;
+        String hash;
+        String fingerprint;
+        String cryptoSuite;
+        String cryptoKey;
+        LinkedHashMap<String,Integer> extensions;
+
+        MediaNegotiation(String media,Integer port) {
+            //Store values
+            this.media = media;
+            this.port = port;
+            //Create rtp map
+            rtpMap = new LinkedHashMap<Integer, Integer>();
+            //No codec yet
+            priority = Integer.MAX_VALUE;
+        }
+
+        public String getMedia() {
+            return media;
+        }
+
+        public Integer getPort() {
+            return port;
+        }
+
+        /**
+         * Get remote address of the media, from the media connection line or the session one.
+         * @return the address or null if there was no connection line
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        public String getAddrType() {
+            return addrType;
+        }
+
+        /**
+         * @return sendrecv, sendonly, recvonly or inactive
+         */
+        public String getDirection() {
+            return direction;
+        }
+
+        public String getMid() {
+            return mid;
+        }
+
+        public boolean isRtcpMux() {
+            return rtcpMux;
+        }
+
+        /**
+         * Get the supported payload types of the remote description.
+         * @return codec by payload type, in the order of the m line
+         */
+        public LinkedHashMap<Integer, Integer> getRTPMap() {
+            return rtpMap;
+        }
+
+        /**
+         * Get the most preferred codec supported by both ends.
+         * @return the codec or null if none
+         */
+        public Integer getCodec() {
+            return codec;
+        }
+
+        /**
+         * Get the payload type selected for H264.
+         * @return the payload type or 0 if not offered
+         */
+        public int getH264Type() {
+            return h264Type;
+        }
+
+        public String getH264ProfileLevelId() {
+            return h264ProfileLevelId;
+        }
+
+        public Integer getH264Packetization() {
+            return h264Packetization;
+        }
+
+        public String getRTXApt() {
+            return rtxApt;
+        }
+
+        public String getICEUfrag() {
+            return iceUfrag;
+        }
+
+        public String getICEPwd() {
+            return icePwd;
+        }
+
+        /**
+         * Get remote DTLS setup role.
+         * @return the setup or null if DTLS is not used for this media
+         */
+        public String getSetup() {
+            return setup;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Get remote SDES crypto suite.
+         * @return the suite or null if not using SDES for this media
+         */
+        public String getCryptoSuite() {
+            return cryptoSuite;
+        }
+
+        public String getCryptoKey() {
+            return cryptoKey;
+        }
+
+        /**
+         * Get the supported header extensions of the remote description.
+         * @return id by uri or null if extensions are not negotiated for this media
+         */
+        public LinkedHashMap<String, Integer> getExtensions() {
+            return extensions;
+        }
+    }
+
+    final ArrayList<MediaNegotiation> medias;
+    final ArrayList<MediaDescription> rejectedMedias;
+    boolean useICE;
+    boolean useDTLS;
+    boolean secure;
+    boolean rtcpFeedBack;
+    int videoBitrate;
+    String videoContentType;
+
+    Negotiation(boolean useDTLS) {
+        //Create lists
+        medias = new ArrayList<MediaNegotiation>();
+        rejectedMedias = new ArrayList<MediaDescription>();
+        //Store initial DTLS value
+        this.useDTLS = useDTLS;
+    }
+
+    public ArrayList<MediaNegotiation> getMedias() {
+        return medias;
+    }
+
+    /**
+     * Get the medias that were not accepted, with port 0 to be added to the answer.
+     */
+    public ArrayList<MediaDescription> getRejectedMedias() {
+        return rejectedMedias;
+    }
+
+    public boolean isICE() {
+        return useICE;
+    }
+
+    public boolean isDTLS() {
+        return useDTLS;
+    }
+
+    public boolean isSecure() {
+        return secure;
+    }
+
+    public boolean isRtcpFeedBack() {
+        return rtcpFeedBack;
+    }
+
+    /**
+     * Get maximum video bitrate in kbps.
+     * @return the bitrate or 0 if not limited
+     */
+    public int getVideoBitrate() {
+        return videoBitrate;
+    }
+
+    /**
+     * Get content of the accepted video media.
+     * @return the content or null if not present
+     */
+    public String getVideoContentType() {
+        return videoContentType;
+    }
+}
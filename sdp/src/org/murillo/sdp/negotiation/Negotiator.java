@@ -0,0 +1,419 @@
+/*
+ * Negotiator.java
+ *
+ * Copyright (C) 2007  Sergio Garcia Murillo
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.murillo.sdp.negotiation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.murillo.sdp.Attribute;
+import org.murillo.sdp.Bandwidth;
+import org.murillo.sdp.Connection;
+import org.murillo.sdp.CryptoAttribute;
+import org.murillo.sdp.ExtMapAttribute;
+import org.murillo.sdp.FingerprintAttribute;
+import org.murillo.sdp.MediaDescription;
+import org.murillo.sdp.RTPMapAttribute;
+import org.murillo.sdp.SessionDescription;
+import org.murillo.sdp.negotiation.Negotiation.MediaNegotiation;
+
+/**
+ * Offer/answer negotiation of a remote description: codec matching, ICE, DTLS or SDES
+ * selection, directions and bandwidth. The formats of each media are matched in a
+ * single pass against the codec and priority tables of the capabilities.
+ * @author Sergio Garcia Murillo
+ */
+public class Negotiator {
+
+    public static Negotiation negotiate(SessionDescription sdp,Capabilities capabilities,boolean useDTLS) {
+        //Create result
+        Negotiation negotiation = new Negotiation(useDTLS);
+        //Connection address
+        String ip = null;
+        String addrType = null;
+
+        //Get the connection field
+        Connection conn = sdp.getConnection();
+        //If present
+        if (conn!=null) {
+            //Get address
+            ip = conn.getAddress();
+            addrType = conn.getAddrType();
+        }
+
+        //No bitrate by default
+        int videoBitrate = 0;
+
+        //For each bandwith
+        for (Bandwidth band : sdp.getBandwidths()) {
+            //Get bitrate value
+            int rate = Integer.parseInt(band.getBandwidth());
+            //Check bandwith type
+            if (band.getType().equalsIgnoreCase("TIAS"))
+                //Convert to kbps
+                rate = rate/1000;
+            //Let some room for audio
+            if (rate>=128)
+                //Remove maximum rate
+                rate -= 64;
+            //Check if is less
+            if (videoBitrate==0 || rate<videoBitrate)
+                //Set it
+                videoBitrate = rate;
+        }
+
+        //Global ice credentials
+        String iceUfrag = null;
+        String icePwd = null;
+        //Check them
+        Attribute ufragAttr = sdp.getAttribute("ice-ufrag");
+        Attribute pwdAttr = sdp.getAttribute("ice-pwd");
+        //Check if both present
+        if (ufragAttr!=null && pwdAttr!=null) {
+            //Using ice
+            negotiation.useICE = true;
+            //Get values
+            iceUfrag = ufragAttr.getValue();
+            icePwd = pwdAttr.getValue();
+        }
+
+        //No DTLS fingerprint yet
+        String remoteHash = null;
+        String remoteFingerprint = null;
+        //Check global fingerprint attribute
+        FingerprintAttribute fingerprintAttr = (FingerprintAttribute) sdp.getAttribute("fingerprint");
+        //Check if there is one present
+        if (fingerprintAttr!=null) {
+            //Using DTLS
+            negotiation.useDTLS = true;
+            //Get remote fingerprint
+            remoteHash = fingerprintAttr.getHashFunc();
+            remoteFingerprint = fingerprintAttr.getFingerprint();
+        }
+
+        //For each media
+        for (MediaDescription md : sdp.getMedias()) {
+            //Get media type
+            String media = md.getMedia();
+            //Get port
+            Integer port = md.getPort();
+            //Get transport
+            ArrayList<String> proto = md.getProto();
+
+            //If it its not RTP (i.e. RTP/(s)AVP(f) or UDP/TLS/RTP/SAVP(f)), port is 0 or media is not supported
+            if (proto.size()<2 || !proto.get(proto.size()-2).equals("RTP") || port==null || port==0 || !capabilities.hasMedia(media)) {
+                //Reject it
+                reject(negotiation, md, null);
+                //Next
+                continue;
+            }
+
+            //No default bitrate
+            int mediaBitrate = 0;
+            //Get bandwiths
+            for (Bandwidth band : md.getBandwidths()) {
+                //Get bitrate value
+                int rate = Integer.parseInt(band.getBandwidth());
+                //Check bandwith type
+                if (band.getType().equalsIgnoreCase("TIAS"))
+                    //Convert to kbps
+                    rate = rate/1000;
+                //Check if less than current
+                if (mediaBitrate==0 || rate<mediaBitrate)
+                    //Set it
+                    mediaBitrate = rate;
+            }
+
+            //If it is video
+            if (media.equals("video")) {
+                //Get content attribute
+                Attribute content = md.getAttribute("content");
+                //Check if we found it inside this media
+                if (content!=null) {
+                    //Check if it is not main
+                    if (!content.getValue().equalsIgnoreCase("main")) {
+                        //Reject it keeping the content
+                        reject(negotiation, md, content);
+                        //Next
+                        continue;
+                    }
+                    //Store content type
+                    negotiation.videoContentType = content.getValue();
+                }
+                //Check if we have a media rate less than the current bitrate
+                if (videoBitrate==0 || (mediaBitrate>0 && mediaBitrate<videoBitrate))
+                    //Store bitrate
+                    videoBitrate = mediaBitrate;
+            }
+
+            //Create media result
+            MediaNegotiation mn = new MediaNegotiation(media, port);
+
+            //Check if it supports rtcp-muxing
+            mn.rtcpMux = md.hasAttribute("rtcp-mux");
+            //Get mid
+            Attribute mid = md.getAttribute("mid");
+            //If present
+            if (mid!=null)
+                //Set it
+                mn.mid = mid.getValue();
+
+            //Check direction attributes
+            if (md.hasAttribute("sendonly"))
+                //Part is sendonly
+                mn.direction = "sendonly";
+            else if (md.hasAttribute("recvonly"))
+                //Part is recvonly
+                mn.direction = "recvonly";
+            else if (md.hasAttribute("inactive"))
+                //Part is inactive
+                mn.direction = "inactive";
+            else
+                //Part is sendrecv
+                mn.direction = "sendrecv";
+
+            //Global ICE credentials by default
+            mn.iceUfrag = iceUfrag;
+            mn.icePwd = icePwd;
+            //Check for media ice credentials
+            ufragAttr = md.getAttribute("ice-ufrag");
+            pwdAttr = md.getAttribute("ice-pwd");
+            //Check if both present
+            if (ufragAttr!=null && pwdAttr!=null) {
+                //Using ice
+                negotiation.useICE = true;
+                //Get values
+                mn.iceUfrag = ufragAttr.getValue();
+                mn.icePwd = pwdAttr.getValue();
+            }
+
+            //By default the media address is the session one
+            mn.address = ip;
+            mn.addrType = addrType;
+            //Get connection info
+            for (Connection c : md.getConnections()) {
+                //Get it
+                mn.address = c.getAddress();
+                mn.addrType = c.getAddrType();
+            }
+
+            //Check if it is DTLS
+            if (proto.get(0).equals("UDP") && proto.get(1).equals("TLS"))
+                //Using DTLS
+                negotiation.useDTLS = true;
+
+            //Get rtp profile
+            String rtpProfile = proto.get(proto.size()-1);
+
+            //Check if it is secure
+            if (rtpProfile.startsWith("S")) {
+                //Secure
+                negotiation.secure = true;
+                //Check media fingerprint attribute
+                fingerprintAttr = (FingerprintAttribute) md.getAttribute("fingerprint");
+                //Check if DTLS is available
+                if (fingerprintAttr!=null) {
+                    //Using DTLS
+                    negotiation.useDTLS = true;
+                    //Get remote fingerprint and hash
+                    remoteHash = fingerprintAttr.getHashFunc();
+                    remoteFingerprint = fingerprintAttr.getFingerprint();
+                }
+                //If we are using DTLS
+                if (negotiation.useDTLS) {
+                    //Get setup attribute
+                    Attribute setup = md.getAttribute("setup");
+                    //Actpass by default
+                    mn.setup = setup!=null ? setup.getValue() : "actpass";
+                    //Set fingerprint
+                    mn.hash = remoteHash;
+                    mn.fingerprint = remoteFingerprint;
+                } else {
+                    //Check crypto attribute
+                    CryptoAttribute crypto = (CryptoAttribute) md.getAttribute("crypto");
+                    //Check SDES key
+                    if (crypto!=null) {
+                        //Get suite and key
+                        mn.cryptoSuite = crypto.getSuite();
+                        mn.cryptoKey = crypto.getFirstKeyParam().getInfo();
+                    }
+                }
+            }
+
+            //Check if has rtcp feedback
+            if (rtpProfile.endsWith("F"))
+                //With feedback
+                negotiation.rtcpFeedBack = true;
+
+            //Match codecs
+            negotiateFormats(md, mn, capabilities);
+
+            //If extensions are negotiated for the media
+            if (capabilities.hasExtensions(media)) {
+                //Create map
+                mn.extensions = new LinkedHashMap<String, Integer>();
+                //For each extmap
+                for (Attribute attr : md.getAttributes("extmap")) {
+                    //Cast
+                    ExtMapAttribute extmap = (ExtMapAttribute) attr;
+                    //Check if it is supported
+                    if (capabilities.isExtensionSupported(media, extmap.getName()))
+                        //Add it
+                        mn.extensions.put(extmap.getName(), extmap.getId());
+                }
+            }
+
+            //Add it
+            negotiation.medias.add(mn);
+        }
+
+        //Set bitrate
+        negotiation.videoBitrate = videoBitrate;
+
+        //Return result
+        return negotiation;
+    }
+
+    private static void negotiateFormats(MediaDescription md,MediaNegotiation mn,Capabilities capabilities) {
+        //Get codecs
+        CodecTable table = capabilities.getCodecTable();
+        //Get media
+        String media = mn.media;
+        //Best H264 format
+        int h264Codec = -1;
+        int h264Profile = -1;
+
+        //For each format
+        for (String fmt : md.getFormats()) {
+            int type;
+            try {
+                //Get payload type
+                type = Integer.parseInt(fmt);
+            } catch (NumberFormatException e) {
+                //Ignore non integer codecs, like '*' on application
+                continue;
+            }
+            //Static types are the codec itself
+            int codec = type;
+            //If it is dynamic
+            if (type>=96) {
+                //Get map
+                RTPMapAttribute rtpMap = md.getRTPMap(type);
+                //Check it has mapping
+                if (rtpMap==null)
+                    //Skip this one
+                    continue;
+                //Get codec for name
+                codec = table.getCodec(media, rtpMap.getName(), rtpMap.getRate()!=null ? rtpMap.getRate() : 0);
+                //If not supported
+                if (codec==-1)
+                    //Skip
+                    continue;
+                //If it is h264 select the format with the higher supported profile
+                if (table.hasRole(media, codec, CodecTable.H264)) {
+                    //Get ftmp line
+                    Map<String,String> params = md.getFormatParameters(type);
+                    //Get profile level indication
+                    String profileLevelId = params!=null ? params.get("profile-level-id") : null;
+                    //Check if it has it
+                    if (profileLevelId!=null) {
+                        //Get profile
+                        int profile = getH264Profile(profileLevelId);
+                        //Compare
+                        if (profile>=0 && profile<=table.getMaxH264Profile() && profile>h264Profile) {
+                            //Store this type provisionally
+                            mn.h264Type = type;
+                            mn.h264ProfileLevelId = profileLevelId;
+                            h264Codec = codec;
+                            h264Profile = profile;
+                            //Check if it has packetization parameter
+                            if (params.containsKey("packetization-mode"))
+                                //Set it
+                                mn.h264Packetization = Integer.parseInt(params.get("packetization-mode"));
+                        }
+                    } else if (h264Profile<0) {
+                        //No profile received so far, store this type provisionally
+                        mn.h264Type = type;
+                        h264Codec = codec;
+                    }
+                    //Added at the end
+                    continue;
+                }
+            }
+            //Add format
+            addFormat(md, mn, capabilities, type, codec);
+        }
+
+        //Check if we have type for h264
+        if (mn.h264Type>0)
+            //Add it
+            addFormat(md, mn, capabilities, mn.h264Type, h264Codec);
+    }
+
+    private static void addFormat(MediaDescription md,MediaNegotiation mn,Capabilities capabilities,int type,int codec) {
+        //Get codecs
+        CodecTable table = capabilities.getCodecTable();
+        //Set codec mapping
+        mn.rtpMap.put(type, codec);
+        //If it is retransmission
+        if (table.hasRole(mn.media, codec, CodecTable.RTX)) {
+            //Get format parameters
+            Map<String,String> params = md.getFormatParameters(type);
+            //It must have associated payload type
+            if (params!=null && params.containsKey("apt"))
+                //Set it
+                mn.rtxApt = params.get("apt");
+        }
+        //Repair formats are never the media codec
+        if (table.hasRole(mn.media, codec, CodecTable.REPAIR))
+            //Done
+            return;
+        //Get priority
+        int priority = capabilities.getPriority(mn.media, codec);
+        //Check if supported and we have a lower priority
+        if (priority>=0 && priority<mn.priority) {
+            //Store priority
+            mn.priority = priority;
+            //Set codec
+            mn.codec = codec;
+        }
+    }
+
+    private static int getH264Profile(String profileLevelId) {
+        try {
+            //Get profile_idc
+            return Integer.parseInt(profileLevelId.substring(0,2), 16);
+        } catch (Exception e) {
+            //Invalid
+            return -1;
+        }
+    }
+
+    private static void reject(Negotiation negotiation,MediaDescription md,Attribute content) {
+        //Create media descriptor
+        MediaDescription rejected = new MediaDescription(md.getMedia(),0,md.getProtoString());
+        //Set all formats
+        rejected.setFormats(md.getFormats());
+        //If it has content
+        if (content!=null)
+            //Add content attribute
+            rejected.addAttribute(content);
+        //Add to rejected media
+        negotiation.rejectedMedias.add(rejected);
+    }
+}